@@ -0,0 +1,54 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import javafx.scene.image.Image;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.betweenthelines.pikasso.utils.ImageUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mierzy konwersję obrazu pomiędzy obiektami JavaFX i OpenCV w obie strony.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ConversionBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    @Param({"GRAY", "COLOR"})
+    public String color;
+
+    private Mat mat;
+    private Image image;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        mat = SyntheticImages.create(megapixels, color);
+        image = ImageUtils.mat2Image(mat);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mat.release();
+    }
+
+    @Benchmark
+    public void imageToMat(Blackhole blackhole) {
+        Mat result = ImageUtils.imageToMat(image);
+        blackhole.consume(result);
+        result.release();
+    }
+
+    @Benchmark
+    public Image mat2Image() {
+        return ImageUtils.mat2Image(mat);
+    }
+}
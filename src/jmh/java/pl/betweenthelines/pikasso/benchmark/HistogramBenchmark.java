@@ -0,0 +1,51 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import javafx.scene.image.Image;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import pl.betweenthelines.pikasso.utils.ImageUtils;
+import pl.betweenthelines.pikasso.window.image.histogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mierzy budowę histogramu (zliczanie pikseli i statystyki kanałów) dla całego
+ * obrazu oraz ponowne zapytanie o inny zakres poziomów jasności.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class HistogramBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    @Param({"GRAY", "COLOR"})
+    public String color;
+
+    private Image image;
+    private Histogram histogram;
+
+    @Setup
+    public void setUp() throws Exception {
+        SyntheticImages.initialize();
+        Mat mat = SyntheticImages.create(megapixels, color);
+        image = ImageUtils.mat2Image(mat);
+        mat.release();
+
+        histogram = new Histogram(image, 0, 255);
+    }
+
+    @Benchmark
+    public Histogram build() throws Exception {
+        return new Histogram(image, 0, 255);
+    }
+
+    @Benchmark
+    public Histogram withRange() {
+        return histogram.withRange(64, 192);
+    }
+}
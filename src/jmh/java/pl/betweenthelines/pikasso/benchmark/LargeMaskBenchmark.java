@@ -0,0 +1,70 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+import pl.betweenthelines.pikasso.window.image.operation.linear.FrequencyFilteringUtils;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.MaskNxN;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Porównuje filtrację dużą maską własną przestrzennie (<tt>filter2D</tt>) i przez
+ * DFT z widmem maski z pamięci podręcznej (<tt>FrequencyFilteringUtils</tt>).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class LargeMaskBenchmark {
+
+    @Param({"1", "12"})
+    public int megapixels;
+
+    @Param({"15", "31", "63"})
+    public int size;
+
+    private Mat image;
+    private Mat result;
+    private Mask mask;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        image = SyntheticImages.create(megapixels, "GRAY");
+        result = new Mat(image.rows(), image.cols(), CvType.CV_32F);
+
+        Random random = new Random(0);
+        double[] values = new double[size * size];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(10);
+        }
+        mask = new MaskNxN("RANDOM", size, values);
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.release();
+        result.release();
+        FrequencyFilteringUtils.clearCache();
+    }
+
+    @Benchmark
+    public Mat filter2D() {
+        Imgproc.filter2D(image, result, CvType.CV_32F, mask.getMat(), new Point(-1, -1), 0, Core.BORDER_DEFAULT);
+        return result;
+    }
+
+    @Benchmark
+    public Mat dft() {
+        FrequencyFilteringUtils.filter(image, result, mask, Core.BORDER_DEFAULT);
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.betweenthelines.pikasso.engine.LinearFilterOperation;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask3x3;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.DO_NOTHING;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.*;
+
+/**
+ * Mierzy filtrację każdą z masek z <tt>LinearFilters</tt> (pojedyncza filtracja,
+ * bez rozmycia i skalowania wyniku) w trybie zwykłym i kafelkowym.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class LinearFilterBenchmark {
+
+    private static final List<Mask3x3> MASKS = Arrays.asList(
+            SMOOTH_1, SMOOTH_2,
+            EDGE_DETECTION_1, EDGE_DETECTION_2, EDGE_DETECTION_3, EDGE_DETECTION_4,
+            SHARPEN_1, SHARPEN_2, SHARPEN_3,
+            PREWITT_X, PREWITT_Y);
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    @Param({"GRAY", "COLOR"})
+    public String color;
+
+    /**
+     * Indeks maski na liście {@link #MASKS} (nazwy masek nie są unikalne).
+     */
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10"})
+    public int mask;
+
+    @Param({"false", "true"})
+    public boolean tiled;
+
+    private Mat image;
+    private LinearFilterOperation operation;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        image = SyntheticImages.create(megapixels, color);
+        operation = new LinearFilterOperation(new LinearFilterOperation.Parameters(
+                MASKS.get(mask), null, false, false, Core.BORDER_DEFAULT, null, 1, DO_NOTHING, false, false), tiled);
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.release();
+    }
+
+    @Benchmark
+    public void filter(Blackhole blackhole) {
+        Mat result = operation.apply(image);
+        blackhole.consume(result);
+        result.release();
+    }
+}
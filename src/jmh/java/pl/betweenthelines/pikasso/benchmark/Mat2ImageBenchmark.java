@@ -0,0 +1,56 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import javafx.scene.image.Image;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.openjdk.jmh.annotations.*;
+import pl.betweenthelines.pikasso.utils.ImageUtils;
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Porównuje bezpośrednią konwersję obiektu Mat do obiektu Image
+ * z dawną konwersją przez zakodowanie i zdekodowanie pliku PNG.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class Mat2ImageBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    @Param({"8UC1", "8UC3", "8UC4", "32FC1"})
+    public String type;
+
+    private Mat mat;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        mat = SyntheticImages.create(megapixels, SyntheticImages.type(type));
+    }
+
+    @TearDown
+    public void tearDown() {
+        mat.release();
+    }
+
+    @Benchmark
+    public Image pngRoundTrip() {
+        MatOfByte buffer = new MatOfByte();
+        Imgcodecs.imencode(".png", mat, buffer);
+
+        return new Image(new ByteArrayInputStream(buffer.toArray()));
+    }
+
+    @Benchmark
+    public Image directConversion() {
+        return ImageUtils.mat2Image(mat);
+    }
+}
@@ -0,0 +1,51 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.betweenthelines.pikasso.engine.MedianOperation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mierzy filtr medianowy dla wszystkich rozmiarów maski dostępnych w programie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class MedianBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    @Param({"GRAY", "COLOR"})
+    public String color;
+
+    @Param({"3", "5", "7", "9", "11"})
+    public int kernelSize;
+
+    private Mat image;
+    private MedianOperation operation;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        image = SyntheticImages.create(megapixels, color);
+        operation = new MedianOperation(new MedianOperation.Parameters(kernelSize, 1, false));
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.release();
+    }
+
+    @Benchmark
+    public void median(Blackhole blackhole) {
+        Mat result = operation.apply(image);
+        blackhole.consume(result);
+        result.release();
+    }
+}
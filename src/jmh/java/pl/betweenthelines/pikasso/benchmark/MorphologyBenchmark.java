@@ -0,0 +1,71 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.betweenthelines.pikasso.engine.MorphologyOperation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mierzy operacje morfologiczne (kwadratowym elementem strukturalnym 3x3,
+ * tak jak domyślnie w oknie operacji).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class MorphologyBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    @Param({"GRAY", "COLOR"})
+    public String color;
+
+    @Param({"ERODE", "DILATE", "OPEN", "CLOSE"})
+    public String operationName;
+
+    private Mat image;
+    private MorphologyOperation operation;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        image = SyntheticImages.create(megapixels, color);
+        operation = new MorphologyOperation(new MorphologyOperation.Parameters(
+                operation(operationName), Imgproc.MORPH_RECT, 3, 1, Core.BORDER_REPLICATE, new Scalar(0, 0, 0, 255)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.release();
+    }
+
+    @Benchmark
+    public void morphology(Blackhole blackhole) {
+        Mat result = operation.apply(image);
+        blackhole.consume(result);
+        result.release();
+    }
+
+    private static int operation(String name) {
+        switch (name) {
+            case "ERODE":
+                return Imgproc.MORPH_ERODE;
+            case "DILATE":
+                return Imgproc.MORPH_DILATE;
+            case "OPEN":
+                return Imgproc.MORPH_OPEN;
+            case "CLOSE":
+                return Imgproc.MORPH_CLOSE;
+        }
+
+        throw new IllegalArgumentException("Unsupported operation: " + name);
+    }
+}
@@ -0,0 +1,56 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mierzy skalowanie wyników filtracji (obrazów zmiennoprzecinkowych z wartościami
+ * spoza zakresu 0-255) każdą z metod. Skalowanie działa w miejscu, dlatego
+ * w każdym wywołaniu obraz jest najpierw kopiowany do bufora - koszt kopiowania
+ * jest wliczony w wynik.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ScalingBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    @Param({"GRAY", "COLOR"})
+    public String color;
+
+    @Param({"1", "2", "3"})
+    public byte method;
+
+    private Mat source;
+    private Mat buffer;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        source = SyntheticImages.create(megapixels, "GRAY".equals(color) ? CvType.CV_32FC1 : CvType.CV_32FC4);
+        buffer = new Mat();
+    }
+
+    @TearDown
+    public void tearDown() {
+        source.release();
+        buffer.release();
+    }
+
+    @Benchmark
+    public Mat scale() {
+        source.copyTo(buffer);
+        MatScalingUtils.scale(buffer, method);
+
+        return buffer;
+    }
+}
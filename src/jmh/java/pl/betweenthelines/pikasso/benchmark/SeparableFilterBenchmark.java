@@ -0,0 +1,70 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.*;
+import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.MaskUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.*;
+
+/**
+ * Porównuje filtrację maską rozdzielną maską dwuwymiarową (<tt>filter2D</tt>)
+ * i dwiema maskami jednowymiarowymi (<tt>FilteringUtils</tt>, <tt>sepFilter2D</tt>).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class SeparableFilterBenchmark {
+
+    @Param({"1", "12"})
+    public int megapixels;
+
+    @Param({"GRAY", "COLOR"})
+    public String color;
+
+    /**
+     * <tt>SMOOTH_2</tt> (3x3) lub <tt>SMOOTH_2</tt> połączona sama ze sobą (5x5).
+     */
+    @Param({"3x3", "5x5"})
+    public String size;
+
+    private Mat image;
+    private Mat result;
+    private Mask mask;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        image = SyntheticImages.create(megapixels, color);
+        result = new Mat(image.rows(), image.cols(), CvType.makeType(CvType.CV_32F, image.channels()));
+        mask = "3x3".equals(size) ? SMOOTH_2 : MaskUtils.combineMasks(SMOOTH_2, SMOOTH_2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.release();
+        result.release();
+    }
+
+    @Benchmark
+    public Mat filter2D() {
+        Imgproc.filter2D(image, result, CvType.CV_32F, mask.getMat(), new Point(-1, -1), 0, Core.BORDER_DEFAULT);
+        return result;
+    }
+
+    @Benchmark
+    public Mat separable() {
+        FilteringUtils.applyMask(image, result, mask, Core.BORDER_DEFAULT, null);
+        return result;
+    }
+}
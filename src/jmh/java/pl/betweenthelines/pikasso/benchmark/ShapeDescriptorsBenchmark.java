@@ -0,0 +1,43 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.*;
+import pl.betweenthelines.pikasso.engine.ShapeDescriptors;
+import pl.betweenthelines.pikasso.exception.ImageIsNotBinaryException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mierzy obliczanie deskryptorów kształtu (momentów i współczynników W1 - W9)
+ * dla obrazu binarnego z jednym obiektem. Deskryptory są liczone tylko dla
+ * obrazów binarnych, dlatego nie ma wariantu kolorowego.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ShapeDescriptorsBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    private Mat image;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        image = SyntheticImages.createShape(megapixels);
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.release();
+    }
+
+    @Benchmark
+    public ShapeDescriptors shapeDescriptors() throws ImageIsNotBinaryException {
+        return new ShapeDescriptors(image);
+    }
+}
@@ -0,0 +1,136 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import javafx.embed.swing.JFXPanel;
+import nu.pattern.OpenCV;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Klasa pomocnicza tworząca syntetyczne obrazy na potrzeby testów wydajnościowych.
+ */
+public class SyntheticImages {
+
+    /**
+     * Liczba pikseli w megapikselu.
+     */
+    private static final int MEGAPIXEL = 1_000_000;
+
+    /**
+     * Proporcje tworzonych obrazów (4:3 - typowe dla skanów i aparatów).
+     */
+    private static final double ASPECT_RATIO = 4.0 / 3.0;
+
+    /**
+     * Ładuje bibliotekę OpenCV i inicjalizuje JavaFX (potrzebne do tworzenia
+     * obiektów <tt>Image</tt> poza aplikacją).
+     */
+    public static void initialize() {
+        OpenCV.loadLocally();
+        new JFXPanel();
+    }
+
+    /**
+     * Tworzy obraz o podanej liczbie megapikseli wypełniony losowym szumem.
+     * Obrazy zmiennoprzecinkowe zawierają wartości spoza zakresu 0-255 (tak jak
+     * wyniki filtracji).
+     *
+     * @param megapixels liczba megapikseli
+     * @param type       typ obiektu Mat (np. <tt>CvType.CV_8UC4</tt>)
+     * @return obraz z szumem
+     */
+    public static Mat create(int megapixels, int type) {
+        int width = (int) Math.sqrt(megapixels * MEGAPIXEL * ASPECT_RATIO);
+        int height = megapixels * MEGAPIXEL / width;
+
+        Mat mat = new Mat(height, width, type);
+        if (CvType.depth(type) == CvType.CV_32F) {
+            Core.randu(mat, -512, 768);
+        } else {
+            Core.randu(mat, 0, 256);
+        }
+
+        return mat;
+    }
+
+    /**
+     * Tworzy obraz o podanej liczbie megapikseli w odcieniach szarości
+     * (<tt>GRAY</tt> - jeden kanał) lub kolorowy (<tt>COLOR</tt> - BGRA, tak jak
+     * obrazy otwarte w programie).
+     *
+     * @param megapixels liczba megapikseli
+     * @param color      <tt>GRAY</tt> lub <tt>COLOR</tt>
+     * @return obraz z szumem
+     */
+    public static Mat create(int megapixels, String color) {
+        switch (color) {
+            case "GRAY":
+                return create(megapixels, CvType.CV_8UC1);
+            case "COLOR":
+                return create(megapixels, CvType.CV_8UC4);
+        }
+
+        throw new IllegalArgumentException("Unsupported color mode: " + color);
+    }
+
+    /**
+     * Tworzy obraz binarny (czarne obiekty na białym tle) o podanej liczbie
+     * megapikseli. Obiekty to plamy o łagodnych brzegach powstałe z rozmytego szumu,
+     * dzięki czemu ścienianie wykonuje kilka-kilkanaście przebiegów.
+     *
+     * @param megapixels liczba megapikseli
+     * @return obraz binarny
+     */
+    public static Mat createBinary(int megapixels) {
+        Mat mat = create(megapixels, CvType.CV_8UC1);
+        Imgproc.GaussianBlur(mat, mat, new Size(15, 15), 0);
+        Imgproc.threshold(mat, mat, 128, 255, Imgproc.THRESH_BINARY);
+
+        return mat;
+    }
+
+    /**
+     * Tworzy obraz binarny z jednym czarnym obiektem (elipsą) na białym tle,
+     * na potrzeby obliczania deskryptorów kształtu.
+     *
+     * @param megapixels liczba megapikseli
+     * @return obraz binarny
+     */
+    public static Mat createShape(int megapixels) {
+        Mat mat = create(megapixels, CvType.CV_8UC1);
+        mat.setTo(new Scalar(255));
+
+        Point center = new Point(mat.cols() / 2.0, mat.rows() / 2.0);
+        Size axes = new Size(mat.cols() / 3.0, mat.rows() / 4.0);
+        Imgproc.ellipse(mat, center, axes, 30, 0, 360, new Scalar(0), -1);
+
+        return mat;
+    }
+
+    /**
+     * Zamienia nazwę typu (np. "8UC4") na typ obiektu Mat.
+     *
+     * @param name nazwa typu
+     * @return typ obiektu Mat
+     */
+    public static int type(String name) {
+        switch (name) {
+            case "8UC1":
+                return CvType.CV_8UC1;
+            case "8UC3":
+                return CvType.CV_8UC3;
+            case "8UC4":
+                return CvType.CV_8UC4;
+            case "32FC1":
+                return CvType.CV_32FC1;
+            case "32FC4":
+                return CvType.CV_32FC4;
+        }
+
+        throw new IllegalArgumentException("Unsupported type: " + name);
+    }
+}
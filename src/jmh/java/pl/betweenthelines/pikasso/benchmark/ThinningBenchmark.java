@@ -0,0 +1,53 @@
+package pl.betweenthelines.pikasso.benchmark;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.betweenthelines.pikasso.engine.ThinningOperation;
+import pl.betweenthelines.pikasso.exception.ImageIsNotBinaryException;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mierzy ścienianie obrazu binarnego (wszystkie przebiegi aż do uzyskania
+ * szkieletu, razem z obrazami kolejnych kroków). Ścienianie działa tylko na
+ * obrazach binarnych, dlatego nie ma wariantu kolorowego.
+ * <p>
+ * Dla dużych obrazów pojedyncze wywołanie może trwać bardzo długo - rozmiar
+ * można ograniczyć parametrem, np. <tt>-p megapixels=1</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class ThinningBenchmark {
+
+    @Param({"1", "12", "48"})
+    public int megapixels;
+
+    private Mat image;
+    private ThinningOperation operation;
+
+    @Setup
+    public void setUp() {
+        SyntheticImages.initialize();
+        image = SyntheticImages.createBinary(megapixels);
+        operation = new ThinningOperation(new ThinningOperation.Parameters(true, new Scalar(255, 255, 255, 255)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        image.release();
+    }
+
+    @Benchmark
+    public void thinning(Blackhole blackhole) throws ImageIsNotBinaryException {
+        List<Mat> steps = operation.thin(image);
+        blackhole.consume(steps);
+        steps.forEach(Mat::release);
+    }
+}
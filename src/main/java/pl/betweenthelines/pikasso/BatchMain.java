@@ -0,0 +1,48 @@
+package pl.betweenthelines.pikasso;
+
+import nu.pattern.OpenCV;
+import pl.betweenthelines.pikasso.batch.BatchProcessor;
+import pl.betweenthelines.pikasso.batch.BatchReport;
+import pl.betweenthelines.pikasso.batch.Pipeline;
+
+import java.io.File;
+
+/**
+ * Przetwarzanie wsadowe bez interfejsu graficznego - wykonuje potok operacji
+ * na wszystkich obrazach z katalogu.
+ * <p>
+ * Użycie: <tt>BatchMain katalog_wejściowy katalog_wyjściowy "potok" [liczba_wątków]</tt>
+ */
+public class BatchMain {
+
+    private static final String USAGE = "Użycie: BatchMain <katalog wejściowy> <katalog wyjściowy> \"<potok>\" [liczba wątków]\n" +
+            "Przykład potoku: \"median 5x5 x2 -> sobel XY -> scale METHOD_3 -> threshold 128\"";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3 || args.length > 4) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        Pipeline pipeline;
+        int threads;
+        try {
+            pipeline = Pipeline.parse(args[2]);
+            threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+
+        OpenCV.loadLocally();
+        System.out.println("Potok: " + pipeline);
+
+        BatchProcessor processor = new BatchProcessor(pipeline, threads, System.out);
+        BatchReport report = processor.process(new File(args[0]), new File(args[1]));
+        report.print(System.out);
+
+        System.exit(report.getFailedCount() > 0 ? 2 : 0);
+    }
+}
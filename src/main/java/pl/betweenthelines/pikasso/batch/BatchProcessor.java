@@ -0,0 +1,157 @@
+package pl.betweenthelines.pikasso.batch;
+
+import org.apache.commons.io.FilenameUtils;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.OperationUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Przetwarza wsadowo wszystkie obrazy z katalogu wejściowego podanym potokiem
+ * i zapisuje wyniki (pod tymi samymi nazwami) w katalogu wyjściowym.
+ * <p>
+ * Pliki są przetwarzane równolegle przez pulę o stałej liczbie wątków.
+ */
+public class BatchProcessor {
+
+    /**
+     * Lista akceptowanych rozszerzeń.
+     */
+    private static final List<String> ACCEPTED_EXTENSIONS = Arrays.asList("jpg", "jpeg", "bmp", "png", "tif", "tiff");
+
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+
+    private final Pipeline pipeline;
+    private final int threads;
+    private final PrintStream out;
+
+    /**
+     * @param pipeline potok przetwarzania
+     * @param threads  liczba wątków przetwarzających pliki
+     * @param out      strumień, na który wypisywane są czasy przetwarzania plików
+     */
+    public BatchProcessor(Pipeline pipeline, int threads, PrintStream out) {
+        this.pipeline = pipeline;
+        this.threads = Math.max(1, threads);
+        this.out = out;
+    }
+
+    /**
+     * Przetwarza wszystkie obrazy z katalogu wejściowego.
+     *
+     * @param inputDirectory  katalog wejściowy
+     * @param outputDirectory katalog wyjściowy (tworzony, jeśli nie istnieje)
+     * @return podsumowanie przetwarzania
+     * @throws FileNotFoundException jeśli katalog wejściowy nie istnieje lub nie można
+     *                               utworzyć katalogu wyjściowego
+     * @throws InterruptedException  jeśli przetwarzanie zostało przerwane
+     */
+    public BatchReport process(File inputDirectory, File outputDirectory) throws FileNotFoundException, InterruptedException {
+        File[] files = inputDirectory.listFiles(this::hasAcceptedExtension);
+        if (files == null) {
+            throw new FileNotFoundException(inputDirectory.getPath());
+        }
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new FileNotFoundException(outputDirectory.getPath());
+        }
+        Arrays.sort(files);
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<FileResult> results = new ArrayList<>();
+        try {
+            List<Future<FileResult>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(executor.submit(() -> processFile(file, new File(outputDirectory, file.getName()))));
+            }
+
+            for (Future<FileResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new BatchReport(results, System.nanoTime() - start, threads);
+    }
+
+    /**
+     * Wczytuje obraz, wykonuje na nim potok i zapisuje wynik.
+     *
+     * @param input  plik wejściowy
+     * @param output plik wyjściowy
+     * @return wynik przetworzenia pliku
+     */
+    private FileResult processFile(File input, File output) {
+        long start = System.nanoTime();
+        Mat image = Imgcodecs.imread(input.getPath(), Imgcodecs.IMREAD_COLOR);
+        Mat result = null;
+        try {
+            if (image.empty()) {
+                return report(new FileResult(input, System.nanoTime() - start, 0, "nie można wczytać obrazu"));
+            }
+
+            long pixels = image.total();
+            Imgproc.cvtColor(image, image, Imgproc.COLOR_BGR2BGRA);
+            result = pipeline.apply(image);
+            OperationUtils.toByteImage(result);
+            if (result.channels() == 4) {
+                Imgproc.cvtColor(result, result, Imgproc.COLOR_BGRA2BGR);
+            }
+
+            if (!Imgcodecs.imwrite(output.getPath(), result)) {
+                return report(new FileResult(input, System.nanoTime() - start, pixels, "nie można zapisać obrazu"));
+            }
+
+            return report(new FileResult(input, System.nanoTime() - start, pixels, null));
+        } catch (RuntimeException e) {
+            return report(new FileResult(input, System.nanoTime() - start, 0, e.toString()));
+        } finally {
+            image.release();
+            if (result != null) {
+                result.release();
+            }
+        }
+    }
+
+    /**
+     * Wypisuje wynik przetworzenia pliku.
+     *
+     * @param result wynik przetworzenia pliku
+     * @return ten sam wynik
+     */
+    private FileResult report(FileResult result) {
+        String status = result.isSuccessful() ? "OK" : "BŁĄD (" + result.getError() + ")";
+        synchronized (out) {
+            out.println(String.format(Locale.ROOT, "%-40s %10.1f ms  %s",
+                    result.getFile().getName(), result.getNanos() / NANOS_IN_MILLI, status));
+        }
+
+        return result;
+    }
+
+    /**
+     * Sprawdza czy dany plik ma rozszerzenie akceptowanego typu.
+     *
+     * @param file plik do sprawdzenia
+     * @return <tt>true</tt> jeśli plik jest akceptowany
+     */
+    private boolean hasAcceptedExtension(File file) {
+        String extension = FilenameUtils.getExtension(file.getName()).toLowerCase(Locale.ROOT);
+        return file.isFile() && ACCEPTED_EXTENSIONS.contains(extension);
+    }
+}
@@ -0,0 +1,68 @@
+package pl.betweenthelines.pikasso.batch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Locale;
+
+/**
+ * Podsumowanie przetwarzania wsadowego - czasy przetwarzania plików
+ * i przepustowość.
+ */
+@Getter
+@AllArgsConstructor
+public class BatchReport {
+
+    private static final double NANOS_IN_MILLI = 1_000_000.0;
+    private static final double NANOS_IN_SECOND = 1_000_000_000.0;
+    private static final double PIXELS_IN_MEGAPIXEL = 1_000_000.0;
+
+    /**
+     * Wyniki przetwarzania poszczególnych plików.
+     */
+    private List<FileResult> results;
+
+    /**
+     * Całkowity czas przetwarzania w nanosekundach.
+     */
+    private long wallNanos;
+
+    /**
+     * Liczba wątków przetwarzających pliki.
+     */
+    private int threads;
+
+    public long getFailedCount() {
+        return results.stream().filter(result -> !result.isSuccessful()).count();
+    }
+
+    /**
+     * Wypisuje podsumowanie przetwarzania.
+     *
+     * @param out strumień wyjściowy
+     */
+    public void print(PrintStream out) {
+        LongSummaryStatistics times = results.stream()
+                .filter(FileResult::isSuccessful)
+                .mapToLong(FileResult::getNanos)
+                .summaryStatistics();
+        long pixels = results.stream()
+                .filter(FileResult::isSuccessful)
+                .mapToLong(FileResult::getPixels)
+                .sum();
+        double seconds = wallNanos / NANOS_IN_SECOND;
+
+        out.println();
+        out.println(String.format(Locale.ROOT, "Przetworzono plików: %d (błędów: %d), wątków: %d, czas: %.2f s",
+                times.getCount(), getFailedCount(), threads, seconds));
+        if (times.getCount() > 0) {
+            out.println(String.format(Locale.ROOT, "Czas na plik: średnio %.1f ms, min %.1f ms, max %.1f ms",
+                    times.getAverage() / NANOS_IN_MILLI, times.getMin() / NANOS_IN_MILLI, times.getMax() / NANOS_IN_MILLI));
+            out.println(String.format(Locale.ROOT, "Przepustowość: %.2f plików/s, %.2f MPix/s",
+                    times.getCount() / seconds, pixels / PIXELS_IN_MEGAPIXEL / seconds));
+        }
+    }
+}
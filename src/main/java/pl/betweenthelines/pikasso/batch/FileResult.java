@@ -0,0 +1,36 @@
+package pl.betweenthelines.pikasso.batch;
+
+import lombok.Value;
+
+import java.io.File;
+
+/**
+ * Wynik przetworzenia pojedynczego pliku.
+ */
+@Value
+public class FileResult {
+
+    /**
+     * Przetworzony plik.
+     */
+    private File file;
+
+    /**
+     * Czas przetwarzania (wczytanie, potok i zapis) w nanosekundach.
+     */
+    private long nanos;
+
+    /**
+     * Liczba pikseli obrazu.
+     */
+    private long pixels;
+
+    /**
+     * Opis błędu lub <tt>null</tt>, jeśli plik został przetworzony poprawnie.
+     */
+    private String error;
+
+    public boolean isSuccessful() {
+        return error == null;
+    }
+}
@@ -0,0 +1,113 @@
+package pl.betweenthelines.pikasso.batch;
+
+import lombok.Getter;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Potok przetwarzania obrazu - ciąg kroków wykonywanych kolejno na obrazie.
+ * <p>
+ * Opis potoku składa się z kroków oddzielonych strzałką (<tt>-&gt;</tt> lub <tt>→</tt>)
+ * albo znakiem <tt>|</tt>. Krok to nazwa operacji, jej argumenty i opcjonalna liczba
+ * powtórzeń, np.:
+ * <pre>
+ * median 5x5 x2 -&gt; sobel XY -&gt; scale METHOD_3 -&gt; threshold 128
+ * </pre>
+ *
+ * @see PipelineSteps
+ */
+@Getter
+public class Pipeline {
+
+    private static final Pattern STEP_SEPARATOR = Pattern.compile("->|→|\\|");
+    private static final Pattern TIMES = Pattern.compile("[x×](\\d+)");
+
+    private List<PipelineStep> steps;
+
+    private Pipeline(List<PipelineStep> steps) {
+        this.steps = Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * Tworzy potok na podstawie opisu.
+     *
+     * @param description opis potoku
+     * @return potok przetwarzania
+     * @throws IllegalArgumentException jeśli opis jest niepoprawny
+     */
+    public static Pipeline parse(String description) {
+        List<PipelineStep> steps = new ArrayList<>();
+        for (String step : STEP_SEPARATOR.split(description)) {
+            if (!step.trim().isEmpty()) {
+                steps.add(parseStep(step.trim()));
+            }
+        }
+
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("Potok nie zawiera żadnej operacji!");
+        }
+
+        return new Pipeline(steps);
+    }
+
+    /**
+     * Tworzy krok potoku na podstawie opisu.
+     *
+     * @param step opis kroku
+     * @return krok potoku
+     */
+    private static PipelineStep parseStep(String step) {
+        List<String> tokens = new ArrayList<>(Arrays.asList(step.split("\\s+")));
+        String name = tokens.remove(0);
+
+        int times = 1;
+        if (!tokens.isEmpty()) {
+            Matcher matcher = TIMES.matcher(tokens.get(tokens.size() - 1));
+            if (matcher.matches()) {
+                times = Integer.parseInt(matcher.group(1));
+                tokens.remove(tokens.size() - 1);
+            }
+        }
+
+        if (times < 1) {
+            throw new IllegalArgumentException("Niepoprawna liczba powtórzeń: " + step);
+        }
+
+        String description = tokens.isEmpty() ? name : name + " " + String.join(" ", tokens);
+        return new PipelineStep(description, times, PipelineSteps.create(name, tokens));
+    }
+
+    /**
+     * Wykonuje kolejno wszystkie kroki potoku na obrazie. Obrazy pośrednie
+     * są zwalniane.
+     *
+     * @param image obraz wejściowy (niemodyfikowany)
+     * @return obraz wynikowy
+     */
+    public Mat apply(Mat image) {
+        Mat result = image;
+        for (PipelineStep step : steps) {
+            Mat next = step.apply(result);
+            if (result != image) {
+                result.release();
+            }
+            result = next;
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return steps.stream()
+                .map(PipelineStep::toString)
+                .collect(Collectors.joining(" -> "));
+    }
+}
@@ -0,0 +1,52 @@
+package pl.betweenthelines.pikasso.batch;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.opencv.core.Mat;
+import pl.betweenthelines.pikasso.engine.Operation;
+
+/**
+ * Pojedynczy krok potoku przetwarzania - operacja wykonywana na obrazie
+ * podaną liczbę razy.
+ */
+@Getter
+@AllArgsConstructor
+public class PipelineStep {
+
+    /**
+     * Opis kroku (tak jak został podany w potoku).
+     */
+    private String description;
+
+    /**
+     * Liczba powtórzeń operacji.
+     */
+    private int times;
+
+    /**
+     * Operacja wykonywana na obrazie.
+     */
+    private Operation operation;
+
+    /**
+     * Wykonuje operację na obrazie. Obrazy pośrednie są zwalniane.
+     *
+     * @param image obraz wejściowy (niemodyfikowany)
+     * @return obraz wynikowy
+     */
+    public Mat apply(Mat image) {
+        Mat result = operation.apply(image);
+        for (int i = 1; i < times; i++) {
+            Mat next = operation.apply(result);
+            result.release();
+            result = next;
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return times > 1 ? description + " x" + times : description;
+    }
+}
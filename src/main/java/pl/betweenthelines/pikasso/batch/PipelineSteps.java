@@ -0,0 +1,240 @@
+package pl.betweenthelines.pikasso.batch;
+
+import org.opencv.core.Core;
+import org.opencv.core.Scalar;
+import pl.betweenthelines.pikasso.engine.*;
+import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask3x3;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.MaskUtils;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.DO_NOTHING;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.*;
+
+/**
+ * Tworzy kroki potoku przetwarzania (operacje silnika) na podstawie ich nazw
+ * i argumentów.
+ * <p>
+ * Dostępne operacje:
+ * <ul>
+ * <li><tt>gray</tt> - konwersja do odcieni szarości</li>
+ * <li><tt>median 3|5|7|9|11</tt> (lub np. <tt>5x5</tt>) - filtr medianowy</li>
+ * <li><tt>smooth SMOOTH_1|SMOOTH_2 [brzeg]</tt> - wygładzanie liniowe</li>
+ * <li><tt>sharpen SHARPEN_1..3 [brzeg]</tt> - wyostrzanie (z rozmyciem gaussowskim)</li>
+ * <li><tt>edge EDGE_DETECTION_1..4 [brzeg]</tt> - detekcja krawędzi (z rozmyciem gaussowskim)</li>
+ * <li><tt>sobel X|Y|XY [brzeg]</tt>, <tt>prewitt X|Y [brzeg]</tt> - filtry kierunkowe</li>
+ * <li><tt>mask plik[+plik...] [brzeg]</tt> - filtracja maską własną dowolnej nieparzystej
+ * wielkości wczytaną z pliku tekstowego; kilka masek połączonych znakiem <tt>+</tt>
+ * jest łączonych w jedną maskę i stosowanych jedną filtracją</li>
+ * <li><tt>roberts dolny górny</tt> - detekcja krawędzi algorytmem Canny'ego</li>
+ * <li><tt>scale METHOD_1|METHOD_2|METHOD_3</tt> - skalowanie wyniku</li>
+ * <li><tt>threshold poziom [inverted]</tt> - progowanie</li>
+ * <li><tt>negate</tt> - negacja</li>
+ * </ul>
+ * Brzeg może mieć wartość <tt>constant</tt> (domyślnie), <tt>replicate</tt>, <tt>reflect</tt>,
+ * <tt>min</tt> lub <tt>max</tt> - tak jak opcje pikseli brzegowych w oknach operacji.
+ */
+public class PipelineSteps {
+
+    private static final int MAX_LEVEL = 255;
+
+    private static final List<Integer> MEDIAN_KERNEL_SIZES = Arrays.asList(3, 5, 7, 9, 11);
+
+    private static final List<Mask3x3> SMOOTH_MASKS = Arrays.asList(SMOOTH_1, SMOOTH_2);
+    private static final List<Mask3x3> SHARPEN_MASKS = Arrays.asList(SHARPEN_1, SHARPEN_2, SHARPEN_3);
+    private static final List<Mask3x3> EDGE_DETECTION_MASKS = Arrays.asList(EDGE_DETECTION_1, EDGE_DETECTION_2, EDGE_DETECTION_3, EDGE_DETECTION_4);
+
+    /**
+     * Tworzy operację o podanej nazwie.
+     *
+     * @param name      nazwa operacji
+     * @param arguments argumenty operacji
+     * @return operacja
+     * @throws IllegalArgumentException jeśli operacja lub jej argumenty są niepoprawne
+     */
+    public static Operation create(String name, List<String> arguments) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "gray":
+                expectArguments(name, arguments, 0, 0);
+                return new GrayscaleOperation();
+            case "median":
+                expectArguments(name, arguments, 1, 1);
+                return new MedianOperation(new MedianOperation.Parameters(parseKernelSize(arguments.get(0)), 1, false));
+            case "smooth":
+                expectArguments(name, arguments, 1, 2);
+                return linear(findMask(SMOOTH_MASKS, arguments.get(0)), false, false, arguments);
+            case "sharpen":
+                expectArguments(name, arguments, 1, 2);
+                return linear(findMask(SHARPEN_MASKS, arguments.get(0)), true, false, arguments);
+            case "edge":
+                expectArguments(name, arguments, 1, 2);
+                return linear(findMask(EDGE_DETECTION_MASKS, arguments.get(0)), true, false, arguments);
+            case "prewitt":
+                expectArguments(name, arguments, 1, 2);
+                return linear(findMask(Arrays.asList(PREWITT_X, PREWITT_Y), "PREWITT_" + arguments.get(0)), true, true, arguments);
+            case "mask":
+                expectArguments(name, arguments, 1, 2);
+                return linear(readMasks(arguments.get(0)), false, false, arguments);
+            case "sobel":
+                expectArguments(name, arguments, 1, 2);
+                return sobel(arguments.get(0), arguments);
+            case "roberts":
+                expectArguments(name, arguments, 2, 2);
+                return new CannyOperation(new CannyOperation.Parameters(
+                        parseLevel(arguments.get(0)), parseLevel(arguments.get(1)), false, 1, DO_NOTHING));
+            case "scale":
+                expectArguments(name, arguments, 1, 1);
+                return new ScalingOperation(new ScalingOperation.Parameters(parseScalingMethod(arguments.get(0))));
+            case "threshold":
+                expectArguments(name, arguments, 1, 2);
+                boolean inverted = arguments.size() > 1 && "inverted".equalsIgnoreCase(arguments.get(1));
+                return new ThresholdOperation(new ThresholdOperation.Parameters(parseLevel(arguments.get(0)), inverted, false));
+            case "negate":
+                expectArguments(name, arguments, 0, 0);
+                return new NegationOperation();
+            default:
+                throw new IllegalArgumentException("Nieznana operacja: " + name);
+        }
+    }
+
+    /**
+     * Filtracja maską, tak jak w oknach operacji liniowych.
+     *
+     * @param mask      maska
+     * @param blur      czy przed filtracją wykonać rozmycie gaussowskie
+     * @param gray      czy przed filtracją zamienić obraz na szaroodcieniowy
+     * @param arguments argumenty operacji (drugi argument to opcjonalny typ brzegu)
+     * @return operacja
+     */
+    private static Operation linear(Mask mask, boolean blur, boolean gray, List<String> arguments) {
+        String borderOption = arguments.size() > 1 ? arguments.get(1) : "constant";
+
+        return new LinearFilterOperation(new LinearFilterOperation.Parameters(mask, null, gray, blur,
+                parseBorderType(borderOption), parseBorderValue(borderOption), 1, DO_NOTHING, false, false));
+    }
+
+    private static Operation sobel(String direction, List<String> arguments) {
+        int dx;
+        int dy;
+        switch (direction.toUpperCase(Locale.ROOT)) {
+            case "X":
+                dx = 1;
+                dy = 0;
+                break;
+            case "Y":
+                dx = 0;
+                dy = 1;
+                break;
+            case "XY":
+                dx = 1;
+                dy = 1;
+                break;
+            default:
+                throw new IllegalArgumentException("Nieznany kierunek filtru Sobela: " + direction);
+        }
+
+        String borderOption = arguments.size() > 1 ? arguments.get(1) : "constant";
+
+        return new SobelOperation(new SobelOperation.Parameters(dx, dy, SobelOperation.SOBEL_KERNEL_SIZE,
+                parseBorderType(borderOption), parseBorderValue(borderOption), 1, DO_NOTHING));
+    }
+
+    private static void expectArguments(String name, List<String> arguments, int min, int max) {
+        if (arguments.size() < min || arguments.size() > max) {
+            throw new IllegalArgumentException("Niepoprawna liczba argumentów operacji " + name + ": " + arguments);
+        }
+    }
+
+    private static Mask3x3 findMask(List<Mask3x3> masks, String name) {
+        return masks.stream()
+                .filter(mask -> mask.getName().equalsIgnoreCase(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Nieznana maska: " + name));
+    }
+
+    private static Mask readMasks(String argument) {
+        List<Mask> masks = new ArrayList<>();
+        for (String file : argument.split("\\+")) {
+            try {
+                masks.add(MaskUtils.readMask(Paths.get(file)));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Nie można wczytać maski: " + file, e);
+            }
+        }
+
+        return masks.size() == 1 ? masks.get(0) : MaskUtils.combine(masks);
+    }
+
+    private static int parseKernelSize(String argument) {
+        String size = argument.toLowerCase(Locale.ROOT).split("x")[0];
+        int kernelSize = parseInt(size);
+        if (!MEDIAN_KERNEL_SIZES.contains(kernelSize)) {
+            throw new IllegalArgumentException("Niepoprawny rozmiar maski: " + argument);
+        }
+
+        return kernelSize;
+    }
+
+    private static int parseLevel(String argument) {
+        int level = parseInt(argument);
+        if (level < 0 || level > MAX_LEVEL) {
+            throw new IllegalArgumentException("Niepoprawny poziom jasności: " + argument);
+        }
+
+        return level;
+    }
+
+    private static byte parseScalingMethod(String argument) {
+        switch (argument.toUpperCase(Locale.ROOT)) {
+            case "METHOD_1":
+                return MatScalingUtils.METHOD_1;
+            case "METHOD_2":
+                return MatScalingUtils.METHOD_2;
+            case "METHOD_3":
+                return MatScalingUtils.METHOD_3;
+            default:
+                throw new IllegalArgumentException("Nieznana metoda skalowania: " + argument);
+        }
+    }
+
+    private static int parseBorderType(String argument) {
+        switch (argument.toLowerCase(Locale.ROOT)) {
+            case "constant":
+            case "min":
+            case "max":
+                return Core.BORDER_CONSTANT;
+            case "replicate":
+                return Core.BORDER_REPLICATE;
+            case "reflect":
+                return Core.BORDER_DEFAULT;
+            default:
+                throw new IllegalArgumentException("Nieznany typ pikseli brzegowych: " + argument);
+        }
+    }
+
+    private static Scalar parseBorderValue(String argument) {
+        switch (argument.toLowerCase(Locale.ROOT)) {
+            case "min":
+                return new Scalar(0, 0, 0, 255);
+            case "max":
+                return new Scalar(255, 255, 255, 255);
+            default:
+                return null;
+        }
+    }
+
+    private static int parseInt(String argument) {
+        try {
+            return Integer.parseInt(argument);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Niepoprawna liczba: " + argument);
+        }
+    }
+}
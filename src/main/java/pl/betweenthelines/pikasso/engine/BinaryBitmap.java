@@ -0,0 +1,111 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+
+/**
+ * Mapa bitowa obrazu - jeden bit na piksel, wierszami, po 64 piksele w słowie
+ * <tt>long</tt> (bit <tt>i</tt> słowa odpowiada kolumnie <tt>64 * słowo + i</tt>).
+ * Każdy wiersz zaczyna się od nowego słowa, więc wątki zmieniające różne wiersze
+ * nie zapisują tych samych słów.
+ */
+@Getter
+class BinaryBitmap {
+
+    private static final int WORD_BITS = 64;
+
+    private final int rows;
+    private final int cols;
+
+    /**
+     * Liczba słów w wierszu.
+     */
+    private final int wordsPerRow;
+
+    private final long[] words;
+
+    /**
+     * Tworzy pustą mapę bitową (wszystkie bity wyzerowane).
+     *
+     * @param rows liczba wierszy
+     * @param cols liczba kolumn
+     */
+    BinaryBitmap(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.wordsPerRow = (cols + WORD_BITS - 1) / WORD_BITS;
+        this.words = new long[rows * wordsPerRow];
+    }
+
+    /**
+     * Tworzy mapę bitową pikseli obrazu 8-bitowego o podanej wartości.
+     *
+     * @param pixels wartości pikseli (wierszami)
+     * @param rows   liczba wierszy
+     * @param cols   liczba kolumn
+     * @param value  wartość pikseli, których bity są ustawiane
+     * @return mapa bitowa
+     */
+    static BinaryBitmap of(byte[] pixels, int rows, int cols, byte value) {
+        BinaryBitmap bitmap = new BinaryBitmap(rows, cols);
+        for (int row = 0; row < rows; row++) {
+            int offset = row * cols;
+            for (int col = 0; col < cols; col++) {
+                if (pixels[offset + col] == value) {
+                    bitmap.set(row, col);
+                }
+            }
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * @param row wiersz
+     * @param col kolumna
+     * @return 1, jeśli bit piksela jest ustawiony, w przeciwnym wypadku 0
+     */
+    int get(int row, int col) {
+        return (int) (words[row * wordsPerRow + col / WORD_BITS] >>> (col % WORD_BITS)) & 1;
+    }
+
+    void set(int row, int col) {
+        words[row * wordsPerRow + col / WORD_BITS] |= 1L << (col % WORD_BITS);
+    }
+
+    void clear(int row, int col) {
+        words[row * wordsPerRow + col / WORD_BITS] &= ~(1L << (col % WORD_BITS));
+    }
+
+    /**
+     * @param row  wiersz
+     * @param word indeks słowa w wierszu
+     * @return słowo (0 dla wierszy i słów spoza mapy)
+     */
+    long word(int row, int word) {
+        if (row < 0 || row >= rows || word < 0 || word >= wordsPerRow) {
+            return 0;
+        }
+
+        return words[row * wordsPerRow + word];
+    }
+
+    /**
+     * @param row  wiersz
+     * @param word indeks słowa w wierszu
+     * @return słowo z bitami przesuniętymi tak, że bit kolumny <tt>c</tt> zawiera
+     * bit kolumny <tt>c - 1</tt> (lewego sąsiada)
+     */
+    long leftNeighbours(int row, int word) {
+        return (word(row, word) << 1) | (word(row, word - 1) >>> (WORD_BITS - 1));
+    }
+
+    /**
+     * @param row  wiersz
+     * @param word indeks słowa w wierszu
+     * @return słowo z bitami przesuniętymi tak, że bit kolumny <tt>c</tt> zawiera
+     * bit kolumny <tt>c + 1</tt> (prawego sąsiada)
+     */
+    long rightNeighbours(int row, int word) {
+        return (word(row, word) >>> 1) | (word(row, word + 1) << (WORD_BITS - 1));
+    }
+}
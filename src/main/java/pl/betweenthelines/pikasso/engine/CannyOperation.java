@@ -0,0 +1,71 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
+import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+
+/**
+ * Detekcja krawędzi algorytmem Canny'ego na obrazie szaroodcieniowym,
+ * poprzedzona rozmyciem gaussowskim (wykorzystywana w oknie filtru Robertsa).
+ */
+@Getter
+public class CannyOperation implements Operation {
+
+    /**
+     * Parametry detekcji krawędzi.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Dolny i górny próg histerezy.
+         */
+        private int lowThreshold;
+        private int highThreshold;
+
+        /**
+         * Czy gradient ma być liczony normą L2.
+         */
+        private boolean l2Gradient;
+
+        /**
+         * Liczba powtórzeń operacji.
+         */
+        private int times;
+
+        /**
+         * Metoda skalowania wyniku (z <tt>MatScalingUtils</tt>).
+         */
+        private byte scalingMethod;
+    }
+
+    private static final int APERTURE_SIZE = 3;
+
+    private final Parameters parameters;
+
+    public CannyOperation(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            OperationUtils.toGray(image);
+            OperationUtils.toByteImage(image);
+
+            for (int i = 0; i < parameters.getTimes(); i++) {
+                OperationUtils.checkInterrupted();
+                FilteringUtils.blur(image);
+                Imgproc.Canny(image, image, parameters.getLowThreshold(), parameters.getHighThreshold(),
+                        APERTURE_SIZE, parameters.isL2Gradient());
+            }
+
+            MatScalingUtils.scale(image, parameters.getScalingMethod());
+            return scope.keep(image);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package pl.betweenthelines.pikasso.engine;
+
+import org.opencv.core.Mat;
+
+/**
+ * Zamiana obrazu na szaroodcieniowy.
+ */
+public class GrayscaleOperation implements Operation {
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            OperationUtils.toGray(image);
+
+            return scope.keep(image);
+        }
+    }
+}
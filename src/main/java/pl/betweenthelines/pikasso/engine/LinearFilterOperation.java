@@ -0,0 +1,228 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
+import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.MaskUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.SMOOTH_2;
+
+/**
+ * Filtracja liniowa maską (lub dwiema maskami kolejno) z opcjonalnym rozmyciem
+ * gaussowskim, zamianą na obraz szaroodcieniowy i skalowaniem wyniku.
+ * Wykorzystywana przez okna wygładzania, wyostrzania, detekcji krawędzi,
+ * filtru Prewitta i masek własnych.
+ * <p>
+ * W trybie kafelkowym pojedyncza filtracja jedną maską jest wykonywana równolegle
+ * kafelkami ({@link FilteringUtils#applyMaskTiled}), a wynikiem jest od razu obraz
+ * 8-bitowy - taki sam, jak po konwersji wyniku trybu zwykłego do 8 bitów (np. przy
+ * wyświetlaniu lub zapisie). Pozostałe przypadki są wykonywane w trybie zwykłym.
+ * <p>
+ * Przy masce złożonej powtórzenia filtracji (razem z rozmyciem i drugą maską) są
+ * zastępowane jedną filtracją maską złożoną ({@link MaskUtils#compose(List, int)}),
+ * którą można też wykonać kafelkami.
+ */
+@Getter
+public class LinearFilterOperation implements Operation {
+
+    /**
+     * Parametry filtracji.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Maska filtrowania.
+         */
+        private Mask mask;
+
+        /**
+         * Druga maska stosowana po pierwszej (lub <tt>null</tt>).
+         */
+        private Mask secondMask;
+
+        /**
+         * Czy przed filtracją obraz ma zostać zamieniony na szaroodcieniowy.
+         */
+        private boolean grayscale;
+
+        /**
+         * Czy przed każdą filtracją wykonać rozmycie gaussowskie.
+         */
+        private boolean blur;
+
+        /**
+         * Metoda operacji na pikselach brzegowych i ich wartość (jeżeli stała).
+         */
+        private int borderType;
+        private Scalar border;
+
+        /**
+         * Liczba powtórzeń filtracji.
+         */
+        private int times;
+
+        /**
+         * Metoda skalowania wyniku (z <tt>MatScalingUtils</tt>).
+         */
+        private byte scalingMethod;
+
+        /**
+         * Czy wynik ma zostać zamieniony na wartości bezwzględne (8-bitowe).
+         */
+        private boolean absolute;
+
+        /**
+         * Czy powtórzenia filtracji mają zostać zastąpione jedną filtracją maską złożoną.
+         * Wynik różni się od powtarzania tylko przy brzegu obrazu.
+         */
+        private boolean composed;
+    }
+
+    private final Parameters parameters;
+
+    /**
+     * Czy filtracja ma być wykonywana kafelkami (z wynikiem 8-bitowym).
+     */
+    private final boolean tiled;
+
+    public LinearFilterOperation(Parameters parameters) {
+        this(parameters, false);
+    }
+
+    /**
+     * @param parameters parametry filtracji
+     * @param tiled      czy filtracja ma być wykonywana kafelkami (z wynikiem 8-bitowym)
+     */
+    public LinearFilterOperation(Parameters parameters, boolean tiled) {
+        this.parameters = parameters;
+        this.tiled = tiled;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image;
+            if (parameters.isGrayscale()) {
+                image = scope.newMat(source.rows(), source.cols(), CvType.makeType(source.depth(), 1));
+                OperationUtils.toGray(source, image);
+            } else {
+                image = scope.copy(source);
+            }
+
+            Mask mask = parameters.getMask();
+            Mask secondMask = parameters.getSecondMask();
+            boolean blur = parameters.isBlur();
+            int times = parameters.getTimes();
+            if (isComposable()) {
+                mask = composeMask();
+                secondMask = null;
+                blur = false;
+                times = 1;
+            }
+
+            if (canFilterTiled(secondMask, times)) {
+                if (blur) {
+                    FilteringUtils.blur(image);
+                }
+
+                Mat destination = scope.newMat(image.rows(), image.cols(), CvType.makeType(CvType.CV_8U, image.channels()));
+                FilteringUtils.applyMaskTiled(image, destination, mask, parameters.getBorderType(),
+                        parameters.getBorder(), parameters.getScalingMethod(), parameters.isAbsolute());
+                return scope.keep(destination);
+            }
+
+            int filteredType = CvType.makeType(CvType.CV_32F, image.channels());
+            Mat[] buffers = new Mat[2];
+            for (int i = 0; i < times; i++) {
+                OperationUtils.checkInterrupted();
+                if (buffers[i % 2] == null) {
+                    buffers[i % 2] = scope.newMat(image.rows(), image.cols(), filteredType);
+                }
+                filter(scope, image, buffers[i % 2], mask, secondMask, blur);
+                image = buffers[i % 2];
+            }
+
+            if (parameters.isAbsolute()) {
+                Mat absolute = scope.newMat(image.rows(), image.cols(), CvType.makeType(CvType.CV_8U, image.channels()));
+                Core.convertScaleAbs(image, absolute);
+                image = absolute;
+            }
+
+            MatScalingUtils.scale(image, parameters.getScalingMethod());
+            return scope.keep(image);
+        }
+    }
+
+    /**
+     * @return czy kilka filtracji (powtórzenia, rozmycie, druga maska) ma zostać
+     * zastąpionych jedną filtracją maską złożoną
+     */
+    private boolean isComposable() {
+        return parameters.isComposed()
+                && (parameters.getTimes() > 1 || parameters.isBlur() || parameters.getSecondMask() != null);
+    }
+
+    /**
+     * Składa rozmycie gaussowskie (maska <tt>SMOOTH_2</tt>, równa jądru rozmycia 3x3),
+     * maskę filtrowania i drugą maskę w jedną maskę powtórzoną podaną liczbę razy.
+     *
+     * @return maska złożona
+     */
+    private Mask composeMask() {
+        List<Mask> masks = new ArrayList<>();
+        if (parameters.isBlur()) {
+            masks.add(SMOOTH_2);
+        }
+        masks.add(parameters.getMask());
+        if (parameters.getSecondMask() != null) {
+            masks.add(parameters.getSecondMask());
+        }
+
+        return MaskUtils.compose(masks, parameters.getTimes());
+    }
+
+    /**
+     * @param secondMask druga maska (lub <tt>null</tt>)
+     * @param times      liczba powtórzeń filtracji
+     * @return czy filtracja może zostać wykonana kafelkami (pojedyncza filtracja jedną maską)
+     */
+    private boolean canFilterTiled(Mask secondMask, int times) {
+        return tiled && times == 1 && secondMask == null
+                && (parameters.getBorderType() & Core.BORDER_ISOLATED) == 0;
+    }
+
+    /**
+     * Przeprowadza pojedynczą filtrację. Obrazy pośrednie są pobierane z puli,
+     * więc przy kolejnych podglądach nie jest przydzielana nowa pamięć.
+     *
+     * @param scope       zakres obiektów pośrednich
+     * @param image       obraz (modyfikowany przez rozmycie)
+     * @param destination obraz wynikowy (CV_32F)
+     * @param mask        maska filtrowania
+     * @param secondMask  druga maska (lub <tt>null</tt>)
+     * @param blur        czy przed filtracją wykonać rozmycie gaussowskie
+     */
+    private void filter(MatScope scope, Mat image, Mat destination, Mask mask, Mask secondMask, boolean blur) {
+        if (blur) {
+            FilteringUtils.blur(image);
+        }
+
+        if (secondMask != null) {
+            Mat intermediate = scope.newMat(destination.rows(), destination.cols(), destination.type());
+            FilteringUtils.applyMasks(image, intermediate, destination, mask, secondMask,
+                    parameters.getBorderType(), parameters.getBorder());
+        } else {
+            FilteringUtils.applyMask(image, destination, mask, parameters.getBorderType(), parameters.getBorder());
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Value;
+import org.opencv.core.Mat;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pula obiektów Mat wielokrotnego użytku, pogrupowanych według rozmiaru i typu.
+ * <p>
+ * Każde odświeżenie podglądu tworzy obiekty Mat o tych samych wymiarach i typie
+ * (kopie obrazu, obrazy pośrednie CV_32F, obrazy wynikowe). Zamiast zwalniać je po
+ * operacji, {@link MatScope} oddaje je do puli, a kolejna operacja pobiera je z niej
+ * - dzięki temu przy przesuwaniu suwaka pamięć natywna nie jest przydzielana na nowo.
+ * <p>
+ * Pula jest ograniczona łącznym rozmiarem danych ({@value #DEFAULT_MAX_MB} MB,
+ * parametr JVM <tt>-Dpikasso.mat.pool.mb</tt>; 0 wyłącza pulę). Po przekroczeniu
+ * limitu zwalniane są obiekty z grupy używanej najdawniej. Do puli trafiają tylko
+ * obiekty klasy Mat posiadające własne, ciągłe dane (nie widoki <tt>submat</tt>).
+ * Zawartość pobranego obiektu jest nieokreślona - tak jak przy <tt>new Mat(rows, cols, type)</tt>.
+ * <p>
+ * Metody mogą być wywoływane z dowolnego wątku.
+ */
+public class MatPool {
+
+    private static final long DEFAULT_MAX_MB = 256;
+
+    private static final long BYTES_IN_MB = 1024 * 1024;
+
+    /**
+     * Maksymalny łączny rozmiar danych obiektów w puli (w bajtach).
+     */
+    private static final long MAX_BYTES = Long.getLong("pikasso.mat.pool.mb", DEFAULT_MAX_MB) * BYTES_IN_MB;
+
+    /**
+     * Rozmiar i typ obiektów w grupie.
+     */
+    @Value
+    private static class Key {
+        private int rows;
+        private int cols;
+        private int type;
+    }
+
+    /**
+     * Wolne obiekty pogrupowane według rozmiaru i typu (od używanej najdawniej grupy).
+     */
+    private static final Map<Key, Deque<Mat>> FREE = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Łączny rozmiar danych wolnych obiektów (w bajtach).
+     */
+    private static long freeBytes;
+
+    /**
+     * Liczba pobrań obsłużonych z puli i wymagających utworzenia nowego obiektu.
+     */
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    /**
+     * Pobiera obiekt z puli lub tworzy nowy, jeśli pula nie zawiera obiektu
+     * o podanym rozmiarze i typie. Obiekt należy oddać metodą {@link #giveBack(Mat)}
+     * (lub pobrać przez {@link MatScope#newMat(int, int, int)}).
+     *
+     * @param rows liczba wierszy
+     * @param cols liczba kolumn
+     * @param type typ elementów
+     * @return obiekt Mat o podanym rozmiarze i typie
+     */
+    public static Mat borrow(int rows, int cols, int type) {
+        synchronized (FREE) {
+            Deque<Mat> free = FREE.get(new Key(rows, cols, type));
+            if (free != null && !free.isEmpty()) {
+                Mat mat = free.pop();
+                freeBytes -= bytes(mat);
+                HITS.incrementAndGet();
+                return MatTracker.register(mat);
+            }
+        }
+
+        MISSES.incrementAndGet();
+        return MatTracker.register(new Mat(rows, cols, type));
+    }
+
+    /**
+     * Oddaje obiekt do puli. Obiekt, który nie może trafić do puli (widok, obiekt
+     * pusty, podklasa Mat) lub nie mieści się w limicie, jest zwalniany.
+     * Po oddaniu obiekt nie może być już używany.
+     *
+     * @param mat obiekt Mat
+     */
+    public static void giveBack(Mat mat) {
+        long bytes = bytes(mat);
+        if (!isPoolable(mat) || bytes > MAX_BYTES) {
+            mat.release();
+            return;
+        }
+
+        synchronized (FREE) {
+            evict(MAX_BYTES - bytes);
+            FREE.computeIfAbsent(new Key(mat.rows(), mat.cols(), mat.type()), key -> new ArrayDeque<>()).push(mat);
+            freeBytes += bytes;
+        }
+    }
+
+    /**
+     * Zwalnia wszystkie wolne obiekty puli.
+     */
+    public static void clear() {
+        synchronized (FREE) {
+            evict(0);
+        }
+    }
+
+    /**
+     * @return liczba pobrań obsłużonych z puli
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * @return liczba pobrań, przy których utworzono nowy obiekt
+     */
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    /**
+     * @return łączny rozmiar danych wolnych obiektów w puli (w bajtach)
+     */
+    public static long getFreeBytes() {
+        synchronized (FREE) {
+            return freeBytes;
+        }
+    }
+
+    /**
+     * @return opis stanu puli (do raportu diagnostycznego)
+     */
+    public static String statistics() {
+        return String.format(Locale.ROOT, "Pula obiektów Mat: %d trafień, %d chybień, %.1f MB wolnych",
+                getHits(), getMisses(), (double) getFreeBytes() / BYTES_IN_MB);
+    }
+
+    /**
+     * Zwalnia wolne obiekty z grup używanych najdawniej, dopóki łączny rozmiar
+     * danych przekracza podany limit.
+     *
+     * @param limit limit rozmiaru danych (w bajtach)
+     */
+    private static void evict(long limit) {
+        Iterator<Deque<Mat>> groups = FREE.values().iterator();
+        while (freeBytes > limit && groups.hasNext()) {
+            Deque<Mat> free = groups.next();
+            while (freeBytes > limit && !free.isEmpty()) {
+                Mat mat = free.removeLast();
+                freeBytes -= bytes(mat);
+                mat.release();
+            }
+            if (free.isEmpty()) {
+                groups.remove();
+            }
+        }
+    }
+
+    private static boolean isPoolable(Mat mat) {
+        return mat.getClass() == Mat.class && mat.dataAddr() != 0 && !mat.isSubmatrix() && mat.isContinuous();
+    }
+
+    private static long bytes(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+}
@@ -0,0 +1,123 @@
+package pl.betweenthelines.pikasso.engine;
+
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Zakres życia obiektów Mat. Obiekty utworzone w zakresie (lub do niego dodane)
+ * są zwalniane przy jego zamknięciu, również gdy operacja zakończy się wyjątkiem.
+ * Dzięki temu pamięć natywna nie czeka na zwolnienie przez odśmiecacz pamięci.
+ * <p>
+ * Obiekty utworzone przez zakres są pobierane z puli {@link MatPool} i do niej
+ * oddawane przy zamknięciu zakresu. Obiekty dodane metodą {@link #track(Mat)}
+ * (np. widoki lub obiekty współdzielone z pamięcią podręczną) są tylko zwalniane,
+ * a do puli trafiają jedynie obiekty dodane metodą {@link #recycle(Mat)}.
+ * <p>
+ * Obiekt, który ma przeżyć zakres (np. wynik operacji), należy z niego wyjąć
+ * metodą {@link #keep(Mat)}:
+ * <pre>
+ * try (MatScope scope = new MatScope()) {
+ *     Mat image = scope.copy(source);
+ *     Mat mask = scope.newMat();
+ *     ...
+ *     return scope.keep(image);
+ * }
+ * </pre>
+ * Zakres nie jest bezpieczny wątkowo - powinien być używany w jednym wątku.
+ *
+ * @see MatTracker
+ */
+public class MatScope implements AutoCloseable {
+
+    /**
+     * Obiekty zwalniane i oddawane do puli przy zamknięciu zakresu.
+     */
+    private final List<Mat> mats = new ArrayList<>();
+    private final List<Mat> pooled = new ArrayList<>();
+
+    /**
+     * @return nowy, pusty obiekt Mat oddawany do puli przy zamknięciu zakresu
+     */
+    public Mat newMat() {
+        return recycle(new Mat());
+    }
+
+    /**
+     * @param rows liczba wierszy
+     * @param cols liczba kolumn
+     * @param type typ elementów
+     * @return obiekt Mat z puli (o nieokreślonej zawartości) oddawany do niej przy zamknięciu zakresu
+     */
+    public Mat newMat(int rows, int cols, int type) {
+        Mat mat = MatPool.borrow(rows, cols, type);
+        pooled.add(mat);
+        return mat;
+    }
+
+    /**
+     * @param source obraz do skopiowania
+     * @return kopia obrazu oddawana do puli przy zamknięciu zakresu
+     */
+    public Mat copy(Mat source) {
+        Mat copy = newMat(source.rows(), source.cols(), source.type());
+        source.copyTo(copy);
+        return copy;
+    }
+
+    /**
+     * Dodaje obiekt do zakresu - zostanie zwolniony przy jego zamknięciu.
+     *
+     * @param mat obiekt Mat
+     * @param <T> typ obiektu (np. <tt>MatOfPoint</tt>)
+     * @return ten sam obiekt
+     */
+    public <T extends Mat> T track(T mat) {
+        mats.add(MatTracker.register(mat));
+        return mat;
+    }
+
+    /**
+     * Dodaje obiekt do zakresu - zostanie oddany do puli przy jego zamknięciu.
+     * Obiekt musi mieć własne dane, niewspółdzielone z innymi obiektami.
+     *
+     * @param mat obiekt Mat
+     * @param <T> typ obiektu
+     * @return ten sam obiekt
+     */
+    public <T extends Mat> T recycle(T mat) {
+        pooled.add(MatTracker.register(mat));
+        return mat;
+    }
+
+    /**
+     * Wyjmuje obiekt z zakresu - nie zostanie zwolniony przy jego zamknięciu.
+     *
+     * @param mat obiekt Mat
+     * @param <T> typ obiektu
+     * @return ten sam obiekt
+     */
+    public <T extends Mat> T keep(T mat) {
+        mats.removeIf(tracked -> tracked == mat);
+        pooled.removeIf(tracked -> tracked == mat);
+        return mat;
+    }
+
+    /**
+     * Zwalnia obiekty zakresu (w kolejności odwrotnej do dodania), a następnie
+     * oddaje do puli obiekty z niej pochodzące.
+     */
+    @Override
+    public void close() {
+        for (int i = mats.size() - 1; i >= 0; i--) {
+            mats.get(i).release();
+        }
+        mats.clear();
+
+        for (Mat mat : pooled) {
+            MatPool.giveBack(mat);
+        }
+        pooled.clear();
+    }
+}
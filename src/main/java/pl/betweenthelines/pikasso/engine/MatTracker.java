@@ -0,0 +1,125 @@
+package pl.betweenthelines.pikasso.engine;
+
+import org.opencv.core.Mat;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Śledzenie obiektów Mat w trybie diagnostycznym, włączanym parametrem JVM
+ * <tt>-Dpikasso.mat.debug=true</tt>.
+ * <p>
+ * W tym trybie zapamiętywane jest miejsce utworzenia każdego obiektu dodanego do
+ * {@link MatScope} (lub zarejestrowanego bezpośrednio), a raport wypisuje liczbę
+ * i rozmiar danych natywnych obiektów, które nie zostały jeszcze zwolnione -
+ * pogrupowane według miejsca utworzenia. Raport jest wypisywany na standardowe
+ * wyjście błędów po każdej zmianie obrazu i przy zamknięciu programu.
+ * <p>
+ * Obiekty są przechowywane przez słabe referencje, więc śledzenie nie wydłuża
+ * ich życia. Widoki (<tt>submat</tt>) są liczone osobno, tak jakby miały własne dane.
+ * Gdy tryb jest wyłączony, rejestracja nic nie robi.
+ */
+public class MatTracker {
+
+    /**
+     * Czy tryb diagnostyczny jest włączony.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("pikasso.mat.debug");
+
+    private static final double BYTES_IN_MB = 1024 * 1024;
+
+    /**
+     * Klasy pomijane przy ustalaniu miejsca utworzenia obiektu (obiekty z puli są
+     * przypisywane do miejsca, które pobrało je z {@link MatPool}).
+     */
+    private static final List<String> SKIPPED_CLASSES = Arrays.asList(MatTracker.class.getName(),
+            MatScope.class.getName(), MatPool.class.getName(), Thread.class.getName());
+
+    /**
+     * Śledzone obiekty i miejsca ich utworzenia.
+     */
+    private static final Map<Mat, String> MATS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    static {
+        if (ENABLED) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> report(System.err)));
+        }
+    }
+
+    /**
+     * Rejestruje obiekt w trybie diagnostycznym. Ponowna rejestracja (np. przy
+     * wydaniu obiektu z puli) zastępuje zapamiętane miejsce utworzenia.
+     *
+     * @param mat obiekt Mat
+     * @param <T> typ obiektu
+     * @return ten sam obiekt
+     */
+    public static <T extends Mat> T register(T mat) {
+        if (ENABLED) {
+            MATS.put(mat, allocationSite());
+        }
+
+        return mat;
+    }
+
+    /**
+     * Wypisuje raport na standardowe wyjście błędów, jeśli tryb diagnostyczny jest włączony.
+     */
+    public static void report() {
+        if (ENABLED) {
+            report(System.err);
+        }
+    }
+
+    /**
+     * Wypisuje liczbę i rozmiar niezwolnionych obiektów, pogrupowane według
+     * miejsca utworzenia (od zajmujących najwięcej pamięci), oraz stan puli
+     * {@link MatPool} (wolne obiekty puli są liczone jako niezwolnione).
+     *
+     * @param out strumień wyjściowy
+     */
+    public static void report(PrintStream out) {
+        Map<String, Long> bytes = new HashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        synchronized (MATS) {
+            MATS.forEach((mat, site) -> {
+                if (mat.dataAddr() != 0) {
+                    bytes.merge(site, bytes(mat), Long::sum);
+                    counts.merge(site, 1, Integer::sum);
+                }
+            });
+        }
+
+        long total = bytes.values().stream().mapToLong(Long::longValue).sum();
+        int count = counts.values().stream().mapToInt(Integer::intValue).sum();
+        out.println(String.format(Locale.ROOT, "Niezwolnione obiekty Mat: %d (%.1f MB)", count, total / BYTES_IN_MB));
+        out.println(MatPool.statistics());
+        bytes.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .forEach(entry -> out.println(String.format(Locale.ROOT, "%10.1f MB %6d  %s",
+                        entry.getValue() / BYTES_IN_MB, counts.get(entry.getKey()), entry.getKey())));
+    }
+
+    private static long bytes(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+
+    /**
+     * @return pierwsza ramka stosu spoza klas śledzących
+     */
+    private static String allocationSite() {
+        for (StackTraceElement element : Thread.currentThread().getStackTrace()) {
+            if (!SKIPPED_CLASSES.contains(element.getClassName())) {
+                return element.toString();
+            }
+        }
+
+        return "?";
+    }
+}
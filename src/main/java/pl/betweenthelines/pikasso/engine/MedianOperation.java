@@ -0,0 +1,81 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Filtr medianowy z opcjonalnym zachowaniem pikseli brzegowych obrazu wejściowego.
+ */
+@Getter
+public class MedianOperation implements Operation {
+
+    /**
+     * Parametry filtru.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Wielkość maski (3, 5, 7, 9 lub 11).
+         */
+        private int kernelSize;
+
+        /**
+         * Liczba powtórzeń filtracji.
+         */
+        private int times;
+
+        /**
+         * Czy piksele brzegowe mają pozostać bez zmian.
+         */
+        private boolean keepBorder;
+    }
+
+    private final Parameters parameters;
+
+    public MedianOperation(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            OperationUtils.toByteImage(image);
+
+            Mat destination = image;
+            Mat[] buffers = new Mat[2];
+            for (int i = 0; i < parameters.getTimes(); i++) {
+                OperationUtils.checkInterrupted();
+                if (buffers[i % 2] == null) {
+                    buffers[i % 2] = scope.newMat(image.rows(), image.cols(), image.type());
+                }
+                Imgproc.medianBlur(destination, buffers[i % 2], parameters.getKernelSize());
+                destination = buffers[i % 2];
+            }
+
+            if (!parameters.isKeepBorder() || destination == image) {
+                return scope.keep(destination);
+            }
+
+            restoreBorder(image, destination);
+            return scope.keep(image);
+        }
+    }
+
+    /**
+     * Przepisuje do obrazu wejściowego wnętrze obrazu po filtracji, pozostawiając
+     * piksele brzegowe bez zmian.
+     *
+     * @param image       obraz wejściowy
+     * @param destination obraz po filtracji
+     */
+    private void restoreBorder(Mat image, Mat destination) {
+        try (MatScope scope = new MatScope()) {
+            Mat cropped = scope.track(destination.submat(1, destination.height() - 1, 1, destination.width() - 1));
+            cropped.copyTo(scope.track(image.submat(1, image.height() - 1, 1, image.width() - 1)));
+        }
+    }
+}
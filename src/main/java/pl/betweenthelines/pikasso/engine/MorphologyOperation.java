@@ -0,0 +1,93 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
+
+/**
+ * Operacje morfologiczne: erozja, dylatacja, otwarcie i zamknięcie.
+ */
+@Getter
+public class MorphologyOperation implements Operation {
+
+    /**
+     * Parametry operacji.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Rodzaj operacji (<tt>Imgproc.MORPH_ERODE</tt>, <tt>MORPH_DILATE</tt>,
+         * <tt>MORPH_OPEN</tt> lub <tt>MORPH_CLOSE</tt>).
+         */
+        private int operation;
+
+        /**
+         * Kształt elementu strukturalnego (<tt>Imgproc.MORPH_RECT</tt>, <tt>MORPH_CROSS</tt> ...).
+         */
+        private int shape;
+
+        /**
+         * Wielkość elementu strukturalnego.
+         */
+        private int size;
+
+        /**
+         * Liczba powtórzeń operacji.
+         */
+        private int times;
+
+        /**
+         * Metoda operacji na pikselach brzegowych i ich wartość (jeżeli stała).
+         */
+        private int borderType;
+        private Scalar border;
+    }
+
+    private static final Point ANCHOR = new Point(-1, -1);
+
+    private final Parameters parameters;
+
+    public MorphologyOperation(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            Mat shape = scope.track(Imgproc.getStructuringElement(parameters.getShape(),
+                    new Size(parameters.getSize(), parameters.getSize())));
+            int times = parameters.getTimes();
+            int borderType = parameters.getBorderType();
+            Scalar border = parameters.getBorder();
+
+            switch (parameters.getOperation()) {
+                case Imgproc.MORPH_ERODE:
+                    Imgproc.erode(image, image, shape, ANCHOR, times, borderType, border);
+                    break;
+                case Imgproc.MORPH_DILATE:
+                    Imgproc.dilate(image, image, shape, ANCHOR, times, borderType, border);
+                    break;
+                case Imgproc.MORPH_OPEN:
+                case Imgproc.MORPH_CLOSE:
+                    Imgproc.morphologyEx(image, image, parameters.getOperation(), shape, ANCHOR, times, borderType, border);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported morphology operation: " + parameters.getOperation());
+            }
+
+            if (borderType == Core.BORDER_CONSTANT) {
+                FilteringUtils.handleBorder(image, border);
+            }
+
+            return scope.keep(image);
+        }
+    }
+}
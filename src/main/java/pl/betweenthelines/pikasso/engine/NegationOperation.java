@@ -0,0 +1,22 @@
+package pl.betweenthelines.pikasso.engine;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Negacja obrazu szaroodcieniowego.
+ */
+public class NegationOperation implements Operation {
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            OperationUtils.toGray(image);
+            OperationUtils.toByteImage(image);
+            Core.bitwise_not(image, image);
+
+            return scope.keep(image);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package pl.betweenthelines.pikasso.engine;
+
+import org.opencv.core.Mat;
+
+/**
+ * Operacja na obrazie niezależna od interfejsu użytkownika.
+ * <p>
+ * Parametry operacji są ustalane przy jej tworzeniu, a sama operacja nie ma
+ * stanu - ten sam obiekt może być wykorzystywany wielokrotnie i z wielu wątków
+ * (w oknach programu, w przetwarzaniu wsadowym i w testach wydajności).
+ */
+public interface Operation {
+
+    /**
+     * Wykonuje operację na obrazie.
+     *
+     * @param source obraz wejściowy (nie jest modyfikowany)
+     * @return nowy obraz wynikowy
+     */
+    Mat apply(Mat source);
+
+}
@@ -0,0 +1,91 @@
+package pl.betweenthelines.pikasso.engine;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Klasa pomocnicza z przekształceniami obrazu wspólnymi dla wielu operacji.
+ */
+public class OperationUtils {
+
+    /**
+     * Zamienia obraz na szaroodcieniowy (jeśli ma więcej niż jeden kanał).
+     *
+     * @param image obraz (modyfikowany w miejscu)
+     */
+    public static void toGray(Mat image) {
+        toGray(image, image);
+    }
+
+    /**
+     * Zapisuje obraz szaroodcieniowy do obrazu docelowego (kopiuje obraz, jeśli
+     * ma jeden kanał). Obraz docelowy o tym samym rozmiarze i typie (np. pobrany
+     * z {@link MatPool}) nie jest tworzony na nowo.
+     *
+     * @param source      obraz wejściowy
+     * @param destination obraz docelowy (może być tym samym obiektem co wejściowy)
+     */
+    public static void toGray(Mat source, Mat destination) {
+        if (source.channels() == 4) {
+            Imgproc.cvtColor(source, destination, Imgproc.COLOR_BGRA2GRAY);
+        } else if (source.channels() == 3) {
+            Imgproc.cvtColor(source, destination, Imgproc.COLOR_BGR2GRAY);
+        } else if (source != destination) {
+            source.copyTo(destination);
+        }
+    }
+
+    /**
+     * Zamienia obraz na 8-bitowy (z obcięciem wartości spoza zakresu 0 - 255),
+     * jeśli nie jest 8-bitowy.
+     *
+     * @param image obraz (modyfikowany w miejscu)
+     */
+    public static void toByteImage(Mat image) {
+        if (image.depth() != CvType.CV_8U) {
+            image.convertTo(image, CvType.CV_8U);
+        }
+    }
+
+    /**
+     * Zamienia poziomy jasności wszystkich kanałów koloru według podanej tablicy.
+     * Kanał przezroczystości (jeśli istnieje) otrzymuje pełne krycie.
+     *
+     * @param image  obraz 8-bitowy (modyfikowany w miejscu)
+     * @param levels nowe poziomy jasności dla poziomów 0 - 255
+     */
+    public static void mapLevels(Mat image, int[] levels) {
+        int channels = image.channels();
+        byte[] table = new byte[levels.length * channels];
+        for (int level = 0; level < levels.length; level++) {
+            for (int channel = 0; channel < channels; channel++) {
+                boolean alpha = channels == 4 && channel == 3;
+                table[level * channels + channel] = (byte) (alpha ? 255 : levels[level]);
+            }
+        }
+
+        try (MatScope scope = new MatScope()) {
+            Mat lookUpTable = scope.newMat(1, levels.length, CvType.makeType(CvType.CV_8U, channels));
+            lookUpTable.put(0, 0, table);
+            Core.LUT(image, lookUpTable, image);
+        }
+    }
+
+    /**
+     * Przerywa operację, jeśli wykonujący ją wątek został przerwany (np. przy anulowaniu
+     * nieaktualnego podglądu). Wywoływana między etapami operacji - pojedyncze wywołanie
+     * OpenCV nie może zostać przerwane.
+     *
+     * @throws CancellationException jeśli wątek został przerwany
+     */
+    public static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Operacja została przerwana");
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.Mat;
+
+/**
+ * Posteryzacja - redukcja liczby poziomów jasności w każdym kanale.
+ */
+@Getter
+public class PosterizeOperation implements Operation {
+
+    /**
+     * Parametry posteryzacji.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Liczba poziomów jasności (co najmniej 2).
+         */
+        private int levels;
+    }
+
+    private static final int LEVELS = 256;
+    private static final int MAX_LEVEL = 255;
+
+    private final Parameters parameters;
+
+    public PosterizeOperation(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            OperationUtils.toByteImage(image);
+
+            int multiplier = MAX_LEVEL / (parameters.getLevels() - 1);
+            int divider = MAX_LEVEL / parameters.getLevels();
+            int[] levels = new int[LEVELS];
+            for (int level = 0; level < LEVELS; level++) {
+                levels[level] = calculateLevel(level, multiplier, divider);
+            }
+
+            OperationUtils.mapLevels(image, levels);
+            return scope.keep(image);
+        }
+    }
+
+    /**
+     * Oblicza nowy poziom jasności.
+     *
+     * @param oldLevel   poziom jasności przed posteryzacją
+     * @param multiplier odstęp między kolejnymi poziomami
+     * @param divider    próg przejścia do kolejnego poziomu
+     * @return nowy poziom jasności
+     */
+    private int calculateLevel(int oldLevel, int multiplier, int divider) {
+        int newLevel = 0;
+
+        while (oldLevel > divider) {
+            oldLevel -= multiplier;
+            newLevel += multiplier;
+        }
+
+        return Math.min(newLevel, MAX_LEVEL);
+    }
+}
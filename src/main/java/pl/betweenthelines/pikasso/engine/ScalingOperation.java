@@ -0,0 +1,42 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.Mat;
+import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+
+/**
+ * Skalowanie wyniku operacji do zakresu poziomów jasności
+ * (jedną z metod z <tt>MatScalingUtils</tt>).
+ */
+@Getter
+public class ScalingOperation implements Operation {
+
+    /**
+     * Parametry skalowania.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Metoda skalowania.
+         */
+        private byte method;
+    }
+
+    private final Parameters parameters;
+
+    public ScalingOperation(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            MatScalingUtils.scale(image, parameters.getMethod());
+
+            return scope.keep(image);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+import pl.betweenthelines.pikasso.exception.ImageIsNotBinaryException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.sqrt;
+
+/**
+ * Deskryptory kształtu obiektu na obrazie binarnym: momenty (zwykłe, centralne
+ * i znormalizowane), niezmienniki momentowe oraz współczynniki kształtu W1 - W9.
+ */
+public class ShapeDescriptors {
+
+    /**
+     * Indeks obiektu na liście konturów.
+     */
+    public static final int OBJECT_INDEX = 1;
+
+    /**
+     * Względna dokładność sumy odległości punktów obiektu od konturu
+     * (odległości z transformaty odległościowej są typu <tt>float</tt>).
+     */
+    public static final double DISTANCE_TOLERANCE = 1e-6;
+
+    /**
+     * Liczba niezmienników momentowych.
+     */
+    private static final int HU_MOMENTS = 7;
+
+    /**
+     * Wartość punktów obiektu na masce.
+     */
+    private static final int OBJECT = 255;
+
+    /**
+     * Momenty zwykłe, centralne i znormalizowane.
+     */
+    @Getter
+    private final Moments moments;
+
+    /**
+     * Niezmienniki momentowe M1 - M7.
+     */
+    @Getter
+    private final double[] huMoments = new double[HU_MOMENTS];
+
+    /**
+     * Współczynniki kształtu W1 - W9.
+     */
+    @Getter
+    private double[] shapeFeatures;
+
+    /**
+     * Wartości pomocnicze przy wyliczaniu współczynników kształtu:
+     * punkt środka ciężkości, pole powierzchni i obwód obiektu.
+     */
+    private Point center;
+    private double s;
+    private double l;
+
+    /**
+     * Wartości pomocnicze przy wyliczaniu współczynników kształtu:
+     * minimalna i maksymalna odległość pomiędzy konturem a punktem środka ciężkości.
+     */
+    private double contourToCenterDistanceMin;
+    private double contourToCenterDistanceMax;
+
+    /**
+     * Wartości pomocnicze przy wyliczaniu współczynników kształtu:
+     * suma odległości i suma kwadratów odległości pomiędzy wszystkimi punktami
+     * konturu obiektu a punktem środka ciężkości.
+     */
+    private double sumOfContourToCenterDistances;
+    private double sumOfContourToCenterDistancePowers;
+
+    /**
+     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
+     * suma odległości pomiędzy wszystkimi punktami obiektu a punktem środka ciężkości.
+     */
+    private double sumOfPointToCenterDistances;
+
+    /**
+     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
+     * suma minimalnych odległości pomiędzy każdym punktem obiektu a jego konturem.
+     */
+    private double minimumPointToContourDistancesSum;
+
+    /**
+     * Wartości pomocnicze przy wyliczaniu współczynników kształtu:
+     * maksymalny gabaryt obiektu i liczba punktów jego konturu.
+     */
+    private double maxDimension;
+    private double contourPointCount;
+
+    /**
+     * Oblicza deskryptory kształtu dla obiektu binarnego.
+     *
+     * @param image obraz binarny (jednokanałowy, niemodyfikowany)
+     * @throws ImageIsNotBinaryException jeśli na obrazie nie znaleziono obiektu
+     */
+    public ShapeDescriptors(Mat image) throws ImageIsNotBinaryException {
+        moments = Imgproc.moments(image, true);
+
+        Mat hu = new Mat();
+        Imgproc.HuMoments(moments, hu);
+        for (int i = 0; i < HU_MOMENTS; i++) {
+            huMoments[i] = hu.get(i, 0)[0];
+        }
+        hu.release();
+
+        calculateContoursAndHelperValues(image);
+        calculateShapeFeatures();
+    }
+
+    /**
+     * Znajduje punkt środka ciężkości obiektu, wyznacza linię konturu,
+     * na jej podstawie oblicza obwód i pole obiektu.
+     * Inicjalizuje i oblicza wartości zmiennych pomocniczych potrzebnych
+     * do obliczeń współczynników kształtu.
+     *
+     * @param image obraz
+     * @throws ImageIsNotBinaryException jeśli na obrazie nie znaleziono obiektu
+     */
+    private void calculateContoursAndHelperValues(Mat image) throws ImageIsNotBinaryException {
+        double cx = moments.m10 / moments.m00;
+        double cy = moments.m01 / moments.m00;
+        center = new Point(cx, cy);
+
+        List<MatOfPoint> contours = new ArrayList<>();
+        Mat hierarchy = new Mat();
+        Mat copy = image.clone();
+        Imgproc.findContours(copy, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
+        copy.release();
+        hierarchy.release();
+        if (contours.size() < 2) {
+            throw new ImageIsNotBinaryException();
+        }
+
+        MatOfPoint objectContour = contours.get(OBJECT_INDEX);
+        MatOfPoint2f objectContour2f = new MatOfPoint2f(objectContour.toArray());
+        s = Imgproc.contourArea(objectContour);
+        l = Imgproc.arcLength(objectContour2f, true);
+        objectContour2f.release();
+
+        initializeHelperValues(objectContour);
+        calculateHelperValues(image, contours, objectContour);
+    }
+
+    /**
+     * Inicjalizuje wartości zmiennych pomocniczych potrzebnych
+     * do obliczeń współczynników kształtu.
+     *
+     * @param objectContour kontur obiektu
+     */
+    private void initializeHelperValues(MatOfPoint objectContour) {
+        contourToCenterDistanceMin = l;
+        contourToCenterDistanceMax = 0;
+        sumOfContourToCenterDistances = 0;
+        sumOfContourToCenterDistancePowers = 0;
+        sumOfPointToCenterDistances = 0;
+        minimumPointToContourDistancesSum = 0;
+        maxDimension = 0;
+        contourPointCount = objectContour.total();
+    }
+
+    /**
+     * Oblicza wartości zmiennych pomocniczych potrzebnych do obliczeń współczynników
+     * kształtu.
+     * <p>
+     * Punkty obiektu są wyznaczane przez wypełnienie konturu na masce, a odległości
+     * punktów od konturu (od najbliższego punktu konturu) - transformatą odległościową
+     * obrazu, na którym zerami są tylko punkty konturu. Koszt jest liniowy względem
+     * liczby pikseli obrazu (zamiast pole * obwód przy sprawdzaniu każdego punktu
+     * konturu dla każdego punktu obiektu). Kontur składa się z odcinków poziomych,
+     * pionowych i ukośnych, więc wypełniona maska zawiera dokładnie te punkty, które
+     * leżą wewnątrz konturu lub na nim. Transformata jest dokładna
+     * (<tt>DIST_MASK_PRECISE</tt>), ale zwraca odległości typu <tt>float</tt>, dlatego
+     * suma odległości od konturu może różnić się od sumy liczonej w <tt>double</tt>
+     * o względny błąd rzędu {@value #DISTANCE_TOLERANCE}. Punkty konturu są zaznaczane
+     * bezpośrednio na obrazie, a maska i odległości są pobierane wierszami, więc
+     * obliczenia nie wymagają tablic wielkości całego obrazu.
+     * <p>
+     * Następnie wylicza wartości pomocnicze dla punktów konturu
+     * ({@link #calculateContourValues(int[])}) i maksymalny gabaryt obiektu
+     * ({@link #calculateMaxDimension(MatOfPoint, int[])}).
+     *
+     * @param image         obraz
+     * @param contours      kontury znalezione na obrazie
+     * @param objectContour kontur obiektu
+     */
+    private void calculateHelperValues(Mat image, List<MatOfPoint> contours, MatOfPoint objectContour) {
+        int rows = image.rows();
+        int cols = image.cols();
+        int[] contourPoints = new int[2 * (int) objectContour.total()];
+        objectContour.get(0, 0, contourPoints);
+
+        try (MatScope scope = new MatScope()) {
+            Mat mask = scope.newMat(rows, cols, CvType.CV_8UC1);
+            mask.setTo(new Scalar(0));
+            Imgproc.drawContours(mask, contours, OBJECT_INDEX, new Scalar(OBJECT), Imgproc.FILLED);
+
+            Mat contourImage = scope.newMat(rows, cols, CvType.CV_8UC1);
+            contourImage.setTo(new Scalar(OBJECT));
+            byte[] contourPixel = {0};
+            for (int i = 0; i < contourPoints.length; i += 2) {
+                contourImage.put(contourPoints[i + 1], contourPoints[i], contourPixel);
+            }
+            Mat distances = scope.newMat(rows, cols, CvType.CV_32F);
+            Imgproc.distanceTransform(contourImage, distances, Imgproc.DIST_L2, Imgproc.DIST_MASK_PRECISE);
+
+            byte[] inside = new byte[cols];
+            float[] distanceToContour = new float[cols];
+            for (int row = 0; row < rows; row++) {
+                mask.get(row, 0, inside);
+                distances.get(row, 0, distanceToContour);
+                for (int col = 0; col < cols; col++) {
+                    if (inside[col] != 0) {
+                        sumOfPointToCenterDistances += getDistance(center, new Point(col, row));
+                        minimumPointToContourDistancesSum += Math.min(l, distanceToContour[col]);
+                    }
+                }
+            }
+        }
+
+        calculateContourValues(contourPoints);
+        calculateMaxDimension(objectContour, contourPoints);
+    }
+
+    /**
+     * Wylicza w jednym przejściu po punktach konturu minimalną i maksymalną
+     * odległość od punktu środka ciężkości obiektu oraz sumę odległości i sumę
+     * ich kwadratów.
+     *
+     * @param contourPoints współrzędne punktów konturu (<tt>x0, y0, x1, y1, ...</tt>)
+     */
+    private void calculateContourValues(int[] contourPoints) {
+        for (int i = 0; i < contourPoints.length; i += 2) {
+            double xDifference = contourPoints[i] - center.x;
+            double yDifference = contourPoints[i + 1] - center.y;
+            double distance = sqrt(xDifference * xDifference + yDifference * yDifference);
+
+            if (distance > contourToCenterDistanceMax) {
+                contourToCenterDistanceMax = distance;
+            }
+            if (distance < contourToCenterDistanceMin) {
+                contourToCenterDistanceMin = distance;
+            }
+
+            sumOfContourToCenterDistances += distance;
+            sumOfContourToCenterDistancePowers += distance * distance;
+        }
+    }
+
+    /**
+     * Wylicza maksymalny gabaryt obiektu (największą odległość między punktami konturu).
+     * Najdalsze punkty leżą na otoczce wypukłej konturu, więc wystarczy sprawdzić pary
+     * punktów przeciwległych otoczki metodą obracających się suwmiarek (ang. rotating
+     * calipers). Koszt wynosi <tt>O(n log n)</tt> dla wyznaczenia otoczki i <tt>O(h)</tt>
+     * dla jej przejścia (zamiast porównywania każdej pary punktów konturu).
+     *
+     * @param objectContour kontur obiektu
+     * @param contourPoints współrzędne punktów konturu (<tt>x0, y0, x1, y1, ...</tt>)
+     */
+    private void calculateMaxDimension(MatOfPoint objectContour, int[] contourPoints) {
+        MatOfInt hullIndices = new MatOfInt();
+        Imgproc.convexHull(objectContour, hullIndices);
+        long[][] hull = simplifyHull(contourPoints, hullIndices.toArray());
+        hullIndices.release();
+
+        long[] x = hull[0];
+        long[] y = hull[1];
+        int n = x.length;
+        long maxSquared = 0;
+        int j = n > 1 ? 1 : 0;
+        for (int i = 0; i < n; i++) {
+            int next = (i + 1) % n;
+            while (triangleArea(x, y, i, next, (j + 1) % n) > triangleArea(x, y, i, next, j)) {
+                j = (j + 1) % n;
+            }
+            maxSquared = Math.max(maxSquared, squaredDistance(x, y, i, j));
+            maxSquared = Math.max(maxSquared, squaredDistance(x, y, next, j));
+        }
+
+        maxDimension = sqrt(maxSquared);
+    }
+
+    /**
+     * Zamienia otoczkę na wielokąt ściśle wypukły - usuwa powtórzone punkty i punkty
+     * leżące na odcinku między sąsiadami (przy nich suwmiarki mogłyby zatrzymać się
+     * zbyt wcześnie).
+     *
+     * @param contourPoints współrzędne punktów konturu (<tt>x0, y0, x1, y1, ...</tt>)
+     * @param indices       indeksy punktów otoczki w konturze (kolejno wzdłuż otoczki)
+     * @return współrzędne <tt>{x, y}</tt> kolejnych wierzchołków otoczki
+     */
+    private static long[][] simplifyHull(int[] contourPoints, int[] indices) {
+        long[] x = new long[indices.length];
+        long[] y = new long[indices.length];
+        int end = 0;
+        for (int index : indices) {
+            long pointX = contourPoints[2 * index];
+            long pointY = contourPoints[2 * index + 1];
+            while (end >= 2 && isRedundant(x, y, end - 2, end - 1, pointX, pointY)) {
+                end--;
+            }
+            if (end == 1 && x[0] == pointX && y[0] == pointY) {
+                continue;
+            }
+            x[end] = pointX;
+            y[end] = pointY;
+            end++;
+        }
+
+        int start = 0;
+        boolean removed = true;
+        while (removed && end - start >= 3) {
+            removed = false;
+            if (isRedundant(x, y, end - 2, end - 1, x[start], y[start])) {
+                end--;
+                removed = true;
+            } else if (isRedundant(x, y, end - 1, start, x[start + 1], y[start + 1])) {
+                start++;
+                removed = true;
+            }
+        }
+        if (end - start == 2 && x[start] == x[end - 1] && y[start] == y[end - 1]) {
+            end--;
+        }
+
+        return new long[][]{Arrays.copyOfRange(x, start, end), Arrays.copyOfRange(y, start, end)};
+    }
+
+    /**
+     * @return <tt>true</tt> jeśli punkt <tt>b</tt> leży na odcinku od punktu <tt>a</tt>
+     * do punktu <tt>(pointX, pointY)</tt> (lub się z którymś z nich pokrywa)
+     */
+    private static boolean isRedundant(long[] x, long[] y, int a, int b, long pointX, long pointY) {
+        long ux = x[b] - x[a];
+        long uy = y[b] - y[a];
+        long vx = pointX - x[b];
+        long vy = pointY - y[b];
+        return ux * vy - uy * vx == 0 && ux * vx + uy * vy >= 0;
+    }
+
+    /**
+     * @return podwojone pole trójkąta o wierzchołkach w punktach otoczki <tt>a, b, c</tt>
+     */
+    private static long triangleArea(long[] x, long[] y, int a, int b, int c) {
+        return Math.abs((x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a]));
+    }
+
+    /**
+     * @return kwadrat odległości między punktami otoczki <tt>a</tt> i <tt>b</tt>
+     */
+    private static long squaredDistance(long[] x, long[] y, int a, int b) {
+        long xDifference = x[a] - x[b];
+        long yDifference = y[a] - y[b];
+        return xDifference * xDifference + yDifference * yDifference;
+    }
+
+    /**
+     * Oblicza odległość między podanymi punktami.
+     *
+     * @param pointA punkt A
+     * @param pointB punkt B
+     * @return odległość między podanymi punktami
+     */
+    private double getDistance(Point pointA, Point pointB) {
+        double xDifference = pointA.x - pointB.x;
+        double yDifference = pointA.y - pointB.y;
+        return sqrt(xDifference * xDifference + yDifference * yDifference);
+    }
+
+    /**
+     * Oblicza współczynniki kształtu na podstawie wartości pomocniczych.
+     */
+    private void calculateShapeFeatures() {
+        double w1 = 2 * sqrt(s / PI);
+        double w2 = l / PI;
+        double w3 = (l / (2 * sqrt(PI * s))) - 1;
+        double w4 = s / (sqrt(2 * PI * sumOfPointToCenterDistances));
+        double w5 = (s * s * s) / (minimumPointToContourDistancesSum * minimumPointToContourDistancesSum);
+        double w6 = sqrt((sumOfContourToCenterDistances * sumOfContourToCenterDistances)
+                / (contourPointCount * sumOfContourToCenterDistancePowers - 1));
+        double w7 = contourToCenterDistanceMin / contourToCenterDistanceMax;
+        double w8 = maxDimension / l;
+        double w9 = (2 * sqrt(PI * s)) / l;
+
+        shapeFeatures = new double[]{w1, w2, w3, w4, w5, w6, w7, w8, w9};
+    }
+}
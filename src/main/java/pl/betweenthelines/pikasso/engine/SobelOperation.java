@@ -0,0 +1,83 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
+import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+
+/**
+ * Filtr Sobela (lub Scharra) na obrazie szaroodcieniowym, poprzedzony
+ * rozmyciem gaussowskim.
+ */
+@Getter
+public class SobelOperation implements Operation {
+
+    /**
+     * Wielkość maski filtru Sobela i wartość oznaczająca filtr Scharra.
+     */
+    public static final int SOBEL_KERNEL_SIZE = 3;
+    public static final int SCHARR_KERNEL_SIZE = -1;
+
+    /**
+     * Parametry filtru.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Rząd pochodnej w kierunku x i y.
+         */
+        private int dx;
+        private int dy;
+
+        /**
+         * Wielkość maski ({@value #SOBEL_KERNEL_SIZE} lub {@value #SCHARR_KERNEL_SIZE} dla filtru Scharra).
+         */
+        private int kernelSize;
+
+        /**
+         * Metoda operacji na pikselach brzegowych i ich wartość (jeżeli stała).
+         */
+        private int borderType;
+        private Scalar border;
+
+        /**
+         * Liczba powtórzeń filtracji.
+         */
+        private int times;
+
+        /**
+         * Metoda skalowania wyniku (z <tt>MatScalingUtils</tt>).
+         */
+        private byte scalingMethod;
+    }
+
+    private final Parameters parameters;
+
+    public SobelOperation(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            OperationUtils.toGray(image);
+            OperationUtils.toByteImage(image);
+
+            for (int i = 0; i < parameters.getTimes(); i++) {
+                OperationUtils.checkInterrupted();
+                FilteringUtils.blur(image);
+                Imgproc.Sobel(image, image, -1, parameters.getDx(), parameters.getDy(), parameters.getKernelSize(),
+                        1, 0, parameters.getBorderType());
+                FilteringUtils.handleBorder(image, parameters.getBorder());
+            }
+
+            MatScalingUtils.scale(image, parameters.getScalingMethod());
+            return scope.keep(image);
+        }
+    }
+}
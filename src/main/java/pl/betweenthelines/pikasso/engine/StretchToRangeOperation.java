@@ -0,0 +1,80 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.Mat;
+
+/**
+ * Rozciąganie zakresu poziomów jasności p1 - p2 do zakresu q3 - q4. Piksele
+ * spoza zakresu p1 - p2 otrzymują poziom tła q5.
+ */
+@Getter
+public class StretchToRangeOperation implements Operation {
+
+    /**
+     * Parametry rozciągania.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Zakres wejściowy.
+         */
+        private double p1;
+        private double p2;
+
+        /**
+         * Zakres wyjściowy.
+         */
+        private double q3;
+        private double q4;
+
+        /**
+         * Poziom tła.
+         */
+        private double q5;
+    }
+
+    private static final int LEVELS = 256;
+
+    private final Parameters parameters;
+
+    public StretchToRangeOperation(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.copy(source);
+            OperationUtils.toByteImage(image);
+
+            int[] levels = new int[LEVELS];
+            for (int level = 0; level < LEVELS; level++) {
+                levels[level] = calculateLevel(level);
+            }
+
+            OperationUtils.mapLevels(image, levels);
+            return scope.keep(image);
+        }
+    }
+
+    /**
+     * Oblicza nowy poziom jasności.
+     *
+     * @param p poziom jasności przed operacją
+     * @return nowy poziom jasności
+     */
+    private int calculateLevel(int p) {
+        double p1 = parameters.getP1();
+        double p2 = parameters.getP2();
+        double q3 = parameters.getQ3();
+        double q4 = parameters.getQ4();
+
+        if (p < p1 || p > p2) {
+            return (int) parameters.getQ5();
+        }
+
+        return (int) ((p - p1) * ((q4 - q3) / (p2 - p1)) + q3);
+    }
+}
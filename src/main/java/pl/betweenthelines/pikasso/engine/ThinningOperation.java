@@ -0,0 +1,468 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import pl.betweenthelines.pikasso.exception.ImageIsNotBinaryException;
+import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Ścienianie obrazu binarnego klasycznym algorytmem szkieletyzacji.
+ * <p>
+ * Obraz jest odczytywany raz do map bitowych pikseli obiektu i tła
+ * ({@link BinaryBitmap}). W każdym przebiegu piksele obiektu mające sąsiada tła
+ * (w jednym z czterech kierunków) są wyznaczane operacjami na całych słowach map,
+ * a wzorce są sprawdzane tablicą 256 kodów 8-sąsiedztwa. Pasy wierszy są
+ * przetwarzane równolegle - każdy przebieg czyta tylko stan sprzed przebiegu,
+ * więc wynik nie zależy od kolejności i jest taki sam jak przy przeglądaniu
+ * obrazu piksel po pikselu.
+ * <p>
+ * Cały obraz jest przeglądany tylko w pierwszym przebiegu (i po ustawieniu pikseli
+ * brzegowych). Kolejne przebiegi sprawdzają tylko front - sąsiadów pikseli usuniętych
+ * w poprzednim przebiegu - więc ich koszt zależy od liczby zmian, a nie od rozmiaru obrazu.
+ */
+@Getter
+public class ThinningOperation implements Operation {
+
+    /**
+     * Parametry ścieniania.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Czy obiekt jest czarny na białym tle (w przeciwnym wypadku biały na czarnym).
+         */
+        private boolean blackObject;
+
+        /**
+         * Wartość pikseli brzegowych.
+         */
+        private Scalar border;
+    }
+
+    private static final double WHITE = 255;
+    private static final double BLACK = 0;
+    private static final double ANY = 150;
+
+    /**
+     * Liczba wierszy w pasie przetwarzanym przez jeden wątek.
+     */
+    private static final int BAND_ROWS = 64;
+
+    /**
+     * Liczba bitów w słowie mapy bitowej.
+     */
+    private static final int WORD_BITS = 64;
+
+    /**
+     * Minimalna liczba pikseli frontu sprawdzanych równolegle.
+     */
+    private static final int PARALLEL_FRONTIER = 4096;
+
+    /**
+     * Indeksy sąsiadów we wzorcach (3x3, wierszami) oraz ich przesunięcia
+     * - kolejne bity kodu 8-sąsiedztwa.
+     */
+    private static final int[] NEIGHBOURS = {0, 1, 2, 3, 5, 6, 7, 8};
+    private static final int[] NEIGHBOUR_ROWS = {-1, -1, -1, 0, 0, 1, 1, 1};
+    private static final int[] NEIGHBOUR_COLS = {-1, 0, 1, -1, 1, -1, 0, 1};
+
+    /**
+     * Indeks środka wzorca.
+     */
+    private static final int CENTER = 4;
+
+    /**
+     * Liczba kodów 8-sąsiedztwa i kod z wszystkimi sąsiadami.
+     */
+    private static final int CODES = 256;
+    private static final int ALL_NEIGHBOURS = CODES - 1;
+
+    private final Parameters parameters;
+
+    /**
+     * Poziomy jasności obiektu i tła oraz lista wzorców do porównania.
+     */
+    private final double object;
+    private final double background;
+    private final List<double[]> patterns;
+
+    /**
+     * Wzorce jako maski bitowe kodu 8-sąsiedztwa: <tt>{sąsiedzi obiektu, sąsiedzi tła}</tt>.
+     */
+    private final int[][] patternMasks;
+
+    /**
+     * Czy któryś wzorzec pasuje do sąsiedztwa o danym kodzie (bity sąsiadów
+     * należących do obiektu; pozostali sąsiedzi należą do tła).
+     */
+    private final boolean[] lookupTable;
+
+    /**
+     * Liczby pikseli usuniętych w kolejnych przebiegach ostatniego ścieniania
+     * (ostatnia zawsze wynosi 0).
+     */
+    private List<Integer> changedPixels = Collections.emptyList();
+
+    public ThinningOperation(Parameters parameters) {
+        this.parameters = parameters;
+        this.object = parameters.isBlackObject() ? BLACK : WHITE;
+        this.background = parameters.isBlackObject() ? WHITE : BLACK;
+        this.patterns = parameters.isBlackObject() ? BlackObjectPatterns.getPATTERNS() : WhiteObjectPatterns.getPATTERNS();
+        this.patternMasks = createPatternMasks();
+        this.lookupTable = createLookupTable();
+    }
+
+    /**
+     * Zamienia wzorce na maski bitowe. Pomija wzorce, które nie mogą pasować do piksela
+     * obiektu (inny środek niż obiekt lub dowolny).
+     *
+     * @return maski wzorców
+     */
+    private int[][] createPatternMasks() {
+        List<int[]> masks = new ArrayList<>();
+        for (double[] pattern : patterns) {
+            if (pattern[CENTER] != ANY && pattern[CENTER] != object) {
+                continue;
+            }
+
+            int objectMask = 0;
+            int backgroundMask = 0;
+            boolean binary = true;
+            for (int bit = 0; bit < NEIGHBOURS.length; bit++) {
+                double value = pattern[NEIGHBOURS[bit]];
+                if (value == object) {
+                    objectMask |= 1 << bit;
+                } else if (value == background) {
+                    backgroundMask |= 1 << bit;
+                } else if (value != ANY) {
+                    binary = false;
+                }
+            }
+
+            if (binary) {
+                masks.add(new int[]{objectMask, backgroundMask});
+            }
+        }
+
+        return masks.toArray(new int[0][]);
+    }
+
+    /**
+     * @return tablica dopasowań wzorców dla wszystkich kodów 8-sąsiedztwa
+     */
+    private boolean[] createLookupTable() {
+        boolean[] table = new boolean[CODES];
+        for (int code = 0; code < CODES; code++) {
+            table[code] = anyPatternMatches(code, ~code & ALL_NEIGHBOURS);
+        }
+
+        return table;
+    }
+
+    /**
+     * Przeprowadza ścienianie i zwraca ostatni krok.
+     *
+     * @param source obraz binarny (jednokanałowy)
+     * @return ścieniony obraz
+     * @throws IllegalArgumentException jeśli obraz nie jest binarny
+     */
+    @Override
+    public Mat apply(Mat source) {
+        try {
+            ThinningSteps steps = thinSteps(source);
+            return steps.getStep(steps.size() - 1);
+        } catch (ImageIsNotBinaryException e) {
+            throw new IllegalArgumentException("Obraz nie jest binarny!", e);
+        }
+    }
+
+    /**
+     * Przeprowadza ścienianie i zwraca obrazy w kolejnych krokach. Liczby pikseli
+     * usuniętych w kolejnych przebiegach są dostępne później przez {@link #getChangedPixels()}.
+     *
+     * @param source obraz binarny (jednokanałowy)
+     * @return obrazy w kolejnych krokach (co najmniej jeden)
+     * @throws ImageIsNotBinaryException jeśli obraz nie jest binarny
+     * @throws IllegalArgumentException  jeśli obraz nie jest jednokanałowy
+     */
+    public List<Mat> thin(Mat source) throws ImageIsNotBinaryException {
+        ThinningSteps history = thinSteps(source);
+        List<Mat> steps = new ArrayList<>();
+        for (int i = 0; i < history.size(); i++) {
+            steps.add(history.getStep(i));
+        }
+
+        return steps;
+    }
+
+    /**
+     * Przeprowadza ścienianie i zwraca historię kroków zapisaną jako różnice między
+     * krokami - obrazy kroków są odtwarzane dopiero na żądanie.
+     *
+     * @param source obraz binarny (jednokanałowy)
+     * @return historia kroków (co najmniej jeden krok)
+     * @throws ImageIsNotBinaryException jeśli obraz nie jest binarny
+     * @throws IllegalArgumentException  jeśli obraz nie jest jednokanałowy
+     */
+    public ThinningSteps thinSteps(Mat source) throws ImageIsNotBinaryException {
+        if (source.channels() != 1) {
+            throw new IllegalArgumentException("Obraz nie jest jednokanałowy!");
+        }
+
+        try (MatScope scope = new MatScope()) {
+            int rows = source.rows();
+            int cols = source.cols();
+            Mat image = scope.newMat(rows, cols, CvType.CV_8UC1);
+            source.convertTo(image, CvType.CV_8U);
+
+            byte[] pixels = new byte[rows * cols];
+            image.get(0, 0, pixels);
+            checkBinary(pixels, rows, cols);
+
+            BinaryBitmap objects = BinaryBitmap.of(pixels, rows, cols, (byte) object);
+            BinaryBitmap backgrounds = BinaryBitmap.of(pixels, rows, cols, (byte) background);
+            BinaryBitmap marked = new BinaryBitmap(rows, cols);
+
+            ThinningSteps steps = null;
+            List<Integer> changed = new ArrayList<>();
+            int[] frontier = null;
+            boolean remain = true;
+            while (remain) {
+                int[] deleted = frontier == null
+                        ? scanImage(objects, backgrounds)
+                        : scanFrontier(frontier, objects, backgrounds);
+                for (int index : deleted) {
+                    objects.clear(index / cols, index % cols);
+                    backgrounds.set(index / cols, index % cols);
+                    pixels[index] = (byte) background;
+                }
+                changed.add(deleted.length);
+                remain = deleted.length > 0;
+                frontier = createFrontier(deleted, objects, marked);
+
+                if (steps != null) {
+                    steps.add(deleted);
+                    continue;
+                }
+
+                if (parameters.getBorder() != null) {
+                    image.put(0, 0, pixels);
+                    FilteringUtils.handleBorder(image, parameters.getBorder());
+                    image.get(0, 0, pixels);
+                    objects = BinaryBitmap.of(pixels, rows, cols, (byte) object);
+                    backgrounds = BinaryBitmap.of(pixels, rows, cols, (byte) background);
+                    frontier = null;
+                }
+                steps = new ThinningSteps(rows, cols, source.type(), (byte) background, pixels.clone());
+            }
+
+            changedPixels = changed;
+            return steps;
+        }
+    }
+
+    /**
+     * Sprawdza, czy piksele wewnątrz obrazu (poza pikselami brzegowymi) są binarne.
+     *
+     * @param pixels wartości pikseli (wierszami)
+     * @param rows   liczba wierszy
+     * @param cols   liczba kolumn
+     * @throws ImageIsNotBinaryException jeśli któryś piksel nie jest czarny ani biały
+     */
+    private void checkBinary(byte[] pixels, int rows, int cols) throws ImageIsNotBinaryException {
+        for (int row = 1; row < rows - 1; row++) {
+            for (int col = 1; col < cols - 1; col++) {
+                byte p = pixels[row * cols + col];
+                if (p != (byte) BLACK && p != (byte) WHITE) {
+                    throw new ImageIsNotBinaryException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Wyznacza piksele usuwane w przebiegu, przeglądając cały obraz. Pasy wierszy
+     * są przetwarzane równolegle.
+     *
+     * @param objects     mapa pikseli obiektu przed przebiegiem
+     * @param backgrounds mapa pikseli tła przed przebiegiem
+     * @return indeksy usuwanych pikseli (<tt>wiersz * kolumny + kolumna</tt>)
+     */
+    private int[] scanImage(BinaryBitmap objects, BinaryBitmap backgrounds) {
+        int lastRow = objects.getRows() - 2;
+        if (lastRow < 1) {
+            return new int[0];
+        }
+
+        int bands = (lastRow - 1) / BAND_ROWS + 1;
+        return IntStream.range(0, bands).parallel().mapToObj(band -> {
+            IntStream.Builder deleted = IntStream.builder();
+            int to = Math.min(lastRow, (band + 1) * BAND_ROWS);
+            for (int row = band * BAND_ROWS + 1; row <= to; row++) {
+                scanRow(row, objects, backgrounds, deleted);
+            }
+            return deleted.build();
+        }).flatMapToInt(deleted -> deleted).toArray();
+    }
+
+    /**
+     * Wyznacza piksele usuwane w przebiegu w jednym wierszu. Kandydaci do usunięcia
+     * (piksele obiektu z sąsiadem tła powyżej, poniżej, z lewej lub z prawej) są
+     * wyznaczani dla 64 pikseli naraz.
+     *
+     * @param row         wiersz
+     * @param objects     mapa pikseli obiektu przed przebiegiem
+     * @param backgrounds mapa pikseli tła przed przebiegiem
+     * @param deleted     indeksy usuwanych pikseli
+     */
+    private void scanRow(int row, BinaryBitmap objects, BinaryBitmap backgrounds, IntStream.Builder deleted) {
+        int cols = objects.getCols();
+        for (int word = 0; word < objects.getWordsPerRow(); word++) {
+            long candidates = objects.word(row, word) & interiorMask(word, cols)
+                    & (backgrounds.word(row - 1, word) | backgrounds.word(row + 1, word)
+                    | backgrounds.leftNeighbours(row, word) | backgrounds.rightNeighbours(row, word));
+
+            while (candidates != 0) {
+                int col = word * WORD_BITS + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+
+                if (matches(objects, backgrounds, row, col)) {
+                    deleted.add(row * cols + col);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wyznacza piksele usuwane w przebiegu, sprawdzając tylko piksele z frontu
+     * - sąsiadów pikseli usuniętych w poprzednim przebiegu. Sąsiedztwo pozostałych
+     * pikseli się nie zmieniło, więc tak jak w poprzednim przebiegu nie są usuwane.
+     *
+     * @param frontier    indeksy pikseli do sprawdzenia
+     * @param objects     mapa pikseli obiektu przed przebiegiem
+     * @param backgrounds mapa pikseli tła przed przebiegiem
+     * @return indeksy usuwanych pikseli (<tt>wiersz * kolumny + kolumna</tt>)
+     */
+    private int[] scanFrontier(int[] frontier, BinaryBitmap objects, BinaryBitmap backgrounds) {
+        int cols = objects.getCols();
+        IntStream candidates = Arrays.stream(frontier);
+        if (frontier.length >= PARALLEL_FRONTIER) {
+            candidates = candidates.parallel();
+        }
+
+        return candidates.filter(index -> {
+            int row = index / cols;
+            int col = index % cols;
+            return (backgrounds.get(row - 1, col) | backgrounds.get(row + 1, col)
+                    | backgrounds.get(row, col - 1) | backgrounds.get(row, col + 1)) != 0
+                    && matches(objects, backgrounds, row, col);
+        }).toArray();
+    }
+
+    /**
+     * Tworzy front kolejnego przebiegu - piksele obiektu wewnątrz obrazu sąsiadujące
+     * z usuniętymi pikselami (każdy piksel raz).
+     *
+     * @param deleted indeksy pikseli usuniętych w przebiegu
+     * @param objects mapa pikseli obiektu po przebiegu
+     * @param marked  pusta mapa pomocnicza (po wywołaniu znowu pusta)
+     * @return indeksy pikseli do sprawdzenia w kolejnym przebiegu
+     */
+    private static int[] createFrontier(int[] deleted, BinaryBitmap objects, BinaryBitmap marked) {
+        int rows = objects.getRows();
+        int cols = objects.getCols();
+        IntStream.Builder builder = IntStream.builder();
+        for (int index : deleted) {
+            for (int bit = 0; bit < NEIGHBOURS.length; bit++) {
+                int row = index / cols + NEIGHBOUR_ROWS[bit];
+                int col = index % cols + NEIGHBOUR_COLS[bit];
+                if (row > 0 && row < rows - 1 && col > 0 && col < cols - 1
+                        && objects.get(row, col) != 0 && marked.get(row, col) == 0) {
+                    marked.set(row, col);
+                    builder.add(row * cols + col);
+                }
+            }
+        }
+
+        int[] frontier = builder.build().toArray();
+        for (int index : frontier) {
+            marked.clear(index / cols, index % cols);
+        }
+
+        return frontier;
+    }
+
+    /**
+     * Sprawdza, czy któryś z wzorców pasuje do sąsiedztwa piksela obiektu.
+     *
+     * @param objects     mapa pikseli obiektu
+     * @param backgrounds mapa pikseli tła
+     * @param row         wiersz piksela
+     * @param col         kolumna piksela
+     * @return <tt>true</tt> jeśli piksel ma być usunięty
+     */
+    private boolean matches(BinaryBitmap objects, BinaryBitmap backgrounds, int row, int col) {
+        int objectCode = neighbourCode(objects, row, col);
+        int backgroundCode = neighbourCode(backgrounds, row, col);
+        return (objectCode | backgroundCode) == ALL_NEIGHBOURS
+                ? lookupTable[objectCode]
+                : anyPatternMatches(objectCode, backgroundCode);
+    }
+
+    /**
+     * @param word indeks słowa w wierszu
+     * @param cols liczba kolumn obrazu
+     * @return maska bitów słowa odpowiadających kolumnom wewnątrz obrazu (od 1 do <tt>cols - 2</tt>)
+     */
+    private static long interiorMask(int word, int cols) {
+        int first = Math.max(1, word * WORD_BITS) - word * WORD_BITS;
+        int last = Math.min(cols - 2, word * WORD_BITS + WORD_BITS - 1) - word * WORD_BITS;
+        if (last < first) {
+            return 0;
+        }
+
+        return (-1L >>> (WORD_BITS - 1 - last)) & (-1L << first);
+    }
+
+    /**
+     * @param bitmap mapa bitowa
+     * @param row    wiersz piksela
+     * @param col    kolumna piksela
+     * @return kod 8-sąsiedztwa piksela - bity sąsiadów ustawionych w mapie
+     */
+    private static int neighbourCode(BinaryBitmap bitmap, int row, int col) {
+        int code = 0;
+        for (int bit = 0; bit < NEIGHBOURS.length; bit++) {
+            code |= bitmap.get(row + NEIGHBOUR_ROWS[bit], col + NEIGHBOUR_COLS[bit]) << bit;
+        }
+
+        return code;
+    }
+
+    /**
+     * Sprawdza, czy któryś z wzorców pasuje do sąsiedztwa piksela obiektu.
+     *
+     * @param objectCode     bity sąsiadów należących do obiektu
+     * @param backgroundCode bity sąsiadów należących do tła
+     * @return <tt>true</tt> jeśli co najmniej jeden wzorzec pasuje.
+     */
+    private boolean anyPatternMatches(int objectCode, int backgroundCode) {
+        for (int[] mask : patternMasks) {
+            if ((objectCode & mask[0]) == mask[0] && (backgroundCode & mask[1]) == mask[1]) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,166 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Historia kroków ścieniania zapisana jako różnice między krokami.
+ * <p>
+ * Pełny obraz jest przechowywany tylko dla pierwszego kroku - dla kolejnych
+ * zapamiętywane są indeksy pikseli usuniętych w danym kroku, więc pamięć rośnie
+ * z liczbą usuniętych pikseli, a nie z liczbą kroków razy rozmiar obrazu. Obraz
+ * wybranego kroku jest odtwarzany na żądanie od najbliższego wcześniejszego
+ * kroku z niewielkiej pamięci podręcznej ({@value #CACHED_FRAMES} ostatnio
+ * używanych kroków).
+ */
+public class ThinningSteps {
+
+    /**
+     * Liczba odtworzonych kroków przechowywanych w pamięci podręcznej.
+     */
+    private static final int CACHED_FRAMES = 4;
+
+    /**
+     * Wymiary i typ obrazów kroków (typ obrazu wejściowego).
+     */
+    @Getter
+    private final int rows;
+    @Getter
+    private final int cols;
+    @Getter
+    private final int type;
+
+    /**
+     * Wartość usuniętych pikseli (poziom jasności tła).
+     */
+    private final byte background;
+
+    /**
+     * Piksele pierwszego kroku (8-bitowe, wierszami).
+     */
+    private final byte[] first;
+
+    /**
+     * Indeksy pikseli usuniętych w kolejnych krokach (<tt>wiersz * kolumny + kolumna</tt>).
+     * Element o indeksie 0 odpowiada pierwszemu krokowi i jest pusty.
+     */
+    private final List<int[]> removed = new ArrayList<>();
+
+    /**
+     * Ostatnio używane odtworzone kroki (według indeksu kroku).
+     */
+    private final Map<Integer, byte[]> frames = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+            return size() > CACHED_FRAMES;
+        }
+    };
+
+    /**
+     * Tworzy historię z pierwszym krokiem.
+     *
+     * @param rows       liczba wierszy
+     * @param cols       liczba kolumn
+     * @param type       typ obrazów kroków
+     * @param background wartość usuniętych pikseli
+     * @param first      piksele pierwszego kroku (8-bitowe, wierszami)
+     */
+    ThinningSteps(int rows, int cols, int type, byte background, byte[] first) {
+        this.rows = rows;
+        this.cols = cols;
+        this.type = type;
+        this.background = background;
+        this.first = first;
+        this.removed.add(new int[0]);
+    }
+
+    /**
+     * Dodaje kolejny krok.
+     *
+     * @param removedPixels indeksy pikseli usuniętych w kroku
+     */
+    synchronized void add(int[] removedPixels) {
+        removed.add(removedPixels);
+    }
+
+    /**
+     * @return liczba kroków
+     */
+    public synchronized int size() {
+        return removed.size();
+    }
+
+    /**
+     * @param index indeks kroku (od 0)
+     * @return liczba pikseli usuniętych w kroku (dla pierwszego kroku 0)
+     */
+    public synchronized int getRemovedPixels(int index) {
+        return removed.get(index).length;
+    }
+
+    /**
+     * Odtwarza obraz kroku. Obraz należy zwolnić po użyciu.
+     *
+     * @param index indeks kroku (od 0)
+     * @return obraz kroku w typie obrazu wejściowego
+     * @throws IndexOutOfBoundsException jeśli nie ma kroku o podanym indeksie
+     */
+    public Mat getStep(int index) {
+        byte[] pixels = getPixels(index);
+        try (MatScope scope = new MatScope()) {
+            Mat step = scope.newMat(rows, cols, CvType.CV_8UC1);
+            step.put(0, 0, pixels);
+            if (type == step.type()) {
+                return scope.keep(step);
+            }
+
+            Mat converted = scope.newMat(rows, cols, type);
+            step.convertTo(converted, type);
+            return scope.keep(converted);
+        }
+    }
+
+    /**
+     * Odtwarza piksele kroku od najbliższego wcześniejszego kroku z pamięci
+     * podręcznej (lub od pierwszego kroku) i zapamiętuje wynik.
+     *
+     * @param index indeks kroku (od 0)
+     * @return piksele kroku (nie mogą być zmieniane)
+     */
+    private synchronized byte[] getPixels(int index) {
+        if (index < 0 || index >= removed.size()) {
+            throw new IndexOutOfBoundsException("Step " + index + " of " + removed.size());
+        }
+        if (index == 0) {
+            return first;
+        }
+
+        byte[] frame = frames.get(index);
+        if (frame != null) {
+            return frame;
+        }
+
+        int start = 0;
+        for (int cached : frames.keySet()) {
+            if (cached < index && cached > start) {
+                start = cached;
+            }
+        }
+
+        frame = (start == 0 ? first : frames.get(start)).clone();
+        for (int step = start + 1; step <= index; step++) {
+            for (int pixel : removed.get(step)) {
+                frame[pixel] = background;
+            }
+        }
+        frames.put(index, frame);
+
+        return frame;
+    }
+}
@@ -0,0 +1,64 @@
+package pl.betweenthelines.pikasso.engine;
+
+import lombok.Getter;
+import lombok.Value;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Progowanie obrazu szaroodcieniowego - binarne lub z zachowaniem
+ * poziomów szarości.
+ */
+@Getter
+public class ThresholdOperation implements Operation {
+
+    /**
+     * Parametry progowania.
+     */
+    @Value
+    public static class Parameters {
+
+        /**
+         * Próg.
+         */
+        private double level;
+
+        /**
+         * Czy progowanie jest odwrócone.
+         */
+        private boolean inverted;
+
+        /**
+         * Czy piksele powyżej progu (lub poniżej - przy odwróceniu) zachowują
+         * swój poziom szarości.
+         */
+        private boolean preserveGrayscale;
+    }
+
+    private static final double MAX_LEVEL = 255;
+
+    private final Parameters parameters;
+
+    public ThresholdOperation(Parameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public Mat apply(Mat source) {
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.newMat(source.rows(), source.cols(), CvType.makeType(source.depth(), 1));
+            OperationUtils.toGray(source, image);
+
+            int type;
+            if (parameters.isPreserveGrayscale()) {
+                type = parameters.isInverted() ? Imgproc.THRESH_TOZERO_INV : Imgproc.THRESH_TOZERO;
+            } else {
+                type = parameters.isInverted() ? Imgproc.THRESH_BINARY_INV : Imgproc.THRESH_BINARY;
+            }
+
+            Imgproc.threshold(image, image, parameters.getLevel(), MAX_LEVEL, type);
+            return scope.keep(image);
+        }
+    }
+}
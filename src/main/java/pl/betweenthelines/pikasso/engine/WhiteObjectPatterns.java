@@ -1,4 +1,4 @@
-package pl.betweenthelines.pikasso.window.image.operation.morphology;
+package pl.betweenthelines.pikasso.engine;
 
 import lombok.Getter;
 
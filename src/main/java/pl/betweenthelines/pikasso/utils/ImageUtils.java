@@ -7,12 +7,13 @@ import javafx.scene.image.*;
 import javafx.scene.paint.Color;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.MatPool;
+import pl.betweenthelines.pikasso.engine.MatScope;
+import pl.betweenthelines.pikasso.engine.MatTracker;
+import pl.betweenthelines.pikasso.engine.Operation;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.nio.ByteBuffer;
 
 import static org.opencv.imgproc.Imgproc.THRESH_BINARY;
@@ -24,6 +25,27 @@ import static org.opencv.imgproc.Imgproc.THRESH_BINARY;
  */
 public class ImageUtils {
 
+    /**
+     * Liczba bajtów na piksel w formacie BGRA.
+     */
+    private static final int BGRA_BYTES_PER_PIXEL = 4;
+
+    private static final int BYTES_IN_MB = 1024 * 1024;
+
+    /**
+     * Maksymalny rozmiar bufora przechowywanego przez wątek (parametr JVM
+     * <tt>-Dpikasso.pixel.buffer.mb</tt>, domyślnie 32 MB, czyli obraz ok. 8 MP).
+     * Większe obrazy są konwertowane przez jednorazowy bufor, aby każdy wątek
+     * nie trzymał bufora wielkości największego przekonwertowanego obrazu.
+     */
+    private static final long MAX_CACHED_BUFFER_BYTES = Long.getLong("pikasso.pixel.buffer.mb", 32) * BYTES_IN_MB;
+
+    /**
+     * Bufor wielokrotnego użytku na piksele w formacie BGRA (osobny dla każdego
+     * wątku), wykorzystywany przy konwersji obiektu Mat do obiektu Image.
+     */
+    private static final ThreadLocal<ByteBuffer> PIXEL_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(0));
+
     /**
      * Pobiera aktualny obraz z ImageView (np. poddany modyfikacjom)
      * i konwertuje do obiektu <tt>BufferedImage</tt>.
@@ -71,7 +93,8 @@ public class ImageUtils {
 
     /**
      * Konwertuje obiekt Image do obiektu Mat obsługiwanego przez
-     * bibliotekę OpenCV.
+     * bibliotekę OpenCV. Wywołujący odpowiada za zwolnienie obiektu
+     * (np. przez {@link MatScope}).
      *
      * @param image obraz do konwersji
      * @return obiekt <tt>Mat</tt> z obrazem
@@ -85,7 +108,7 @@ public class ImageUtils {
         WritablePixelFormat<ByteBuffer> format = WritablePixelFormat.getByteBgraInstance();
         reader.getPixels(0, 0, width, height, format, buffer, 0, width * 4);
 
-        Mat mat = new Mat(height, width, CvType.CV_8UC4);
+        Mat mat = MatTracker.register(new Mat(height, width, CvType.CV_8UC4));
         mat.put(0, 0, buffer);
 
         return mat;
@@ -93,15 +116,82 @@ public class ImageUtils {
 
     /**
      * Konwertuje obiekt Mat do obietku Image obsługiwanego przez Javę.
+     * <p>
+     * Piksele są kopiowane bezpośrednio do obiektu <tt>WritableImage</tt>
+     * (bez kodowania do formatu PNG). Obsługiwane są obrazy jedno-, trój-
+     * i czterokanałowe. Obrazy o głębi innej niż 8 bitów (np. CV_32F po filtracji)
+     * są sprowadzane do 8 bitów z nasyceniem - tak jak przy zapisie do pliku.
+     * Obrazy pośrednie konwersji są pobierane z puli {@link MatPool}.
      *
      * @param mat obraz do konwersji
      * @return obiekt <tt>Image</tt> z obrazem.
      */
     public static Image mat2Image(Mat mat) {
-        MatOfByte buffer = new MatOfByte();
-        Imgcodecs.imencode(".png", mat, buffer);
+        int width = mat.cols();
+        int height = mat.rows();
+        int scanlineStride = width * BGRA_BYTES_PER_PIXEL;
+
+        ByteBuffer buffer = getPixelBuffer(scanlineStride * height);
+        try (MatScope scope = new MatScope()) {
+            toBgra8U(scope, mat).get(0, 0, buffer.array());
+        }
+
+        WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteBgraInstance(), buffer, scanlineStride);
+
+        return image;
+    }
 
-        return new Image(new ByteArrayInputStream(buffer.toArray()));
+    /**
+     * Sprowadza obraz do postaci ciągłego, 8-bitowego obiektu Mat w formacie BGRA.
+     * Jeśli obraz jest już w tej postaci, zwracany jest bez kopiowania.
+     *
+     * @param scope zakres obrazów pośrednich
+     * @param mat   obraz wejściowy
+     * @return obraz w formacie BGRA
+     */
+    private static Mat toBgra8U(MatScope scope, Mat mat) {
+        int channels = mat.channels();
+        if (channels != 1 && channels != 3 && channels != 4) {
+            throw new IllegalArgumentException("Unsupported number of channels: " + channels);
+        }
+
+        Mat converted = mat;
+        if (mat.depth() != CvType.CV_8U) {
+            converted = scope.newMat(mat.rows(), mat.cols(), CvType.makeType(CvType.CV_8U, channels));
+            mat.convertTo(converted, CvType.CV_8U);
+        }
+
+        if (channels == 4) {
+            return converted.isContinuous() ? converted : scope.copy(converted);
+        }
+
+        Mat bgra = scope.newMat(mat.rows(), mat.cols(), CvType.CV_8UC4);
+        Imgproc.cvtColor(converted, bgra, channels == 1 ? Imgproc.COLOR_GRAY2BGRA : Imgproc.COLOR_BGR2BGRA);
+        return bgra;
+    }
+
+    /**
+     * Pobiera bufor wielokrotnego użytku bieżącego wątku o pojemności co najmniej
+     * podanej liczby bajtów. Bufor większy niż {@link #MAX_CACHED_BUFFER_BYTES}
+     * jest tworzony jednorazowo i nie jest zapamiętywany.
+     *
+     * @param capacity wymagana pojemność bufora
+     * @return bufor na piksele
+     */
+    private static ByteBuffer getPixelBuffer(int capacity) {
+        if (capacity > MAX_CACHED_BUFFER_BYTES) {
+            return ByteBuffer.allocate(capacity);
+        }
+
+        ByteBuffer buffer = PIXEL_BUFFER.get();
+        if (buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(capacity);
+            PIXEL_BUFFER.set(buffer);
+        }
+
+        buffer.clear();
+        return buffer;
     }
 
     /**
@@ -111,11 +201,13 @@ public class ImageUtils {
      * @return obiekt <tt>Image</tt> w skali szarości
      */
     public static Image toGrayscale(Image image) {
-        Mat inImage = ImageUtils.imageToMat(image);
-        Mat outImage = new Mat();
-        Imgproc.cvtColor(inImage, outImage, Imgproc.COLOR_BGR2GRAY);
+        try (MatScope scope = new MatScope()) {
+            Mat inImage = scope.track(imageToMat(image));
+            Mat outImage = scope.newMat();
+            Imgproc.cvtColor(inImage, outImage, Imgproc.COLOR_BGR2GRAY);
 
-        return ImageUtils.mat2Image(outImage);
+            return mat2Image(outImage);
+        }
     }
 
     /**
@@ -129,9 +221,28 @@ public class ImageUtils {
     }
 
     public static Image binarize(Image image) {
-        Mat mat = imageToMat(image);
-        binarize(mat);
+        try (MatScope scope = new MatScope()) {
+            Mat mat = scope.track(imageToMat(image));
+            binarize(mat);
+
+            return mat2Image(mat);
+        }
+    }
+
+    /**
+     * Wykonuje operację na obrazie i zwraca wynik jako nowy obiekt <tt>Image</tt>.
+     * Obiekty Mat utworzone po drodze są zwalniane.
+     *
+     * @param image     obraz wejściowy
+     * @param operation operacja do wykonania
+     * @return obraz wynikowy
+     */
+    public static Image apply(Image image, Operation operation) {
+        try (MatScope scope = new MatScope()) {
+            Mat source = scope.track(imageToMat(image));
+            Mat result = scope.recycle(operation.apply(source));
 
-        return mat2Image(mat);
+            return mat2Image(result);
+        }
     }
 }
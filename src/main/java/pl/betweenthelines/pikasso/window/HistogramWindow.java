@@ -69,6 +69,13 @@ public class HistogramWindow implements Window {
      */
     private Histogram histogram;
 
+    /**
+     * Wersja obrazu i zaznaczony fragment, dla których zliczono piksele histogramu.
+     * Dopóki się nie zmienią, zmiana zakresu nie wymaga ponownego zliczania.
+     */
+    private long histogramImageVersion;
+    private Image histogramImageSelection;
+
     /**
      * Podgląd obrazu, którego dotyczy histogram.
      */
@@ -236,8 +243,14 @@ public class HistogramWindow implements Window {
         range.setHighValue(MAX_LEVEL);
         range.setPrefHeight(200);
         range.setPrefWidth(400);
-        range.highValueProperty().addListener((observable, oldValue, newValue) -> max.setText(String.valueOf(newValue.intValue())));
-        range.lowValueProperty().addListener((observable, oldValue, newValue) -> min.setText(String.valueOf(newValue.intValue())));
+        range.highValueProperty().addListener((observable, oldValue, newValue) -> {
+            max.setText(String.valueOf(newValue.intValue()));
+            if (oldValue.intValue() != newValue.intValue()) handleRefreshAction(range);
+        });
+        range.lowValueProperty().addListener((observable, oldValue, newValue) -> {
+            min.setText(String.valueOf(newValue.intValue()));
+            if (oldValue.intValue() != newValue.intValue()) handleRefreshAction(range);
+        });
         return range;
     }
 
@@ -252,7 +265,7 @@ public class HistogramWindow implements Window {
         VBox optionsVBox = new VBox();
         optionsVBox.setMinWidth(140);
 
-        imagePreview = new ImageView(getImage());
+        imagePreview = new ImageView(histogram.getImage());
         imagePreview.setPreserveRatio(true);
         imagePreview.setFitHeight(80);
         imagePreview.setFitWidth(142);
@@ -396,7 +409,9 @@ public class HistogramWindow implements Window {
     }
 
     /**
-     * Odświeża histogram dla podanego zakresu poziomów jasności.
+     * Odświeża histogram dla podanego zakresu poziomów jasności. Jeśli obraz
+     * ani zaznaczenie nie zmieniły się od ostatniego zliczenia pikseli,
+     * przeliczane są tylko statystyki dla nowego zakresu.
      *
      * @param minLevel dolny poziom jasności
      * @param maxLevel górny poziom jasności
@@ -406,7 +421,16 @@ public class HistogramWindow implements Window {
      *                                    który nie zdążył się załadować.
      */
     private void reloadHistogram(int minLevel, int maxLevel) throws ImageIsTooBigException, IOException, ImageNotLoadedYetException {
-        histogram = new Histogram(getImage(), minLevel, maxLevel);
+        if (isHistogramUpToDate()) {
+            histogram = histogram.withRange(minLevel, maxLevel);
+        } else {
+            long imageVersion = openedFileData.getImageVersion();
+            Image imageSelection = openedFileData.getImageSelection();
+            histogram = new Histogram(getImage(), minLevel, maxLevel);
+            histogramImageVersion = imageVersion;
+            histogramImageSelection = imageSelection;
+        }
+
         chart.getData().clear();
         chart.getData().addAll(
                 histogram.getRed().getSeries(),
@@ -416,6 +440,18 @@ public class HistogramWindow implements Window {
         );
     }
 
+    /**
+     * Sprawdza, czy piksele histogramu zostały zliczone dla aktualnego obrazu
+     * i zaznaczenia.
+     *
+     * @return <tt>true</tt>, jeśli histogram dotyczy aktualnego obrazu
+     */
+    private boolean isHistogramUpToDate() {
+        return histogram != null
+                && histogramImageVersion == openedFileData.getImageVersion()
+                && histogramImageSelection == openedFileData.getImageSelection();
+    }
+
     /**
      * Pobiera obraz lub jego zaznaczony fragment.
      *
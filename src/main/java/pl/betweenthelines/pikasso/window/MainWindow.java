@@ -97,9 +97,10 @@ public class MainWindow {
     private ImageView imageView;
 
     /**
-     * Pozycja menu - cofnięcie ostatniej zmiany.
+     * Pozycje menu - cofnięcie ostatniej zmiany i ponowienie cofniętej zmiany.
      */
     private MenuItem undoItem;
+    private MenuItem redoItem;
 
     /**
      * Lista pozycji menu, które są zablokowane, jeśli żaden obraz nie jest otwarty.
@@ -629,7 +630,7 @@ public class MainWindow {
      */
     private Menu createEditMenu() {
         Menu imageMenu = new Menu("Edycja");
-        imageMenu.getItems().add(createUndoItem());
+        imageMenu.getItems().addAll(createUndoItem(), createRedoItem());
         return imageMenu;
     }
 
@@ -641,7 +642,13 @@ public class MainWindow {
     private MenuItem createUndoItem() {
         undoItem = new MenuItem("Cofnij");
         undoItem.setDisable(true);
-        undoItem.setOnAction(event -> openedFileData.undo());
+        undoItem.setOnAction(event -> {
+            try {
+                openedFileData.undo();
+            } catch (Exception e) {
+                ErrorHandler.handleError(e);
+            }
+        });
 
         KeyCombination undoCombination = new KeyCodeCombination(KeyCode.Z, KeyCombination.CONTROL_DOWN);
         undoItem.setAccelerator(undoCombination);
@@ -649,6 +656,28 @@ public class MainWindow {
         return undoItem;
     }
 
+    /**
+     * Tworzy opcję ponowienia cofniętej zmiany.
+     *
+     * @return <tt>MenuItem</tt> Ponów
+     */
+    private MenuItem createRedoItem() {
+        redoItem = new MenuItem("Ponów");
+        redoItem.setDisable(true);
+        redoItem.setOnAction(event -> {
+            try {
+                openedFileData.redo();
+            } catch (Exception e) {
+                ErrorHandler.handleError(e);
+            }
+        });
+
+        KeyCombination redoCombination = new KeyCodeCombination(KeyCode.Y, KeyCombination.CONTROL_DOWN);
+        redoItem.setAccelerator(redoCombination);
+
+        return redoItem;
+    }
+
     /**
      * Tworzy menu obrazu.
      *
@@ -906,7 +935,10 @@ public class MainWindow {
         imageView.fitHeightProperty().bind(zoomSlider.valueProperty().multiply(image.getHeight()));
         imageView.setImage(image);
         zoomSlider.setValue(calculateZoom(image));
-        openedFileData = new FileData(file, imageView, undoItem);
+        if (openedFileData != null) {
+            openedFileData.close();
+        }
+        openedFileData = new FileData(file, imageView, undoItem, redoItem);
         lastDirectory = file.getParentFile();
     }
 
@@ -970,9 +1002,9 @@ public class MainWindow {
         MenuItem closeFile = new MenuItem("Zamknij plik");
         enabledWhenFileOpended.add(closeFile);
         closeFile.setOnAction(event -> {
+            openedFileData.close();
             openedFileData = null;
             imageView.setImage(null);
-            undoItem.setDisable(true);
             refreshWindow();
         });
         return closeFile;
@@ -5,8 +5,11 @@ import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.shape.Rectangle;
 import lombok.Data;
+import pl.betweenthelines.pikasso.engine.MatTracker;
+import pl.betweenthelines.pikasso.window.image.history.ImageHistory;
 
 import java.io.File;
+import java.io.IOException;
 
 /**
  * Klasa przechowująca informacje o otwartym obrazie.
@@ -35,16 +38,29 @@ public class FileData {
     private Rectangle selection;
 
     /**
-     * Poprzedni zachowany stan obrazu (przywracany w razie cofnięcia
-     * ostatniej operacji).
+     * Historia zmian obrazu (przywracana w razie cofnięcia lub ponowienia
+     * operacji).
      */
-    private Image previousImage;
+    private ImageHistory history;
 
     /**
-     * Opcja menu "cofnij". Przechowywana w FileData, aby ją zablokować,
-     * po cofnięciu operacji (możliwe jest tylko jedno)
+     * Opcje menu "cofnij" i "ponów". Przechowywane w FileData, aby je zablokować,
+     * gdy w historii nie ma już stanu do przywrócenia.
      */
     private MenuItem undoItem;
+    private MenuItem redoItem;
+
+    /**
+     * Wersja obrazu - zwiększana przy każdej zmianie obrazu (również przy cofnięciu),
+     * pozwala wykorzystywać dane wyliczone dla obrazu, dopóki się nie zmienił.
+     */
+    private long imageVersion;
+
+    /**
+     * Obraz w postaci obiektów Mat współdzielonych przez okna operacji - unieważniane
+     * przy każdej zmianie obrazu.
+     */
+    private SourceMatCache sources;
 
     /**
      * Konstruktor obiektu tworzony podczas otwarcia pliku.
@@ -52,12 +68,16 @@ public class FileData {
      * @param file      otwarty plik
      * @param imageView z otwartym obrazem
      * @param undoItem  opcja menu "cofnij"
+     * @param redoItem  opcja menu "ponów"
      */
-    public FileData(File file, ImageView imageView, MenuItem undoItem) {
+    public FileData(File file, ImageView imageView, MenuItem undoItem, MenuItem redoItem) {
         this.file = file;
         this.imageView = imageView;
         this.undoItem = undoItem;
-        undoItem.setDisable(true);
+        this.redoItem = redoItem;
+        this.history = new ImageHistory();
+        this.sources = new SourceMatCache(imageView.getImage());
+        refreshHistoryItems();
     }
 
     /**
@@ -67,6 +87,7 @@ public class FileData {
      */
     public FileData(ImageView imageView) {
         this.imageView = imageView;
+        this.sources = new SourceMatCache(imageView.getImage());
     }
 
     /**
@@ -75,18 +96,59 @@ public class FileData {
      * @param image do ustawienia
      */
     public void setImage(Image image) {
-        previousImage = imageView.getImage();
+        history.push(imageView.getImage());
         imageView.setImage(image);
-        undoItem.setDisable(false);
+        sources.setImage(image);
+        imageVersion++;
+        refreshHistoryItems();
+        MatTracker.report();
     }
 
     /**
      * Przywraca poprzedni stan obrazu (cofa operację).
+     *
+     * @throws IOException w razie błędu odczytu stanu zapisanego w pliku tymczasowym
+     */
+    public void undo() throws IOException {
+        if (history.canUndo()) {
+            imageView.setImage(history.undo(imageView.getImage()));
+            sources.setImage(imageView.getImage());
+            imageVersion++;
+        }
+        refreshHistoryItems();
+    }
+
+    /**
+     * Przywraca stan obrazu sprzed cofnięcia operacji (ponawia operację).
+     *
+     * @throws IOException w razie błędu odczytu stanu zapisanego w pliku tymczasowym
+     */
+    public void redo() throws IOException {
+        if (history.canRedo()) {
+            imageView.setImage(history.redo(imageView.getImage()));
+            sources.setImage(imageView.getImage());
+            imageVersion++;
+        }
+        refreshHistoryItems();
+    }
+
+    /**
+     * Usuwa historię zmian, zwalnia obiekty Mat z obrazem i blokuje opcje cofania
+     * i ponawiania - wywoływane przy zamknięciu pliku.
+     */
+    public void close() {
+        history.clear();
+        sources.release();
+        refreshHistoryItems();
+    }
+
+    /**
+     * Blokuje lub odblokowuje opcje menu "cofnij" i "ponów" w zależności
+     * od stanu historii.
      */
-    public void undo() {
-        imageView.setImage(previousImage);
-        previousImage = null;
-        undoItem.setDisable(true);
+    private void refreshHistoryItems() {
+        undoItem.setDisable(!history.canUndo());
+        redoItem.setDisable(!history.canRedo());
     }
 
 }
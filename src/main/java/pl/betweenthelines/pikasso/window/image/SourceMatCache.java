@@ -0,0 +1,152 @@
+package pl.betweenthelines.pikasso.window.image;
+
+import javafx.scene.image.Image;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.MatTracker;
+import pl.betweenthelines.pikasso.utils.ImageUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pamięć podręczna otwartego obrazu w postaci obiektów Mat (w formacie BGRA,
+ * w skali szarości i pomniejszonych kopii do podglądów), współdzielona przez
+ * okna operacji. Dzięki niej obraz nie jest konwertowany z obiektu <tt>Image</tt>
+ * przy każdym odświeżeniu podglądu.
+ * <p>
+ * Obiekty Mat są tworzone przy pierwszym użyciu i zwalniane, gdy zmieni się obraz
+ * ({@link #setImage(Image)}) lub plik zostanie zamknięty ({@link #release()}).
+ * Na zewnątrz wydawane są kopie albo widoki (współdzielące dane z pamięcią podręczną,
+ * tylko do odczytu). Wywołujący musi je zwolnić - widok pozostaje poprawny również
+ * po unieważnieniu pamięci podręcznej, bo OpenCV zlicza referencje do danych.
+ * <p>
+ * Metody mogą być wywoływane z dowolnego wątku.
+ */
+public class SourceMatCache {
+
+    /**
+     * Obraz, dla którego tworzone są obiekty Mat.
+     */
+    private Image image;
+
+    /**
+     * Obraz w formacie BGRA i w skali szarości.
+     */
+    private Mat bgra;
+    private Mat gray;
+
+    /**
+     * Pomniejszone kopie obrazu dla poszczególnych rozmiarów podglądu.
+     */
+    private final Map<Integer, Mat> proxies = new HashMap<>();
+
+    /**
+     * @param image obraz
+     */
+    public SourceMatCache(Image image) {
+        this.image = image;
+    }
+
+    /**
+     * @return obraz, dla którego tworzone są obiekty Mat
+     */
+    public synchronized Image getImage() {
+        return image;
+    }
+
+    /**
+     * Zmienia obraz i zwalnia obiekty Mat utworzone dla poprzedniego obrazu.
+     *
+     * @param image nowy obraz
+     */
+    public synchronized void setImage(Image image) {
+        if (this.image != image) {
+            release();
+            this.image = image;
+        }
+    }
+
+    /**
+     * Zwraca widok obrazu w formacie BGRA (8UC4). Widok nie może być modyfikowany.
+     *
+     * @return widok obrazu (do zwolnienia przez wywołującego)
+     */
+    public synchronized Mat getBgraView() {
+        Mat source = bgra();
+        return MatTracker.register(source.submat(0, source.rows(), 0, source.cols()));
+    }
+
+    /**
+     * Zwraca kopię obrazu w skali szarości (8UC1).
+     *
+     * @return kopia obrazu (do zwolnienia przez wywołującego)
+     */
+    public synchronized Mat getGray() {
+        if (gray == null) {
+            gray = MatTracker.register(new Mat());
+            Imgproc.cvtColor(bgra(), gray, Imgproc.COLOR_BGRA2GRAY);
+        }
+
+        return MatTracker.register(gray.clone());
+    }
+
+    /**
+     * Zwraca widok pomniejszonej kopii obrazu w formacie BGRA. Obraz jest zmniejszany
+     * o połowę (<tt>pyrDown</tt>) dopóki jego dłuższy bok jest co najmniej dwa razy
+     * większy niż rozmiar podglądu, więc podgląd nie traci szczegółów widocznych
+     * na ekranie. Widok nie może być modyfikowany.
+     *
+     * @param size rozmiar podglądu
+     * @return widok pomniejszonej kopii obrazu (do zwolnienia przez wywołującego)
+     */
+    public synchronized Mat getProxyView(int size) {
+        Mat proxy = proxies.get(size);
+        if (proxy == null) {
+            proxy = bgra();
+            while (Math.max(proxy.cols(), proxy.rows()) >= 2 * size) {
+                Mat smaller = MatTracker.register(new Mat());
+                Imgproc.pyrDown(proxy, smaller);
+                if (proxy != bgra) {
+                    proxy.release();
+                }
+                proxy = smaller;
+            }
+            proxies.put(size, proxy);
+        }
+
+        return MatTracker.register(proxy.submat(0, proxy.rows(), 0, proxy.cols()));
+    }
+
+    /**
+     * Zwalnia wszystkie obiekty Mat. Zostaną utworzone ponownie przy kolejnym użyciu.
+     */
+    public synchronized void release() {
+        for (Mat proxy : proxies.values()) {
+            if (proxy != bgra) {
+                proxy.release();
+            }
+        }
+        proxies.clear();
+
+        if (gray != null) {
+            gray.release();
+            gray = null;
+        }
+        if (bgra != null) {
+            bgra.release();
+            bgra = null;
+        }
+    }
+
+    /**
+     * @return obraz w formacie BGRA (tworzony przy pierwszym użyciu)
+     */
+    private Mat bgra() {
+        if (bgra == null) {
+            bgra = ImageUtils.imageToMat(image);
+        }
+
+        return bgra;
+    }
+}
@@ -3,8 +3,6 @@ package pl.betweenthelines.pikasso.window.image.histogram;
 import javafx.scene.chart.XYChart;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
-import org.apache.commons.math3.stat.descriptive.moment.Mean;
-import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 
 @Getter
 public class ChannelProperties {
@@ -12,7 +10,7 @@ public class ChannelProperties {
     private Channel channel;
     private long[] pixels;
     private int pixelsTotal;
-    private int pixelCount;
+    private long pixelCount;
     private int minLevel;
     private int maxLevel;
 
@@ -21,6 +19,15 @@ public class ChannelProperties {
     private double standardDeviation;
     private XYChart.Series series;
 
+    /**
+     * Sumy prefiksowe liczby pikseli, sumy poziomów jasności i sumy kwadratów
+     * poziomów jasności - element <tt>i</tt> dotyczy poziomów od 0 do <tt>i - 1</tt>.
+     * Są współdzielone przez wszystkie zakresy tego samego histogramu.
+     */
+    private long[] cumulativeCounts;
+    private long[] cumulativeSums;
+    private long[] cumulativeSquares;
+
     public ChannelProperties(Channel channel, long[] pixels, int pixelsTotal, int minLevel, int maxLevel) {
         this.channel = channel;
         this.pixelsTotal = pixelsTotal;
@@ -30,16 +37,59 @@ public class ChannelProperties {
         setData(pixels);
     }
 
+    private ChannelProperties(ChannelProperties source, int minLevel, int maxLevel) {
+        this.channel = source.channel;
+        this.pixels = source.pixels;
+        this.pixelsTotal = source.pixelsTotal;
+        this.cumulativeCounts = source.cumulativeCounts;
+        this.cumulativeSums = source.cumulativeSums;
+        this.cumulativeSquares = source.cumulativeSquares;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+
+        saveSeries();
+        calculateParameters();
+    }
+
+    /**
+     * Tworzy właściwości kanału dla innego zakresu poziomów jasności na podstawie
+     * już zliczonych pikseli. Statystyki są wyliczane z sum prefiksowych, więc czas
+     * nie zależy od rozmiaru obrazu.
+     *
+     * @param minLevel dolny poziom jasności
+     * @param maxLevel górny poziom jasności
+     * @return właściwości kanału w podanym zakresie
+     */
+    public ChannelProperties withRange(int minLevel, int maxLevel) {
+        return new ChannelProperties(this, minLevel, maxLevel);
+    }
+
     public long getPixelCountOnLevel(int brightnessLevel) {
         return pixels[brightnessLevel];
     }
 
     private void setData(long pixels[]) {
         this.pixels = pixels;
+        calculateCumulativeSums();
         saveSeries();
         calculateParameters();
     }
 
+    /**
+     * Oblicza sumy prefiksowe dla wszystkich poziomów jasności.
+     */
+    private void calculateCumulativeSums() {
+        cumulativeCounts = new long[pixels.length + 1];
+        cumulativeSums = new long[pixels.length + 1];
+        cumulativeSquares = new long[pixels.length + 1];
+
+        for (int i = 0; i < pixels.length; i++) {
+            cumulativeCounts[i + 1] = cumulativeCounts[i] + pixels[i];
+            cumulativeSums[i + 1] = cumulativeSums[i] + i * pixels[i];
+            cumulativeSquares[i + 1] = cumulativeSquares[i] + (long) i * i * pixels[i];
+        }
+    }
+
     private void saveSeries() {
         series = new XYChart.Series();
         series.setName(channel.getName());
@@ -49,38 +99,86 @@ public class ChannelProperties {
         }
     }
 
+    /**
+     * Oblicza liczbę pikseli, medianę, średnią i odchylenie standardowe
+     * poziomów jasności w zakresie od minLevel do maxLevel na podstawie
+     * sum prefiksowych (bez rozwijania histogramu do tablicy pikseli).
+     * Mediana parzystej liczby pikseli jest średnią dwóch środkowych poziomów.
+     */
     public void calculateParameters() {
-        pixelCount = 0;
-        for (int i = minLevel; i <= maxLevel; i++) {
-            pixelCount += pixels[i];
-        }
+        pixelCount = rangeOf(cumulativeCounts);
 
-        double[] dpixels = new double[pixelCount];
-        int count = 0;
-        for (int i = minLevel; i <= maxLevel; i++) {
-            for (int j = 0; j < pixels[i]; j++) {
-                dpixels[count] = i;
-                count++;
-            }
-        }
-
-        int middle = pixelCount / 2;
         if (pixelCount < 2) {
             this.median = 0;
             this.mean = 0;
             this.standardDeviation = 0;
             return;
-        } else if (pixelCount % 2 == 0) {
-            this.median = (dpixels[middle] + dpixels[middle + 1]) / 2;
+        }
+
+        long middle = pixelCount / 2;
+        if (pixelCount % 2 == 0) {
+            this.median = (levelAt(middle - 1) + levelAt(middle)) / 2.0;
         } else {
-            this.median = dpixels[middle];
+            this.median = levelAt(middle);
         }
 
-        Mean mean = new Mean();
-        this.mean = mean.evaluate(dpixels);
+        this.mean = calculateMean();
+        this.standardDeviation = calculateStandardDeviation();
+    }
+
+    /**
+     * Zwraca wartość sumy prefiksowej dla zakresu od minLevel do maxLevel.
+     *
+     * @param cumulative suma prefiksowa
+     * @return suma w zakresie
+     */
+    private long rangeOf(long[] cumulative) {
+        return cumulative[maxLevel + 1] - cumulative[minLevel];
+    }
+
+    /**
+     * Znajduje (wyszukiwaniem binarnym) poziom jasności piksela o podanym
+     * indeksie w uporządkowanym rosnąco ciągu pikseli z zakresu.
+     *
+     * @param index indeks piksela
+     * @return poziom jasności piksela
+     */
+    private int levelAt(long index) {
+        long target = cumulativeCounts[minLevel] + index;
+        int low = minLevel;
+        int high = maxLevel;
+        while (low < high) {
+            int level = (low + high) >>> 1;
+            if (target < cumulativeCounts[level + 1]) {
+                high = level;
+            } else {
+                low = level + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Oblicza średni poziom jasności pikseli z zakresu.
+     *
+     * @return średni poziom jasności
+     */
+    private double calculateMean() {
+        return (double) rangeOf(cumulativeSums) / pixelCount;
+    }
 
-        StandardDeviation standardDeviation = new StandardDeviation();
-        this.standardDeviation = standardDeviation.evaluate(dpixels);
+    /**
+     * Oblicza odchylenie standardowe (z próby) poziomów jasności pikseli z zakresu.
+     *
+     * @return odchylenie standardowe
+     */
+    private double calculateStandardDeviation() {
+        double sum = rangeOf(cumulativeSums);
+        double squares = rangeOf(cumulativeSquares);
+
+        double variance = (squares - sum * sum / pixelCount) / (pixelCount - 1);
+        return Math.sqrt(Math.max(0, variance));
     }
 
     @Getter
@@ -3,6 +3,7 @@ package pl.betweenthelines.pikasso.window.image.histogram;
 import javafx.scene.image.Image;
 import org.opencv.core.Mat;
 import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.MatScope;
 import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.PreviewWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
@@ -12,12 +13,13 @@ public class EqualizeHistogram {
     public static Image equalizeHistogram(FileData openedFileData) {
         Image before = openedFileData.getImageView().getImage();
 
-        Mat inImage = ImageUtils.imageToMat(before);
-        Mat outImage = new Mat();
-        Imgproc.cvtColor(inImage, outImage, Imgproc.COLOR_BGR2GRAY);
-        Imgproc.equalizeHist(outImage, outImage);
+        Image after;
+        try (MatScope scope = new MatScope()) {
+            Mat outImage = scope.track(openedFileData.getSources().getGray());
+            Imgproc.equalizeHist(outImage, outImage);
+            after = ImageUtils.mat2Image(outImage);
+        }
 
-        Image after = ImageUtils.mat2Image(outImage);
         PreviewWindow previewWindow = new PreviewWindow(before, after);
         return previewWindow.getResult();
     }
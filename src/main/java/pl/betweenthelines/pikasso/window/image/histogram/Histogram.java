@@ -14,7 +14,6 @@ import static pl.betweenthelines.pikasso.window.image.histogram.ChannelPropertie
 public class Histogram {
 
     private static final int MAX_SIDE_SIZE = 40000;
-    private static final int LEVELS = 256;
 
     private Image image;
     private int pixelsTotal;
@@ -40,6 +39,32 @@ public class Histogram {
         buildHistogramData();
     }
 
+    private Histogram(Histogram source, int minLevel, int maxLevel) {
+        this.image = source.image;
+        this.pixelsTotal = source.pixelsTotal;
+        this.pixelsInRange = source.pixelsInRange;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.isGrayscale = source.isGrayscale;
+
+        this.red = source.red.withRange(minLevel, maxLevel);
+        this.green = source.green.withRange(minLevel, maxLevel);
+        this.blue = source.blue.withRange(minLevel, maxLevel);
+        this.gray = source.gray.withRange(minLevel, maxLevel);
+    }
+
+    /**
+     * Tworzy histogram tego samego obrazu dla innego zakresu poziomów jasności.
+     * Piksele nie są zliczane ponownie - wykorzystywane są już zliczone wartości.
+     *
+     * @param minLevel dolny poziom jasności
+     * @param maxLevel górny poziom jasności
+     * @return histogram w podanym zakresie
+     */
+    public Histogram withRange(int minLevel, int maxLevel) {
+        return new Histogram(this, minLevel, maxLevel);
+    }
+
     private void validateImageSize(Image image) throws ImageIsTooBigException {
         ;
         if (image.getWidth() > MAX_SIDE_SIZE || image.getHeight() > MAX_SIDE_SIZE) {
@@ -57,36 +82,13 @@ public class Histogram {
     }
 
     private void readRGBA(PixelReader pixelReader) {
-        long[] red = new long[LEVELS];
-        long[] green = new long[LEVELS];
-        long[] blue = new long[LEVELS];
-        long[] gray = new long[LEVELS];
-
-        for (int y = 0; y < image.getHeight(); y++) {
-            for (int x = 0; x < image.getWidth(); x++) {
-                int argb = pixelReader.getArgb(x, y);
-                int r = (0xff & (argb >> 16));
-                int g = (0xff & (argb >> 8));
-                int b = (0xff & argb);
-                int gg;
-                if (r == g && r == b) {
-                    gg = r;
-                } else {
-                    isGrayscale = false;
-                    gg = (int) (0.3 * r + 0.59 * g + 0.11 * b);
-                }
-
-                red[r]++;
-                green[g]++;
-                blue[b]++;
-                gray[gg]++;
-            }
-        }
+        HistogramCounts counts = HistogramCounts.count(pixelReader, (int) image.getWidth(), (int) image.getHeight());
+        isGrayscale = counts.isGrayscale();
 
-        this.red = new ChannelProperties(RED, red, pixelsTotal, minLevel, maxLevel);
-        this.green = new ChannelProperties(GREEN, green, pixelsTotal, minLevel, maxLevel);
-        this.blue = new ChannelProperties(BLUE, blue, pixelsTotal, minLevel, maxLevel);
-        this.gray = new ChannelProperties(GRAY, gray, pixelsTotal, minLevel, maxLevel);
+        this.red = new ChannelProperties(RED, counts.getRed(), pixelsTotal, minLevel, maxLevel);
+        this.green = new ChannelProperties(GREEN, counts.getGreen(), pixelsTotal, minLevel, maxLevel);
+        this.blue = new ChannelProperties(BLUE, counts.getBlue(), pixelsTotal, minLevel, maxLevel);
+        this.gray = new ChannelProperties(GRAY, counts.getGray(), pixelsTotal, minLevel, maxLevel);
     }
 
 }
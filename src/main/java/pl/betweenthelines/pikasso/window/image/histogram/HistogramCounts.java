@@ -0,0 +1,144 @@
+package pl.betweenthelines.pikasso.window.image.histogram;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import lombok.Getter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Liczba pikseli obrazu na poszczególnych poziomach jasności dla kanałów
+ * czerwonego, zielonego, niebieskiego i poziomu szarości.
+ * <p>
+ * Obraz jest dzielony na pasy wierszy zliczane równolegle - każdy pas pobiera
+ * piksele wierszami do tablicy <tt>int[]</tt> i zlicza je we własnych tablicach,
+ * które na koniec są sumowane.
+ */
+@Getter
+public class HistogramCounts {
+
+    /**
+     * Liczba poziomów jasności.
+     */
+    public static final int LEVELS = 256;
+
+    /**
+     * Minimalna liczba wierszy obrazu zliczana przez jeden wątek.
+     */
+    private static final int MIN_ROWS_PER_STRIPE = 64;
+
+    /**
+     * Liczba wierszy pobieranych jednocześnie z obrazu.
+     */
+    private static final int ROWS_PER_READ = 8;
+
+    /**
+     * Wagi kanałów przy wyliczaniu poziomu szarości.
+     */
+    private static final double RED_WEIGHT = 0.3;
+    private static final double GREEN_WEIGHT = 0.59;
+    private static final double BLUE_WEIGHT = 0.11;
+
+    private long[] red = new long[LEVELS];
+    private long[] green = new long[LEVELS];
+    private long[] blue = new long[LEVELS];
+    private long[] gray = new long[LEVELS];
+
+    /**
+     * Flaga oznaczająca, że wszystkie piksele mają równe wartości kanałów RGB.
+     */
+    private boolean grayscale = true;
+
+    /**
+     * Zlicza piksele obrazu o podanych wymiarach.
+     *
+     * @param pixelReader obiekt do odczytu pikseli obrazu
+     * @param width       szerokość obrazu
+     * @param height      wysokość obrazu
+     * @return liczba pikseli na poszczególnych poziomach jasności
+     */
+    public static HistogramCounts count(PixelReader pixelReader, int width, int height) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        int stripes = Math.max(1, Math.min(parallelism * 4, height / MIN_ROWS_PER_STRIPE));
+        HistogramCounts[] stripeCounts = new HistogramCounts[stripes];
+
+        IntStream.range(0, stripes).parallel().forEach(stripe -> {
+            int fromRow = (int) ((long) height * stripe / stripes);
+            int toRow = (int) ((long) height * (stripe + 1) / stripes);
+            stripeCounts[stripe] = countRows(pixelReader, width, fromRow, toRow);
+        });
+
+        HistogramCounts counts = new HistogramCounts();
+        for (HistogramCounts stripeCount : stripeCounts) {
+            counts.add(stripeCount);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Zlicza piksele w podanym zakresie wierszy.
+     *
+     * @param pixelReader obiekt do odczytu pikseli obrazu
+     * @param width       szerokość obrazu
+     * @param fromRow     pierwszy wiersz (włącznie)
+     * @param toRow       ostatni wiersz (wyłącznie)
+     * @return liczba pikseli na poszczególnych poziomach jasności
+     */
+    private static HistogramCounts countRows(PixelReader pixelReader, int width, int fromRow, int toRow) {
+        HistogramCounts counts = new HistogramCounts();
+        int[] pixels = new int[width * Math.min(ROWS_PER_READ, Math.max(1, toRow - fromRow))];
+
+        for (int y = fromRow; y < toRow; y += ROWS_PER_READ) {
+            int rows = Math.min(ROWS_PER_READ, toRow - y);
+            pixelReader.getPixels(0, y, width, rows, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+            counts.countPixels(pixels, width * rows);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Zlicza podaną liczbę pikseli z tablicy w formacie ARGB.
+     *
+     * @param pixels tablica pikseli
+     * @param length liczba pikseli do zliczenia
+     */
+    private void countPixels(int[] pixels, int length) {
+        for (int i = 0; i < length; i++) {
+            int argb = pixels[i];
+            int r = (0xff & (argb >> 16));
+            int g = (0xff & (argb >> 8));
+            int b = (0xff & argb);
+            int gg;
+            if (r == g && r == b) {
+                gg = r;
+            } else {
+                grayscale = false;
+                gg = (int) (RED_WEIGHT * r + GREEN_WEIGHT * g + BLUE_WEIGHT * b);
+            }
+
+            red[r]++;
+            green[g]++;
+            blue[b]++;
+            gray[gg]++;
+        }
+    }
+
+    /**
+     * Dodaje do obecnych wartości liczbę pikseli z innego fragmentu obrazu.
+     *
+     * @param other liczba pikseli z innego fragmentu obrazu
+     */
+    private void add(HistogramCounts other) {
+        for (int level = 0; level < LEVELS; level++) {
+            red[level] += other.red[level];
+            green[level] += other.green[level];
+            blue[level] += other.blue[level];
+            gray[level] += other.gray[level];
+        }
+
+        grayscale &= other.grayscale;
+    }
+}
@@ -2,7 +2,7 @@ package pl.betweenthelines.pikasso.window.image.histogram;
 
 import javafx.scene.image.Image;
 import org.opencv.core.Mat;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.MatScope;
 import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.PreviewWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
@@ -18,12 +18,13 @@ public class StretchHistogram {
     public static Image stretchHistogram(FileData openedFileData, Histogram histogram) {
         Image before = openedFileData.getImageView().getImage();
 
-        Mat inImage = ImageUtils.imageToMat(before);
-        Mat outImage = new Mat();
-        Imgproc.cvtColor(inImage, outImage, Imgproc.COLOR_BGR2GRAY);
-        normalize(outImage, outImage, MIN_LEVEL, MAX_LEVEL, NORM_MINMAX);
+        Image after;
+        try (MatScope scope = new MatScope()) {
+            Mat outImage = scope.track(openedFileData.getSources().getGray());
+            normalize(outImage, outImage, MIN_LEVEL, MAX_LEVEL, NORM_MINMAX);
+            after = ImageUtils.mat2Image(outImage);
+        }
 
-        Image after = ImageUtils.mat2Image(outImage);
         PreviewWindow previewWindow = new PreviewWindow(before, after);
         return previewWindow.getResult();
     }
@@ -0,0 +1,287 @@
+package pl.betweenthelines.pikasso.window.image.history;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.Executor;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Pojedynczy zachowany stan obrazu w historii zmian.
+ * <p>
+ * Stan może być przechowywany jako:
+ * <ol>
+ * <li>obiekt <tt>Image</tt> - przywrócenie jest natychmiastowe,</li>
+ * <li>skompresowane piksele BGRA w pamięci,</li>
+ * <li>skompresowane piksele BGRA w pliku tymczasowym.</li>
+ * </ol>
+ * Przeniesienie stanu do skompresowanej postaci odbywa się w tle, dlatego
+ * dostęp do pól jest synchronizowany.
+ */
+class HistoryEntry {
+
+    /**
+     * Miejsce przechowywania stanu - w kolejności od najszybszego
+     * w przywróceniu do zajmującego najmniej pamięci.
+     */
+    enum Storage {
+        IMAGE, COMPRESSED, FILE
+    }
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final int width;
+    private final int height;
+
+    private Image image;
+    private byte[] compressed;
+    private File file;
+
+    /**
+     * Docelowe miejsce przechowywania, do którego stan jest przenoszony w tle.
+     */
+    private Storage pendingStorage;
+
+    /**
+     * Flaga oznaczająca, że zapis stanu do pliku tymczasowego się nie powiódł
+     * (np. brak miejsca) - stan pozostaje wtedy skompresowany w pamięci i nie jest
+     * ponownie zapisywany.
+     */
+    private boolean spillFailed;
+
+    /**
+     * Flaga oznaczająca, że stan został przywrócony lub usunięty z historii.
+     */
+    private boolean released;
+
+    HistoryEntry(Image image) {
+        this.image = image;
+        this.width = (int) image.getWidth();
+        this.height = (int) image.getHeight();
+    }
+
+    /**
+     * Zwraca aktualne miejsce przechowywania stanu.
+     *
+     * @return miejsce przechowywania
+     */
+    synchronized Storage getStorage() {
+        if (image != null) {
+            return Storage.IMAGE;
+        }
+
+        return compressed != null ? Storage.COMPRESSED : Storage.FILE;
+    }
+
+    /**
+     * Sprawdza, czy stan może zostać zapisany do pliku tymczasowego.
+     *
+     * @return <tt>false</tt>, jeśli wcześniejszy zapis do pliku się nie powiódł
+     */
+    synchronized boolean canSpill() {
+        return !spillFailed;
+    }
+
+    /**
+     * Zwraca liczbę bajtów pamięci zajmowanych przez stan.
+     *
+     * @return liczba bajtów
+     */
+    synchronized long getMemorySize() {
+        if (image != null) {
+            return (long) width * height * BYTES_PER_PIXEL;
+        }
+
+        return compressed != null ? compressed.length : 0;
+    }
+
+    /**
+     * Zleca przeniesienie stanu do podanego miejsca przechowywania. Stan nigdy
+     * nie jest przenoszony z powrotem do szybszego miejsca ani ponownie zapisywany
+     * do pliku po nieudanym zapisie.
+     *
+     * @param storage  docelowe miejsce przechowywania
+     * @param executor wykonawca zadań w tle
+     * @param onStored akcja wykonywana po przeniesieniu stanu
+     */
+    synchronized void moveTo(Storage storage, Executor executor, Runnable onStored) {
+        if (released || (storage == Storage.FILE && spillFailed) || storage.compareTo(getStorage()) <= 0
+                || (pendingStorage != null && storage.compareTo(pendingStorage) <= 0)) {
+            return;
+        }
+
+        pendingStorage = storage;
+        executor.execute(() -> {
+            store(storage);
+            onStored.run();
+        });
+    }
+
+    /**
+     * Przenosi stan do podanego miejsca przechowywania. Kompresja i zapis do pliku
+     * odbywają się poza blokadą, aby nie opóźniać przywrócenia stanu.
+     *
+     * @param storage docelowe miejsce przechowywania
+     */
+    private void store(Storage storage) {
+        Image source;
+        byte[] data;
+        synchronized (this) {
+            if (released || storage != pendingStorage) {
+                return;
+            }
+            source = image;
+            data = compressed;
+        }
+
+        if (source == null && data == null) {
+            return;
+        }
+
+        if (data == null) {
+            data = compress(source);
+        }
+
+        File spilled = null;
+        if (storage == Storage.FILE) {
+            spilled = writeTempFile(data);
+        }
+
+        synchronized (this) {
+            if (released) {
+                deleteFile(spilled);
+                return;
+            }
+
+            image = null;
+            spillFailed |= storage == Storage.FILE && spilled == null;
+            if (spilled != null) {
+                compressed = null;
+                file = spilled;
+            } else {
+                compressed = data;
+            }
+
+            if (pendingStorage == storage) {
+                pendingStorage = null;
+            }
+        }
+    }
+
+    /**
+     * Przywraca obraz z zachowanego stanu.
+     *
+     * @return obraz
+     * @throws IOException w razie błędu odczytu pliku tymczasowego
+     */
+    synchronized Image restore() throws IOException {
+        if (image != null) {
+            return image;
+        }
+
+        byte[] data = compressed != null ? compressed : Files.readAllBytes(file.toPath());
+        return decompress(data);
+    }
+
+    /**
+     * Zwalnia zasoby zajmowane przez stan (w tym plik tymczasowy).
+     */
+    synchronized void release() {
+        released = true;
+        image = null;
+        compressed = null;
+        deleteFile(file);
+        file = null;
+    }
+
+    /**
+     * Kompresuje piksele obrazu w formacie BGRA.
+     *
+     * @param source obraz
+     * @return skompresowane piksele
+     */
+    private byte[] compress(Image source) {
+        byte[] pixels = new byte[width * height * BYTES_PER_PIXEL];
+        source.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getByteBgraInstance(),
+                pixels, 0, width * BYTES_PER_PIXEL);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream(pixels.length / 4);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream deflaterStream = new DeflaterOutputStream(output, deflater)) {
+            deflaterStream.write(pixels);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Odtwarza obraz ze skompresowanych pikseli w formacie BGRA.
+     *
+     * @param data skompresowane piksele
+     * @return obraz
+     * @throws IOException jeśli dane są uszkodzone
+     */
+    private Image decompress(byte[] data) throws IOException {
+        byte[] pixels = new byte[width * height * BYTES_PER_PIXEL];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            int length = 0;
+            while (length < pixels.length && !inflater.finished()) {
+                int inflated = inflater.inflate(pixels, length, pixels.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Uszkodzony zapis stanu historii!");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+
+        WritableImage restored = new WritableImage(width, height);
+        restored.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getByteBgraInstance(),
+                ByteBuffer.wrap(pixels), width * BYTES_PER_PIXEL);
+        return restored;
+    }
+
+    /**
+     * Zapisuje dane do pliku tymczasowego. Jeśli zapis się nie powiedzie,
+     * dane pozostają w pamięci.
+     *
+     * @param data dane do zapisania
+     * @return plik tymczasowy lub <tt>null</tt>, jeśli nie udało się go zapisać
+     */
+    private File writeTempFile(byte[] data) {
+        File tempFile = null;
+        try {
+            tempFile = File.createTempFile("pikasso-history", ".bin");
+            tempFile.deleteOnExit();
+            Files.write(tempFile.toPath(), data);
+            return tempFile;
+        } catch (IOException e) {
+            deleteFile(tempFile);
+            return null;
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file != null) {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package pl.betweenthelines.pikasso.window.image.history;
+
+import javafx.scene.image.Image;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static pl.betweenthelines.pikasso.window.image.history.HistoryEntry.Storage.COMPRESSED;
+import static pl.betweenthelines.pikasso.window.image.history.HistoryEntry.Storage.FILE;
+
+/**
+ * Historia zmian obrazu umożliwiająca wielokrotne cofanie i ponawianie operacji.
+ * <p>
+ * Najnowsze stany (po {@value #RECENT_STATES} z każdej strony) są przechowywane
+ * jako obiekty <tt>Image</tt>, więc ich przywrócenie jest natychmiastowe. Starsze
+ * stany są w tle kompresowane, a jeśli zajmują więcej pamięci niż pozwala budżet,
+ * najstarsze z nich są zapisywane do plików tymczasowych. Po przekroczeniu
+ * maksymalnej liczby kroków najstarsze stany są usuwane.
+ * <p>
+ * Budżet pamięci i liczbę kroków można ustawić parametrami JVM
+ * <tt>-Dpikasso.history.budget=</tt> (w MB) i <tt>-Dpikasso.history.steps=</tt>.
+ */
+public class ImageHistory {
+
+    /**
+     * Liczba najnowszych stanów cofania i ponawiania przechowywanych bez kompresji.
+     */
+    public static final int RECENT_STATES = 2;
+
+    /**
+     * Domyślny budżet pamięci (w MB) i domyślna maksymalna liczba kroków.
+     */
+    private static final long DEFAULT_MEMORY_BUDGET_MB = 512;
+    private static final int DEFAULT_MAX_STEPS = 30;
+
+    private static final long BYTES_IN_MB = 1024 * 1024;
+
+    /**
+     * Wątek kompresujący i zapisujący stany w tle.
+     */
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pikasso-history");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long memoryBudget;
+    private final int maxSteps;
+
+    /**
+     * Stany do cofnięcia i ponowienia - najnowszy stan jest na początku kolejki.
+     */
+    private final Deque<HistoryEntry> undoStates = new ArrayDeque<>();
+    private final Deque<HistoryEntry> redoStates = new ArrayDeque<>();
+
+    /**
+     * Tworzy historię z budżetem pamięci i liczbą kroków ustawionymi
+     * parametrami JVM (lub wartościami domyślnymi).
+     */
+    public ImageHistory() {
+        this(Long.getLong("pikasso.history.budget", defaultMemoryBudgetMb()) * BYTES_IN_MB,
+                Integer.getInteger("pikasso.history.steps", DEFAULT_MAX_STEPS));
+    }
+
+    /**
+     * Tworzy historię z podanym budżetem pamięci i liczbą kroków.
+     *
+     * @param memoryBudget maksymalna liczba bajtów zajmowanych przez starsze stany
+     * @param maxSteps     maksymalna liczba zachowanych stanów
+     */
+    public ImageHistory(long memoryBudget, int maxSteps) {
+        this.memoryBudget = memoryBudget;
+        this.maxSteps = Math.max(1, maxSteps);
+    }
+
+    /**
+     * Zachowuje stan obrazu przed wykonaniem nowej operacji. Stany do ponowienia
+     * są usuwane.
+     *
+     * @param image obraz przed operacją
+     */
+    public synchronized void push(Image image) {
+        undoStates.push(new HistoryEntry(image));
+        clear(redoStates);
+        trim();
+    }
+
+    /**
+     * Cofa ostatnią operację.
+     *
+     * @param current aktualny obraz (zachowywany do ponowienia)
+     * @return obraz sprzed operacji
+     * @throws IOException w razie błędu odczytu stanu zapisanego w pliku
+     */
+    public synchronized Image undo(Image current) throws IOException {
+        return move(undoStates, redoStates, current);
+    }
+
+    /**
+     * Ponawia ostatnio cofniętą operację.
+     *
+     * @param current aktualny obraz (zachowywany do cofnięcia)
+     * @return obraz po operacji
+     * @throws IOException w razie błędu odczytu stanu zapisanego w pliku
+     */
+    public synchronized Image redo(Image current) throws IOException {
+        return move(redoStates, undoStates, current);
+    }
+
+    public synchronized boolean canUndo() {
+        return !undoStates.isEmpty();
+    }
+
+    public synchronized boolean canRedo() {
+        return !redoStates.isEmpty();
+    }
+
+    /**
+     * Usuwa całą historię i zwalnia zajmowane zasoby.
+     */
+    public synchronized void clear() {
+        clear(undoStates);
+        clear(redoStates);
+    }
+
+    /**
+     * Przywraca najnowszy stan z jednej kolejki, a aktualny obraz zachowuje w drugiej.
+     *
+     * @param from    kolejka, z której przywracany jest stan
+     * @param to      kolejka, w której zachowywany jest aktualny obraz
+     * @param current aktualny obraz
+     * @return przywrócony obraz
+     * @throws IOException w razie błędu odczytu stanu zapisanego w pliku
+     */
+    private Image move(Deque<HistoryEntry> from, Deque<HistoryEntry> to, Image current) throws IOException {
+        HistoryEntry entry = from.peek();
+        Image restored = entry.restore();
+
+        from.pop().release();
+        to.push(new HistoryEntry(current));
+        trim();
+        return restored;
+    }
+
+    /**
+     * Ogranicza liczbę stanów i zajmowaną pamięć: usuwa stany ponad limit kroków,
+     * zleca kompresję starszych stanów i zapis do plików najstarszych stanów,
+     * dopóki budżet pamięci jest przekroczony.
+     */
+    private synchronized void trim() {
+        while (undoStates.size() + redoStates.size() > maxSteps) {
+            Deque<HistoryEntry> states = undoStates.size() >= redoStates.size() ? undoStates : redoStates;
+            states.removeLast().release();
+        }
+
+        compressOlderStates(undoStates);
+        compressOlderStates(redoStates);
+
+        long memoryUsed = 0;
+        for (HistoryEntry entry : undoStates) {
+            memoryUsed += entry.getMemorySize();
+        }
+        for (HistoryEntry entry : redoStates) {
+            memoryUsed += entry.getMemorySize();
+        }
+
+        memoryUsed = spillOldestStates(undoStates, memoryUsed);
+        spillOldestStates(redoStates, memoryUsed);
+    }
+
+    /**
+     * Zleca kompresję stanów starszych niż {@value #RECENT_STATES} najnowsze.
+     *
+     * @param states kolejka stanów
+     */
+    private void compressOlderStates(Deque<HistoryEntry> states) {
+        int index = 0;
+        for (HistoryEntry entry : states) {
+            if (index >= RECENT_STATES) {
+                entry.moveTo(COMPRESSED, COMPACTOR, this::trim);
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Zleca zapis do plików najstarszych skompresowanych stanów, dopóki zajmowana
+     * pamięć przekracza budżet. Stany oczekujące na kompresję są pomijane -
+     * po jej zakończeniu pamięć jest sprawdzana ponownie. Pomijane są też stany,
+     * których nie udało się wcześniej zapisać do pliku, więc brak miejsca na dysku
+     * nie powoduje ponawiania zapisu w nieskończoność.
+     *
+     * @param states     kolejka stanów
+     * @param memoryUsed liczba bajtów zajmowanych przez wszystkie stany
+     * @return liczba bajtów, które zostaną zajęte po zapisie do plików
+     */
+    private long spillOldestStates(Deque<HistoryEntry> states, long memoryUsed) {
+        int index = states.size() - 1;
+        Iterator<HistoryEntry> oldestFirst = states.descendingIterator();
+        while (memoryUsed > memoryBudget && oldestFirst.hasNext() && index >= RECENT_STATES) {
+            HistoryEntry entry = oldestFirst.next();
+            if (entry.getStorage() == COMPRESSED && entry.canSpill()) {
+                memoryUsed -= entry.getMemorySize();
+                entry.moveTo(FILE, COMPACTOR, this::trim);
+            }
+            index--;
+        }
+
+        return memoryUsed;
+    }
+
+    private void clear(Deque<HistoryEntry> states) {
+        states.forEach(HistoryEntry::release);
+        states.clear();
+    }
+
+    /**
+     * Domyślny budżet pamięci - ćwierć maksymalnej pamięci JVM, nie więcej niż
+     * {@value #DEFAULT_MEMORY_BUDGET_MB} MB.
+     *
+     * @return budżet pamięci w MB
+     */
+    private static long defaultMemoryBudgetMb() {
+        return Math.min(DEFAULT_MEMORY_BUDGET_MB, Runtime.getRuntime().maxMemory() / 4 / BYTES_IN_MB);
+    }
+}
@@ -0,0 +1,287 @@
+package pl.betweenthelines.pikasso.window.image.operation;
+
+import javafx.application.Platform;
+import javafx.beans.binding.BooleanBinding;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.StackPane;
+import org.opencv.core.Mat;
+import pl.betweenthelines.pikasso.engine.MatScope;
+import pl.betweenthelines.pikasso.engine.Operation;
+import pl.betweenthelines.pikasso.engine.OperationUtils;
+import pl.betweenthelines.pikasso.error.ErrorHandler;
+import pl.betweenthelines.pikasso.utils.ImageUtils;
+import pl.betweenthelines.pikasso.window.HistogramWindow;
+import pl.betweenthelines.pikasso.window.image.SourceMatCache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Oblicza podgląd obrazu po operacji w tle, poza wątkiem JavaFX.
+ * <p>
+ * Podgląd jest wyświetlany w polu o rozmiarze {@value #PREVIEW_SIZE} x {@value #PREVIEW_SIZE},
+ * więc operacje są wykonywane na pomniejszonej kopii obrazu (poziomie piramidy obrazu
+ * dopasowanym do rozmiaru podglądu). Operacja na obrazie w pełnej rozdzielczości jest
+ * wykonywana dopiero przy zachowaniu wyniku ({@link #apply(Operation, Consumer)}).
+ * Obraz i jego pomniejszona kopia są pobierane z pamięci podręcznej otwartego pliku
+ * ({@link SourceMatCache}), więc nie są konwertowane przy każdym odświeżeniu.
+ * <p>
+ * Obowiązuje zasada "wygrywa najnowsze żądanie": nowe żądanie anuluje poprzednie.
+ * Żądanie, które nie zostało jeszcze rozpoczęte, nie jest wykonywane, a wątek
+ * wykonujący rozpoczęte żądanie jest przerywany - obliczenia kończą się na
+ * najbliższym etapie (przed operacją, między jej powtórzeniami i przed konwersją
+ * wyniku), a bieżące wywołanie OpenCV jest dokańczane. Wynik żądania, które
+ * w międzyczasie się zdezaktualizowało, jest odrzucany. Dzięki temu przesuwanie suwaka nie blokuje
+ * interfejsu, a podgląd zawsze odpowiada ostatnio wybranym opcjom.
+ * <p>
+ * Wszystkie metody muszą być wywoływane w wątku JavaFX.
+ */
+public class PreviewRenderer {
+
+    /**
+     * Rozmiar pola, w którym wyświetlany jest podgląd.
+     */
+    public static final int PREVIEW_SIZE = 400;
+
+    /**
+     * Liczba wątków obliczających podglądy.
+     */
+    private static final int THREADS = 2;
+
+    /**
+     * Wspólna pula wątków obliczających podglądy we wszystkich oknach operacji.
+     */
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "pikasso-preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ImageView imageView;
+
+    /**
+     * Obraz przed operacją w postaci obiektów Mat.
+     */
+    private final SourceMatCache sources;
+
+    /**
+     * Podgląd razem ze wskaźnikiem postępu wyświetlanym nad nim.
+     */
+    private final StackPane pane;
+    private final ProgressIndicator progressIndicator;
+
+    /**
+     * Czy obliczany jest podgląd i czy wykonywana jest operacja na obrazie
+     * w pełnej rozdzielczości.
+     */
+    private final SimpleBooleanProperty rendering = new SimpleBooleanProperty(false);
+    private final SimpleBooleanProperty applying = new SimpleBooleanProperty(false);
+    private final BooleanBinding pending = rendering.or(applying);
+
+    /**
+     * Numer ostatniego żądania i jego zadanie.
+     */
+    private long generation;
+    private Future<?> current;
+
+    /**
+     * Zadanie wykonujące operację na obrazie w pełnej rozdzielczości.
+     */
+    private Future<?> applied;
+
+    /**
+     * @param sources   obraz przed operacją w postaci obiektów Mat
+     * @param imageView podgląd, w którym wyświetlany jest obliczony obraz
+     */
+    public PreviewRenderer(SourceMatCache sources, ImageView imageView) {
+        this.sources = sources;
+        this.imageView = imageView;
+
+        progressIndicator = new ProgressIndicator();
+        progressIndicator.setMaxSize(50, 50);
+        progressIndicator.visibleProperty().bind(pending);
+        progressIndicator.setMouseTransparent(true);
+        pane = new StackPane(imageView, progressIndicator);
+    }
+
+    /**
+     * Oblicza w tle podgląd obrazu po wykonaniu operacji na pomniejszonej kopii obrazu.
+     *
+     * @param operation operacja (jeśli <tt>null</tt>, wyświetlany jest obraz przed operacją)
+     */
+    public void render(Operation operation) {
+        if (operation == null) {
+            Image source = sources.getImage();
+            render(() -> source);
+        } else {
+            render(() -> apply(sources.getProxyView(PREVIEW_SIZE), operation));
+        }
+    }
+
+    /**
+     * Wykonuje w tle operację na obrazie w pełnej rozdzielczości. W tym czasie
+     * wyświetlany jest wskaźnik postępu. Wykonanie operacji nie jest anulowane
+     * przez kolejne żądania podglądu, a jedynie przez {@link #cancel()}.
+     *
+     * @param operation operacja (jeśli <tt>null</tt>, wynikiem jest obraz przed operacją)
+     * @param onApplied wywoływane w wątku JavaFX z obrazem wynikowym
+     */
+    public void apply(Operation operation, Consumer<Image> onApplied) {
+        if (applied != null) {
+            return;
+        }
+
+        Image source = sources.getImage();
+        applying.set(true);
+        applied = EXECUTOR.submit(() -> {
+            try {
+                Image result = operation == null ? source : apply(sources.getBgraView(), operation);
+                Platform.runLater(() -> {
+                    if (applying.get()) {
+                        applying.set(false);
+                        applied = null;
+                        onApplied.accept(result);
+                    }
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    if (applying.get()) {
+                        applying.set(false);
+                        applied = null;
+                        ErrorHandler.handleError(e);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Wykonuje w tle operację na obrazie w pełnej rozdzielczości (tak jak
+     * {@link #apply(Operation, Consumer)}) i otwiera okno z histogramem wyniku.
+     * Podgląd jest obliczany na pomniejszonej kopii obrazu, więc jego histogram
+     * różniłby się od histogramu zachowanego obrazu.
+     *
+     * @param operation operacja (jeśli <tt>null</tt>, histogram dotyczy obrazu przed operacją)
+     */
+    public void showHistogram(Operation operation) {
+        apply(operation, result -> {
+            try {
+                new HistogramWindow(new ImageView(result));
+            } catch (Exception e) {
+                ErrorHandler.handleError(e);
+            }
+        });
+    }
+
+    /**
+     * Oblicza w tle podgląd. Zadanie nie może odczytywać stanu okna, który może
+     * się zmienić w trakcie obliczeń - wszystkie parametry powinny zostać
+     * ustalone przed wywołaniem tej metody.
+     *
+     * @param task zadanie obliczające obraz
+     */
+    public void render(Callable<Image> task) {
+        long requested = ++generation;
+        if (current != null) {
+            current.cancel(true);
+        }
+
+        rendering.set(true);
+        current = EXECUTOR.submit(() -> {
+            try {
+                Image result = task.call();
+                Platform.runLater(() -> publish(requested, result));
+            } catch (Exception e) {
+                Platform.runLater(() -> fail(requested, e));
+            }
+        });
+    }
+
+    /**
+     * Anuluje obliczanie podglądu i wykonywanie operacji na obrazie w pełnej
+     * rozdzielczości (np. przy zamknięciu okna).
+     */
+    public void cancel() {
+        generation++;
+        if (current != null) {
+            current.cancel(true);
+        }
+        if (applied != null) {
+            applied.cancel(true);
+            applied = null;
+        }
+        rendering.set(false);
+        applying.set(false);
+    }
+
+    /**
+     * Wykonuje operację na obrazie i zwalnia obraz wejściowy. Obraz wynikowy
+     * trafia do puli, więc kolejny podgląd może go wykorzystać ponownie.
+     *
+     * @param source    obraz wejściowy (widok z pamięci podręcznej)
+     * @param operation operacja
+     * @return obraz wynikowy
+     */
+    private static Image apply(Mat source, Operation operation) {
+        try (MatScope scope = new MatScope()) {
+            scope.track(source);
+            OperationUtils.checkInterrupted();
+            Mat result = scope.recycle(operation.apply(source));
+
+            OperationUtils.checkInterrupted();
+            return ImageUtils.mat2Image(result);
+        }
+    }
+
+    /**
+     * Wyświetla obliczony obraz, jeśli w międzyczasie nie pojawiło się nowsze żądanie.
+     *
+     * @param requested numer żądania
+     * @param result    obliczony obraz
+     */
+    private void publish(long requested, Image result) {
+        if (requested != generation) {
+            return;
+        }
+
+        imageView.setImage(result);
+        rendering.set(false);
+    }
+
+    /**
+     * Wyświetla błąd obliczania podglądu, jeśli w międzyczasie nie pojawiło się
+     * nowsze żądanie.
+     *
+     * @param requested numer żądania
+     * @param exception błąd
+     */
+    private void fail(long requested, Exception exception) {
+        if (requested != generation) {
+            return;
+        }
+
+        rendering.set(false);
+        ErrorHandler.handleError(exception);
+    }
+
+    /**
+     * @return podgląd razem ze wskaźnikiem postępu
+     */
+    public StackPane getPane() {
+        return pane;
+    }
+
+    /**
+     * @return wartość mówiąca, czy obliczany jest podgląd lub wykonywana jest
+     * operacja na obrazie w pełnej rozdzielczości
+     */
+    public BooleanBinding pendingProperty() {
+        return pending;
+    }
+}
@@ -12,15 +12,13 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.LinearFilterOperation;
+import pl.betweenthelines.pikasso.engine.Operation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
-import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
-import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask3x3;
 
 import static javafx.geometry.Orientation.VERTICAL;
@@ -38,14 +36,23 @@ public class PrewittFilterWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     private Stage stage;
     private VBox vBox;
     private HBox hBox;
 
     private Image before;
-    private Image after;
     private double times;
 
+    /**
+     * Czy powtórzenia operacji mają zostać zastąpione jedną filtracją maską złożoną.
+     */
+    private boolean composed;
+
     private Mask3x3 currentMask;
     private int currentBorderType;
     private Scalar border;
@@ -67,11 +74,11 @@ public class PrewittFilterWindow {
         times = 1;
 
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -81,10 +88,11 @@ public class PrewittFilterWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         Slider timesSlider = new Slider(1, 20, 1);
         timesSlider.setPrefWidth(120);
@@ -100,7 +108,7 @@ public class PrewittFilterWindow {
         buttonsHbox.setAlignment(Pos.CENTER);
         HBox timesSliderHBox = new HBox(timesSlider, timesValue);
         timesSliderHBox.setAlignment(Pos.CENTER_RIGHT);
-        VBox buttonsTimesVbox = new VBox(timesSliderHBox, buttonsHbox);
+        VBox buttonsTimesVbox = new VBox(timesSliderHBox, createComposedCheckBox(), buttonsHbox);
         buttonsTimesVbox.setAlignment(Pos.CENTER_RIGHT);
         buttonsTimesVbox.setSpacing(15);
 
@@ -132,11 +140,13 @@ public class PrewittFilterWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Filtr Sobela");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -232,19 +242,13 @@ public class PrewittFilterWindow {
         reloadPreview();
     }
 
-    private void createAfterImageView() {
-        after = applyMask();
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> {
-            try {
-                new HistogramWindow(afterImageView);
-            } catch (Exception e) {
-                ErrorHandler.handleError(e);
-            }
-        });
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation()));
     }
 
     private RadioButton createMaskRadioButton(ToggleGroup options, String text, Mask3x3 mask) {
@@ -270,25 +274,26 @@ public class PrewittFilterWindow {
     }
 
     private void reloadPreview() {
-        after = applyMask();
-        afterImageView.setImage(after);
+        preview.render(createOperation());
     }
 
-    private Image applyMask() {
-        Mat image = ImageUtils.imageToMat(before);
-        applyMask(image);
-
-        return ImageUtils.mat2Image(image);
+    /**
+     * Tworzy CheckBox do zastąpienia powtórzeń operacji jedną filtracją maską złożoną.
+     *
+     * @return <tt>CheckBox</tt> włączający filtrację jedną maską złożoną
+     */
+    private CheckBox createComposedCheckBox() {
+        CheckBox composedCheckBox = new CheckBox("Jedna maska złożona");
+        composedCheckBox.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            composed = newValue;
+            reloadPreview();
+        });
+        return composedCheckBox;
     }
 
-    private void applyMask(Mat image) {
-        Imgproc.cvtColor(image, image, Imgproc.COLOR_RGB2GRAY);
-
-        for (int i = 0; i < times; i++) {
-            FilteringUtils.applyMaskWithBlur(image, currentMask, currentBorderType, border);
-        }
-
-        MatScalingUtils.scale(image, currentScalingMethod);
+    private Operation createOperation() {
+        return new LinearFilterOperation(new LinearFilterOperation.Parameters(
+                currentMask, null, true, true, currentBorderType, border, (int) times, currentScalingMethod, false, composed), true);
     }
 
 }
@@ -14,14 +14,12 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.controlsfx.control.RangeSlider;
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.CannyOperation;
+import pl.betweenthelines.pikasso.engine.Operation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
-import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 
 import static javafx.geometry.Orientation.VERTICAL;
 import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.*;
@@ -37,12 +35,16 @@ public class RobertsFilterWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     private Stage stage;
     private VBox vBox;
     private HBox hBox;
 
     private Image before;
-    private Image after;
     private double times;
     RangeSlider rangeSlider;
 
@@ -71,11 +73,11 @@ public class RobertsFilterWindow {
         times = 1;
 
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -85,10 +87,11 @@ public class RobertsFilterWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         Slider timesSlider = new Slider(1, 20, 1);
         timesSlider.setPrefWidth(120);
@@ -137,11 +140,13 @@ public class RobertsFilterWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Filtr Robertsa");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -211,19 +216,13 @@ public class RobertsFilterWindow {
         return new VBox(borderTypeLabel, method3, method1, method2);
     }
 
-    private void createAfterImageView() {
-        after = applyMask();
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> {
-            try {
-                new HistogramWindow(afterImageView);
-            } catch (Exception e) {
-                ErrorHandler.handleError(e);
-            }
-        });
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation()));
     }
 
     private RadioButton createMaskRadioButton(ToggleGroup options, String text, byte mask) {
@@ -249,34 +248,14 @@ public class RobertsFilterWindow {
     }
 
     private void reloadPreview() {
-        after = applyMask();
-        afterImageView.setImage(after);
-    }
-
-    private Image applyMask() {
-        Mat image = ImageUtils.imageToMat(before);
-        applyMask(image);
-
-        return ImageUtils.mat2Image(image);
-    }
-
-    private void applyMask(Mat image) {
-        Imgproc.cvtColor(image, image, Imgproc.COLOR_RGB2GRAY);
-
-        for (int i = 0; i < times; i++) {
-            apply(image);
-        }
-
-        MatScalingUtils.scale(image, currentScalingMethod);
+        preview.render(createOperation());
     }
 
-    public void apply(Mat image) {
-        Imgproc.GaussianBlur(image, image, new Size(3, 3), 0);
-
+    private Operation createOperation() {
         int low = (int) rangeSlider.getLowValue();
         int high = (int) rangeSlider.getHighValue();
-
-        Imgproc.Canny(image, image, low, high, 3, l2Gradient);
+        return new CannyOperation(new CannyOperation.Parameters(
+                low, high, l2Gradient, (int) times, currentScalingMethod));
     }
 
 }
@@ -12,18 +12,17 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.Operation;
+import pl.betweenthelines.pikasso.engine.SobelOperation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
-import pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 
 import static javafx.geometry.Orientation.VERTICAL;
-import static org.opencv.core.Core.*;
+import static pl.betweenthelines.pikasso.engine.SobelOperation.SCHARR_KERNEL_SIZE;
+import static pl.betweenthelines.pikasso.engine.SobelOperation.SOBEL_KERNEL_SIZE;
 import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.*;
 
 public class SobelFilterWindow {
@@ -40,12 +39,16 @@ public class SobelFilterWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     private Stage stage;
     private VBox vBox;
     private HBox hBox;
 
     private Image before;
-    private Image after;
     private double times;
 
     private byte currentMask;
@@ -76,11 +79,11 @@ public class SobelFilterWindow {
         times = 1;
 
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -90,10 +93,11 @@ public class SobelFilterWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         Slider timesSlider = new Slider(1, 20, 1);
         timesSlider.setPrefWidth(120);
@@ -141,11 +145,13 @@ public class SobelFilterWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Filtr Sobela");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -242,19 +248,13 @@ public class SobelFilterWindow {
         }
     }
 
-    private void createAfterImageView() {
-        after = applyMask();
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> {
-            try {
-                new HistogramWindow(afterImageView);
-            } catch (Exception e) {
-                ErrorHandler.handleError(e);
-            }
-        });
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation()));
     }
 
     private RadioButton createMaskRadioButton(ToggleGroup options, String text, byte mask) {
@@ -280,31 +280,11 @@ public class SobelFilterWindow {
     }
 
     private void reloadPreview() {
-        after = applyMask();
-        afterImageView.setImage(after);
-    }
-
-    private Image applyMask() {
-        Mat image = ImageUtils.imageToMat(before);
-        applyMask(image);
-
-        return ImageUtils.mat2Image(image);
+        preview.render(createOperation());
     }
 
-    private void applyMask(Mat image) {
-        Imgproc.cvtColor(image, image, Imgproc.COLOR_RGB2GRAY);
-
-        for (int i = 0; i < times; i++) {
-            apply(image);
-        }
-
-        MatScalingUtils.scale(image, currentScalingMethod);
-    }
-
-    public void apply(Mat image) {
-        Imgproc.GaussianBlur(image, image, new Size(3, 3), 0);
-
-        int kernelSize = scharrFilter && currentMask != SOBEL_XY ? -1 : 3;
+    private Operation createOperation() {
+        int kernelSize = scharrFilter && currentMask != SOBEL_XY ? SCHARR_KERNEL_SIZE : SOBEL_KERNEL_SIZE;
         int dx = 0;
         int dy = 0;
         switch (currentMask) {
@@ -319,11 +299,8 @@ public class SobelFilterWindow {
                 dy = 1;
         }
 
-        Imgproc.Sobel(image, image, -1, dx, dy, kernelSize, 1, 0, currentBorderType);
-        if (border != null) {
-            Mat submat = image.submat(1, image.height() - 1, 1, image.width() - 1);
-            copyMakeBorder(submat, image, 1, 1, 1, 1, BORDER_ISOLATED, border);
-        }
+        return new SobelOperation(new SobelOperation.Parameters(
+                dx, dy, kernelSize, currentBorderType, border, (int) times, currentScalingMethod));
     }
 
 }
@@ -14,13 +14,13 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.LinearFilterOperation;
+import pl.betweenthelines.pikasso.engine.Operation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask3x3;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask5x5;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.MaskUtils;
@@ -58,6 +58,11 @@ public class CombineMasksWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -65,16 +70,20 @@ public class CombineMasksWindow {
     private HBox hBox;
 
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     private Image before;
-    private Image after;
 
     /**
      * Wartość zwielokrotnienia operacji.
      */
     private double times;
 
+    /**
+     * Czy powtórzenia operacji mają zostać zastąpione jedną filtracją maską złożoną.
+     */
+    private boolean composed;
+
     /**
      * Pola do wpisania wartości w maskach.
      */
@@ -149,11 +158,11 @@ public class CombineMasksWindow {
         createMaskHBox.setPrefWidth(200);
 
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -163,10 +172,11 @@ public class CombineMasksWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         Slider timesSlider = new Slider(1, 20, 1);
         timesSlider.setPrefWidth(120);
@@ -183,7 +193,7 @@ public class CombineMasksWindow {
         HBox timesSliderHBox = new HBox(timesSlider, timesValue);
         timesSliderHBox.setAlignment(Pos.CENTER_RIGHT);
 
-        VBox buttonsTimesVbox = new VBox(timesSliderHBox, buttonsHbox);
+        VBox buttonsTimesVbox = new VBox(timesSliderHBox, createComposedCheckBox(), buttonsHbox);
         buttonsTimesVbox.setAlignment(Pos.CENTER_RIGHT);
         buttonsTimesVbox.setSpacing(15);
 
@@ -220,11 +230,13 @@ public class CombineMasksWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Własna maska");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -448,20 +460,16 @@ public class CombineMasksWindow {
 
     /**
      * Tworzy podgląd obrazu po operacji.
+     *
+     * @param openedFileData dane o otwartym pliku
      */
-    private void createAfterImageView() {
-        after = applyMask();
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> {
-            try {
-                new HistogramWindow(afterImageView);
-            } catch (Exception e) {
-                ErrorHandler.handleError(e);
-            }
-        });
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation()));
     }
 
     /**
@@ -485,74 +493,50 @@ public class CombineMasksWindow {
      * Przeprowadza operację i odświeża podgląd.
      */
     private void reloadPreview() {
-        after = applyMask();
-        afterImageView.setImage(after);
-    }
-
-    /**
-     * Zamienia obraz na obiekt Mat i przeprowadza wybraną przez użytkownika operację
-     * (filtrację maską wynikową 5x5 lub dwiema maskami 3x3 po kolei), po czym zwraca
-     * obiekt Image z wynikowym obrazem.
-     *
-     * @return wynikowy obraz
-     */
-    private Image applyMask() {
-        if (currentMaskA == null || currentMaskB == null) {
-            return before;
-        }
-        Mat image = ImageUtils.imageToMat(before);
-
-        if (twoMasksPreview) {
-            applyMasks(image);
-        } else {
-            applyCombinedMask(image);
-        }
-
-
-        return ImageUtils.mat2Image(image);
+        preview.render(createOperation());
     }
 
     /**
-     * Przeprowadza dwie fitracje: najpierw maską A, następnie maską B.
-     * Jeśli suma wartości którejś z masek wynosi 0, obraz przed operacjami
-     * jest zamieniany na szaroodcieniowy.
-     * Na koniec przeprowadzane jest skalowanie wybraną przez użytkownika metodą.
+     * Tworzy CheckBox do zastąpienia powtórzeń operacji jedną filtracją maską złożoną.
      *
-     * @param image obiekt Mat z obrazem
+     * @return <tt>CheckBox</tt> włączający filtrację jedną maską złożoną
      */
-    private void applyMasks(Mat image) {
-        if (currentMaskA.getKernelSize() == 0 ||
-                currentMaskB.getKernelSize() == 0 ||
-                currentScalingMethod != METHOD_3) {
-            Imgproc.cvtColor(image, image, Imgproc.COLOR_RGB2GRAY);
-        }
-
-        for (int i = 0; i < times; i++) {
-            FilteringUtils.applyMasks(image, currentMaskA, currentMaskB, currentBorderType, border);
-        }
-
-        MatScalingUtils.scale(image, currentScalingMethod);
+    private CheckBox createComposedCheckBox() {
+        CheckBox composedCheckBox = new CheckBox("Jedna maska złożona");
+        composedCheckBox.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            composed = newValue;
+            reloadPreview();
+        });
+        return composedCheckBox;
     }
 
-
     /**
-     * Przeprowadza fitrację maską wynikową powstałą z połączenia dwóch masek.
-     * Jeśli suma wartości którejś maski wynikowej wynosi 0, obraz przed operacjami
-     * jest zamieniany na szaroodcieniowy.
+     * Przeprowadza wybraną przez użytkownika operację (filtrację maską wynikową 5x5
+     * lub dwiema maskami 3x3 po kolei) i zwraca obiekt Image z wynikowym obrazem.
+     * Jeśli suma wartości którejś z masek wynosi 0 lub wybrano inną metodę skalowania
+     * niż odcinająca, obraz przed operacjami jest zamieniany na szaroodcieniowy.
      * Na koniec przeprowadzane jest skalowanie wybraną przez użytkownika metodą.
      *
-     * @param image obiekt Mat z obrazem
+     * @return operacja
      */
-    private void applyCombinedMask(Mat image) {
-        if (combinedMask.getKernelSize() == 0 || currentScalingMethod != METHOD_3) {
-            Imgproc.cvtColor(image, image, Imgproc.COLOR_RGB2GRAY);
+    private Operation createOperation() {
+        if (currentMaskA == null || currentMaskB == null) {
+            return null;
         }
 
-        for (int i = 0; i < times; i++) {
-            FilteringUtils.applyMask(image, combinedMask, currentBorderType, border);
+        LinearFilterOperation.Parameters parameters;
+        if (twoMasksPreview) {
+            boolean grayscale = currentMaskA.getKernelSize() == 0 || currentMaskB.getKernelSize() == 0
+                    || currentScalingMethod != METHOD_3;
+            parameters = new LinearFilterOperation.Parameters(currentMaskA, currentMaskB, grayscale, false,
+                    currentBorderType, border, (int) times, currentScalingMethod, false, composed);
+        } else {
+            boolean grayscale = combinedMask.getKernelSize() == 0 || currentScalingMethod != METHOD_3;
+            parameters = new LinearFilterOperation.Parameters(combinedMask, null, grayscale, false,
+                    currentBorderType, border, (int) times, currentScalingMethod, false, composed);
         }
 
-        MatScalingUtils.scale(image, currentScalingMethod);
+        return new LinearFilterOperation(parameters, true);
     }
 
 }
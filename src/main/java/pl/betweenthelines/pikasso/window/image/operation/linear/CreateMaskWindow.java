@@ -11,22 +11,27 @@ import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.LinearFilterOperation;
+import pl.betweenthelines.pikasso.engine.Operation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask3x3;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.MaskUtils;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
 import static javafx.geometry.Orientation.VERTICAL;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.DO_NOTHING;
 
 /**
  * Klasa reprezentująca okno wyostrzania obrazu.
@@ -55,6 +60,11 @@ public class CreateMaskWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -63,10 +73,9 @@ public class CreateMaskWindow {
     private HBox hBox;
 
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     private Image before;
-    private Image after;
 
     /**
      * Wartość zwielokrotnienia operacji.
@@ -74,9 +83,9 @@ public class CreateMaskWindow {
     private double times;
 
     /**
-     * Aktualnie wybrana przez użytkownika maska.
+     * Aktualnie wybrana przez użytkownika maska (3x3 z pól lub dowolnej wielkości z pliku).
      */
-    private Mask3x3 currentMask;
+    private Mask currentMask;
 
     /**
      * Aktualnie wybrana przez użytkownika operacja na pikselach brzegowych.
@@ -118,11 +127,11 @@ public class CreateMaskWindow {
         times = 1;
 
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -132,10 +141,11 @@ public class CreateMaskWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(currentMask), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         Slider timesSlider = new Slider(1, 20, 1);
         timesSlider.setPrefWidth(120);
@@ -151,7 +161,7 @@ public class CreateMaskWindow {
         buttonsHbox.setAlignment(Pos.CENTER);
         HBox timesSliderHBox = new HBox(timesSlider, timesValue);
         timesSliderHBox.setAlignment(Pos.CENTER_RIGHT);
-        VBox buttonsTimesVbox = new VBox(timesSliderHBox, buttonsHbox);
+        VBox buttonsTimesVbox = new VBox(timesSliderHBox, createLoadMaskButton(), buttonsHbox);
         buttonsTimesVbox.setAlignment(Pos.CENTER_RIGHT);
         buttonsTimesVbox.setSpacing(15);
         VBox borderVBox = createBorderOptions();
@@ -168,11 +178,13 @@ public class CreateMaskWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Własna maska");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -229,6 +241,35 @@ public class CreateMaskWindow {
         changeCurrentMask(spinnerValues);
     }
 
+    /**
+     * Tworzy przycisk wczytujący maskę dowolnej nieparzystej wielkości (np. 31x31)
+     * z pliku tekstowego (zob. {@link MaskUtils#readMask(java.nio.file.Path)}).
+     * Zmiana wartości w polach maski z powrotem wybiera maskę 3x3.
+     *
+     * @return przycisk wczytania maski
+     */
+    private Button createLoadMaskButton() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Wczytaj maskę");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Maska (tekst)", "*.txt", "*.csv"));
+
+        Button loadMask = new Button("Wczytaj maskę z pliku");
+        loadMask.setOnAction(event -> {
+            File file = fileChooser.showOpenDialog(stage);
+            if (file == null) {
+                return;
+            }
+
+            try {
+                currentMask = MaskUtils.readMask(file.toPath());
+                reloadPreview();
+            } catch (Exception e) {
+                ErrorHandler.showAlert(e, "Błąd podczas wczytywania maski.");
+            }
+        });
+        return loadMask;
+    }
+
     /**
      * Tworzy obszar z opcjami dotyczącymi pikseli brzegowych.
      *
@@ -299,20 +340,16 @@ public class CreateMaskWindow {
 
     /**
      * Tworzy podgląd obrazu po operacji.
+     *
+     * @param openedFileData dane o otwartym pliku
      */
-    private void createAfterImageView() {
-        after = applyMask(currentMask);
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> {
-            try {
-                new HistogramWindow(afterImageView);
-            } catch (Exception e) {
-                ErrorHandler.handleError(e);
-            }
-        });
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation(currentMask)));
     }
 
     /**
@@ -336,46 +373,24 @@ public class CreateMaskWindow {
      * Stosuje wybraną maskę i odświeża podgląd.
      */
     private void reloadPreview() {
-        after = applyMask(currentMask);
-        afterImageView.setImage(after);
+        preview.render(createOperation(currentMask));
     }
 
     /**
      * Przeprowadza operację filtrowania utworzoną maską. Jeśli suma wartości w masce
-     * jest równa 0, maska zostaje przekonwertowana na skalę szarości.
+     * jest różna od 1, obraz zostaje przekonwertowany na skalę szarości.
      *
      * @param mask maska do operacji
-     * @return obraz wynikowy.
+     * @return operacja
      */
-    private Image applyMask(Mask3x3 mask) {
+    private Operation createOperation(Mask mask) {
         if (mask == null) {
-            return before;
-        }
-        Mat image = ImageUtils.imageToMat(before);
-
-        if (mask.getKernelSize() == 1) {
-            applyMask(mask, image);
-        } else {
-            applyMaskWithColorConversion(mask, image);
-        }
-
-        return ImageUtils.mat2Image(image);
-    }
-
-    private void applyMask(Mask3x3 mask, Mat image) {
-        for (int i = 0; i < times; i++) {
-            FilteringUtils.applyMask(image, mask, currentBorderType, border);
-        }
-    }
-
-    private void applyMaskWithColorConversion(Mask3x3 mask, Mat image) {
-        Imgproc.cvtColor(image, image, Imgproc.COLOR_RGB2GRAY);
-
-        for (int i = 0; i < times; i++) {
-            FilteringUtils.applyMask(image, mask, currentBorderType, border);
+            return null;
         }
 
-        Core.convertScaleAbs(image, image);
+        boolean grayscale = mask.getKernelSize() != 1;
+        return new LinearFilterOperation(new LinearFilterOperation.Parameters(
+                mask, null, grayscale, false, currentBorderType, border, (int) times, DO_NOTHING, grayscale, false), true);
     }
 
 }
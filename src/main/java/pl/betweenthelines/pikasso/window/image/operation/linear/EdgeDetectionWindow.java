@@ -12,13 +12,13 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.LinearFilterOperation;
+import pl.betweenthelines.pikasso.engine.Operation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask3x3;
 
 import java.util.Arrays;
@@ -55,6 +55,11 @@ public class EdgeDetectionWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -62,10 +67,9 @@ public class EdgeDetectionWindow {
     private VBox vBox;
     private HBox hBox;
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     private Image before;
-    private Image after;
 
     /**
      * Wartość zwielokrotnienia operacji.
@@ -120,11 +124,11 @@ public class EdgeDetectionWindow {
         times = 1;
 
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -134,10 +138,11 @@ public class EdgeDetectionWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(currentMask), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         Slider timesSlider = new Slider(1, 20, 1);
         timesSlider.setPrefWidth(120);
@@ -177,11 +182,13 @@ public class EdgeDetectionWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Detekcja krawędzi");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -331,20 +338,16 @@ public class EdgeDetectionWindow {
 
     /**
      * Tworzy podgląd obrazu po operacji.
+     *
+     * @param openedFileData dane o otwartym pliku
      */
-    private void createAfterImageView() {
-        after = applyMask(EDGE_DETECTION_1);
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> {
-            try {
-                new HistogramWindow(afterImageView);
-            } catch (Exception e) {
-                ErrorHandler.handleError(e);
-            }
-        });
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation(currentMask)));
     }
 
     /**
@@ -383,57 +386,22 @@ public class EdgeDetectionWindow {
      * Stosuje wybraną maskę i odświeża podgląd.
      */
     private void reloadPreview() {
-        after = applyMask(currentMask);
-        afterImageView.setImage(after);
+        preview.render(createOperation(currentMask));
     }
 
     /**
      * Przeprowadza operację filtrowania wybraną maską. Jeśli suma wartości w masce
-     * jest równa 0, maska zostaje przekonwertowana na skalę szarości.
-     * Po operacji przeprowadzane jest skalowanie zgodnie z opcją wybraną przez
-     * użytkownika.
+     * jest różna od 1 lub wybrano inną metodę skalowania niż trzecia, obraz zostaje
+     * przekonwertowany na skalę szarości. Po operacji przeprowadzane jest skalowanie
+     * zgodnie z opcją wybraną przez użytkownika.
      *
      * @param mask maska do operacji
-     * @return obraz wynikowy.
-     */
-    private Image applyMask(Mask3x3 mask) {
-        Mat image = ImageUtils.imageToMat(before);
-
-        if (mask.getKernelSize() == 1 && currentScalingMethod == METHOD_3) {
-            applyMask(mask, image);
-        } else {
-            applyMaskWithColorConversion(mask, image);
-        }
-
-        MatScalingUtils.scale(image, currentScalingMethod);
-        return ImageUtils.mat2Image(image);
-    }
-
-    /**
-     * Przeprowadza operację filtrowania wybraną maską na podanym obiekcie Mat.
-     *
-     * @param mask  maska do operacji
-     * @param image obiekt Mat z obrazem
-     */
-    private void applyMask(Mask3x3 mask, Mat image) {
-        for (int i = 0; i < times; i++) {
-            FilteringUtils.applyMaskWithBlur(image, mask, currentBorderType, border);
-        }
-    }
-
-    /**
-     * Konwertuje obraz na szaroodcieniowy i przeprowadza operację filtrowania
-     * wybraną maską na podanym obiekcie Mat.
-     *
-     * @param mask  maska do operacji
-     * @param image obiekt Mat z obrazem
+     * @return operacja
      */
-    private void applyMaskWithColorConversion(Mask3x3 mask, Mat image) {
-        Imgproc.cvtColor(image, image, Imgproc.COLOR_RGB2GRAY);
-
-        for (int i = 0; i < times; i++) {
-            FilteringUtils.applyMaskWithBlur(image, mask, currentBorderType, border);
-        }
+    private Operation createOperation(Mask3x3 mask) {
+        boolean grayscale = mask.getKernelSize() != 1 || currentScalingMethod != METHOD_3;
+        return new LinearFilterOperation(new LinearFilterOperation.Parameters(
+                mask, null, grayscale, true, currentBorderType, border, (int) times, currentScalingMethod, false, false), true);
     }
 
 }
@@ -1,22 +1,40 @@
 package pl.betweenthelines.pikasso.window.image.operation.linear;
 
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.MatScope;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask3x3;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.SeparableKernel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.opencv.core.Core.BORDER_ISOLATED;
 import static org.opencv.core.Core.copyMakeBorder;
 import static org.opencv.core.CvType.CV_32F;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.DO_NOTHING;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.METHOD_1;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.METHOD_2;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.METHOD_3;
 
 /**
  * Klasa pomocnicza zawierająca metody do przeprowadzania filtrowania 2D.
  */
 public class FilteringUtils {
 
+    /**
+     * Rozmiar boku kafelka przy filtracji kafelkami.
+     */
+    public static final int TILE_SIZE = 512;
+
     /**
      * Przeprowadza filtrację podaną maską ze wstępny rozmyciem gaussowskim.
      *
@@ -26,22 +44,47 @@ public class FilteringUtils {
      * @param border     wartość pikseli brzegowych (jeżeli stała)
      */
     public static void applyMaskWithBlur(Mat image, Mask3x3 mask, int borderType, Scalar border) {
-        Imgproc.GaussianBlur(image, image, new Size(3, 3), 0);
+        blur(image);
 
         applyMask(image, mask, borderType, border);
     }
 
+    /**
+     * Przeprowadza rozmycie gaussowskie maską 3x3 (wykonywane przed filtracją
+     * wyostrzającą i wykrywającą krawędzie).
+     *
+     * @param image obraz (modyfikowany w miejscu)
+     */
+    public static void blur(Mat image) {
+        Imgproc.GaussianBlur(image, image, new Size(3, 3), 0);
+    }
+
     /**
      * Przeprowadza filtrację podaną maską.
      *
      * @param image      obraz wejściowy
-     * @param mask       maska filtrowania (3x3 lub 5x5)
+     * @param mask       maska filtrowania (3x3, 5x5 lub maska złożona)
      * @param borderType metoda operacji na pikselach brzegowych
      * @param border     wartość pikseli brzegowych (jeżeli stała)
      */
     public static void applyMask(Mat image, Mask mask, int borderType, Scalar border) {
-        Imgproc.filter2D(image, image, CV_32F, mask.getMat(), new Point(-1, -1), 0, borderType);
-        handleBorder(image, border);
+        applyMask(image, image, mask, borderType, border);
+    }
+
+    /**
+     * Przeprowadza filtrację podaną maską, zapisując wynik (CV_32F) do obrazu docelowego.
+     * Obraz docelowy o odpowiednim rozmiarze i typie (np. pobrany z puli) nie jest
+     * tworzony na nowo.
+     *
+     * @param source      obraz wejściowy
+     * @param destination obraz docelowy
+     * @param mask        maska filtrowania (3x3, 5x5 lub maska złożona)
+     * @param borderType  metoda operacji na pikselach brzegowych
+     * @param border      wartość pikseli brzegowych (jeżeli stała)
+     */
+    public static void applyMask(Mat source, Mat destination, Mask mask, int borderType, Scalar border) {
+        filter(source, destination, mask, borderType);
+        handleBorder(destination, border);
     }
 
     /**
@@ -53,10 +96,265 @@ public class FilteringUtils {
      * @param borderType metoda operacji na pikselach brzegowych
      * @param border     wartość pikseli brzegowych (jeżeli stała)
      */
-    public static void applyMasks(Mat image, Mask3x3 mask1, Mask3x3 mask2, int borderType, Scalar border) {
-        Imgproc.filter2D(image, image, CV_32F, mask1.getMat(), new Point(-1, -1), 0, borderType);
-        Imgproc.filter2D(image, image, CV_32F, mask2.getMat(), new Point(-1, -1), 0, borderType);
-        handleBorder(image, border);
+    public static void applyMasks(Mat image, Mask mask1, Mask mask2, int borderType, Scalar border) {
+        applyMasks(image, image, image, mask1, mask2, borderType, border);
+    }
+
+    /**
+     * Przeprowadza dwie filtrację - najpierw maską 1 (do obrazu pośredniego),
+     * później maską 2 (do obrazu docelowego).
+     *
+     * @param source       obraz wejściowy
+     * @param intermediate obraz pośredni (CV_32F)
+     * @param destination  obraz docelowy (CV_32F)
+     * @param mask1        maska filtrowania 1
+     * @param mask2        maska filtrowania 2
+     * @param borderType   metoda operacji na pikselach brzegowych
+     * @param border       wartość pikseli brzegowych (jeżeli stała)
+     */
+    public static void applyMasks(Mat source, Mat intermediate, Mat destination, Mask mask1, Mask mask2,
+                                  int borderType, Scalar border) {
+        filter(source, intermediate, mask1, borderType);
+        filter(intermediate, destination, mask2, borderType);
+        handleBorder(destination, border);
+    }
+
+    /**
+     * Filtruje obraz maską, zapisując wynik jako CV_32F. Obraz 8-bitowy filtrowany maską
+     * rozdzielną ({@link Mask#getSeparableKernel()}) jest filtrowany dwiema maskami
+     * jednowymiarowymi (<tt>sepFilter2D</tt>) - wynik jest wtedy dokładnie taki sam,
+     * a liczba mnożeń na piksel spada z <tt>n*n</tt> do <tt>2n</tt>. Dla dużych masek,
+     * dla których jest to szybsze, filtracja jest wykonywana przez DFT
+     * ({@link FrequencyFilteringUtils}).
+     *
+     * @param source      obraz wejściowy
+     * @param destination obraz docelowy (CV_32F)
+     * @param mask        maska filtrowania
+     * @param borderType  metoda operacji na pikselach brzegowych
+     */
+    private static void filter(Mat source, Mat destination, Mask mask, int borderType) {
+        SeparableKernel separableKernel = mask.getSeparableKernel();
+        boolean separable = separableKernel != null && source.depth() == CvType.CV_8U;
+        if (FrequencyFilteringUtils.isCheaperThanSpatial(source.rows(), source.cols(), mask, separable)) {
+            FrequencyFilteringUtils.filter(source, destination, mask, borderType);
+        } else if (separable) {
+            Imgproc.sepFilter2D(source, destination, CV_32F, separableKernel.getRowKernel(),
+                    separableKernel.getColumnKernel(), new Point(-1, -1), 0, borderType);
+        } else {
+            Imgproc.filter2D(source, destination, CV_32F, mask.getMat(), new Point(-1, -1), 0, borderType);
+        }
+    }
+
+    /**
+     * Przeprowadza filtrację podaną maską kafelkami, zapisując wynik od razu do obrazu
+     * 8-bitowego - przeskalowany podaną metodą (i zamieniony na wartości bezwzględne,
+     * jeśli trzeba). Wynik jest taki sam jak przy filtracji całego obrazu metodą
+     * {@link #applyMask(Mat, Mat, Mask, int, Scalar)}, skalowaniu i konwersji do 8 bitów.
+     * <p>
+     * Kafelki mają rozmiar {@value #TILE_SIZE} x {@value #TILE_SIZE} i są filtrowane
+     * równolegle. Każdy kafelek jest widokiem obrazu wejściowego, więc OpenCV odczytuje
+     * otoczenie kafelka (o szerokości promienia maski) z sąsiednich kafelków,
+     * a metodę operacji na pikselach brzegowych stosuje tylko na brzegach całego obrazu.
+     * Obraz CV_32F istnieje tylko dla przetwarzanych kafelków, więc zajęta pamięć nie
+     * zależy od rozmiaru obrazu. Metoda równomierna wymaga wartości skrajnych całego
+     * obrazu, dlatego kafelki są wtedy filtrowane dwukrotnie.
+     * <p>
+     * Filtracja kafelka jest łączona ze skalowaniem - bez skalowania i przy metodzie
+     * obcinającej filtr zapisuje wynik od razu jako 8-bitowy.
+     *
+     * @param image         obraz wejściowy
+     * @param destination   obraz docelowy (8-bitowy, o rozmiarze i liczbie kanałów obrazu wejściowego)
+     * @param mask          maska filtrowania (3x3, 5x5 lub maska złożona)
+     * @param borderType    metoda operacji na pikselach brzegowych (bez <tt>BORDER_ISOLATED</tt>)
+     * @param border        wartość pikseli brzegowych (jeżeli stała)
+     * @param scalingMethod metoda skalowania wyniku (z <tt>MatScalingUtils</tt>)
+     * @param absolute      czy wynik ma zostać zamieniony na wartości bezwzględne
+     */
+    public static void applyMaskTiled(Mat image, Mat destination, Mask mask, int borderType, Scalar border,
+                                      byte scalingMethod, boolean absolute) {
+        applyMaskTiled(image, destination, mask, borderType, border, scalingMethod, absolute, TILE_SIZE);
+    }
+
+    /**
+     * Przeprowadza filtrację podaną maską kafelkami o podanym rozmiarze.
+     *
+     * @param image         obraz wejściowy
+     * @param destination   obraz docelowy (8-bitowy)
+     * @param mask          maska filtrowania
+     * @param borderType    metoda operacji na pikselach brzegowych
+     * @param border        wartość pikseli brzegowych (jeżeli stała)
+     * @param scalingMethod metoda skalowania wyniku
+     * @param absolute      czy wynik ma zostać zamieniony na wartości bezwzględne
+     * @param tileSize      rozmiar boku kafelka
+     * @see #applyMaskTiled(Mat, Mat, Mask, int, Scalar, byte, boolean)
+     */
+    static void applyMaskTiled(Mat image, Mat destination, Mask mask, int borderType, Scalar border,
+                               byte scalingMethod, boolean absolute, int tileSize) {
+        if ((borderType & BORDER_ISOLATED) != 0) {
+            throw new IllegalArgumentException("Tiled filtering does not support BORDER_ISOLATED");
+        }
+
+        List<Rect> tiles = createTiles(image.rows(), image.cols(), tileSize);
+
+        double[][] extremes = null;
+        if (scalingMethod == METHOD_1) {
+            double[][][] tileExtremes = new double[tiles.size()][][];
+            forEachTile(tiles, (index, tile, scope) -> tileExtremes[index] = MatScalingUtils.findMaxAndMin(
+                    filterTile(scope, image, tile, mask, borderType, border, absolute)));
+
+            extremes = tileExtremes[0];
+            for (int i = 1; i < tileExtremes.length; i++) {
+                MatScalingUtils.mergeMaxAndMin(extremes, tileExtremes[i]);
+            }
+        }
+
+        double[][] imageExtremes = extremes;
+        forEachTile(tiles, (index, tile, scope) -> writeTile(scope, image, tile, scope.track(destination.submat(tile)),
+                mask, borderType, border, scalingMethod, absolute, imageExtremes));
+    }
+
+    /**
+     * Filtruje jeden kafelek obrazu i zapisuje go przeskalowanego do obrazu docelowego,
+     * łącząc filtrację ze skalowaniem:
+     * <ul>
+     *     <li>bez skalowania i przy metodzie obcinającej (bez wartości bezwzględnych) filtr
+     *     zapisuje wynik od razu jako 8-bitowy - konwersja z nasyceniem obcina wartości
+     *     do zakresu 0-255 tak samo jak ta metoda, więc obraz CV_32F nie powstaje wcale
+     *     (poza maskami rozdzielnymi - rozdzielna filtracja 8-bitowa zaokrągla inaczej -
+     *     i dużymi maskami filtrowanymi przez DFT),</li>
+     *     <li>metoda trójwartościowa jest wykonywana porównaniami OpenCV
+     *     ({@link MatScalingUtils#scaleThreeValued(Mat, Mat)}), bez kopiowania pikseli do Javy,</li>
+     *     <li>metoda równomierna korzysta z wartości skrajnych całego obrazu.</li>
+     * </ul>
+     *
+     * @param scope         zakres obrazów kafelka
+     * @param image         obraz wejściowy
+     * @param tile          kafelek
+     * @param target        fragment obrazu docelowego odpowiadający kafelkowi
+     * @param mask          maska filtrowania
+     * @param borderType    metoda operacji na pikselach brzegowych
+     * @param border        wartość pikseli brzegowych (jeżeli stała)
+     * @param scalingMethod metoda skalowania wyniku
+     * @param absolute      czy wynik ma zostać zamieniony na wartości bezwzględne
+     * @param extremes      wartości skrajne kanałów całego obrazu (dla metody równomiernej)
+     */
+    private static void writeTile(MatScope scope, Mat image, Rect tile, Mat target, Mask mask, int borderType,
+                                  Scalar border, byte scalingMethod, boolean absolute, double[][] extremes) {
+        boolean clipping = scalingMethod == DO_NOTHING || scalingMethod == METHOD_3;
+        if (!absolute && clipping && mask.getSeparableKernel() == null
+                && !FrequencyFilteringUtils.isCheaperThanSpatial(tile.height, tile.width, mask, false)) {
+            Imgproc.filter2D(scope.track(image.submat(tile)), target, CvType.CV_8U, mask.getMat(),
+                    new Point(-1, -1), 0, borderType);
+            fillBorder(scope, image, tile, target, border);
+            return;
+        }
+
+        Mat filtered = filterTile(scope, image, tile, mask, borderType, border, absolute);
+        if (scalingMethod == METHOD_2) {
+            MatScalingUtils.scaleThreeValued(filtered, target);
+        } else {
+            MatScalingUtils.scale(filtered, scalingMethod, extremes);
+            filtered.convertTo(target, CvType.CV_8U);
+        }
+    }
+
+    /**
+     * Filtruje jeden kafelek obrazu i ustawia wartość pikseli brzegowych obrazu
+     * leżących w kafelku (tak jak {@link #handleBorder(Mat, Scalar)} dla całego obrazu).
+     *
+     * @param scope      zakres obrazów kafelka
+     * @param image      obraz wejściowy
+     * @param tile       kafelek
+     * @param mask       maska filtrowania
+     * @param borderType metoda operacji na pikselach brzegowych
+     * @param border     wartość pikseli brzegowych (jeżeli stała)
+     * @param absolute   czy wynik ma zostać zamieniony na wartości bezwzględne
+     * @return kafelek po filtracji (CV_32F lub 8-bitowy dla wartości bezwzględnych)
+     */
+    private static Mat filterTile(MatScope scope, Mat image, Rect tile, Mask mask, int borderType, Scalar border,
+                                  boolean absolute) {
+        Mat filtered = scope.newMat(tile.height, tile.width, CvType.makeType(CV_32F, image.channels()));
+        applyMask(scope.track(image.submat(tile)), filtered, mask, borderType, null);
+        fillBorder(scope, image, tile, filtered, border);
+
+        if (!absolute) {
+            return filtered;
+        }
+
+        Mat converted = scope.newMat(tile.height, tile.width, CvType.makeType(CvType.CV_8U, image.channels()));
+        Core.convertScaleAbs(filtered, converted);
+        return converted;
+    }
+
+    /**
+     * Ustawia wartość pikseli brzegowych obrazu leżących w kafelku.
+     *
+     * @param scope    zakres obrazów kafelka
+     * @param image    obraz wejściowy
+     * @param tile     kafelek
+     * @param filtered kafelek po filtracji
+     * @param border   wartość pikseli brzegowych (lub <tt>null</tt>)
+     */
+    private static void fillBorder(MatScope scope, Mat image, Rect tile, Mat filtered, Scalar border) {
+        if (border == null) {
+            return;
+        }
+
+        if (tile.y == 0) {
+            scope.track(filtered.row(0)).setTo(border);
+        }
+        if (tile.y + tile.height == image.rows()) {
+            scope.track(filtered.row(tile.height - 1)).setTo(border);
+        }
+        if (tile.x == 0) {
+            scope.track(filtered.col(0)).setTo(border);
+        }
+        if (tile.x + tile.width == image.cols()) {
+            scope.track(filtered.col(tile.width - 1)).setTo(border);
+        }
+    }
+
+    /**
+     * Dzieli obraz na kafelki o podanym rozmiarze (ostatnie w wierszu i kolumnie
+     * mogą być mniejsze).
+     *
+     * @param rows     liczba wierszy obrazu
+     * @param cols     liczba kolumn obrazu
+     * @param tileSize rozmiar boku kafelka
+     * @return lista kafelków
+     */
+    private static List<Rect> createTiles(int rows, int cols, int tileSize) {
+        List<Rect> tiles = new ArrayList<>();
+        for (int y = 0; y < rows; y += tileSize) {
+            for (int x = 0; x < cols; x += tileSize) {
+                tiles.add(new Rect(x, y, Math.min(tileSize, cols - x), Math.min(tileSize, rows - y)));
+            }
+        }
+
+        return tiles;
+    }
+
+    /**
+     * Wykonuje podaną operację równolegle dla wszystkich kafelków. Obiekty Mat
+     * utworzone w zakresie kafelka są zwalniane (oddawane do puli) po jego przetworzeniu.
+     *
+     * @param tiles     kafelki
+     * @param operation operacja na kafelku
+     */
+    private static void forEachTile(List<Rect> tiles, TileOperation operation) {
+        IntStream.range(0, tiles.size()).parallel().forEach(index -> {
+            try (MatScope scope = new MatScope()) {
+                operation.apply(index, tiles.get(index), scope);
+            }
+        });
+    }
+
+    /**
+     * Operacja wykonywana na kafelku obrazu.
+     */
+    @FunctionalInterface
+    private interface TileOperation {
+        void apply(int index, Rect tile, MatScope scope);
     }
 
     /**
@@ -67,8 +365,10 @@ public class FilteringUtils {
      */
     public static void handleBorder(Mat image, Scalar border) {
         if (border != null) {
-            Mat submat = image.submat(1, image.height() - 1, 1, image.width() - 1);
-            copyMakeBorder(submat, image, 1, 1, 1, 1, BORDER_ISOLATED, border);
+            try (MatScope scope = new MatScope()) {
+                Mat submat = scope.track(image.submat(1, image.height() - 1, 1, image.width() - 1));
+                copyMakeBorder(submat, image, 1, 1, 1, 1, BORDER_ISOLATED, border);
+            }
         }
     }
 
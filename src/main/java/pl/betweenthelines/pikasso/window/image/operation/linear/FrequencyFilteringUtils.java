@@ -0,0 +1,225 @@
+package pl.betweenthelines.pikasso.window.image.operation.linear;
+
+import lombok.EqualsAndHashCode;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Range;
+import org.opencv.core.Scalar;
+import pl.betweenthelines.pikasso.engine.MatScope;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.opencv.core.CvType.CV_32F;
+
+/**
+ * Klasa pomocnicza do filtrowania 2D w dziedzinie częstotliwości (<tt>Core.dft</tt>).
+ * <p>
+ * Koszt filtracji przestrzennej rośnie z polem maski, a koszt filtracji przez DFT
+ * zależy tylko od rozmiaru obrazu - dla dużych masek (np. 31x31) filtracja przez
+ * DFT jest wielokrotnie szybsza. Wybór metody ({@link #isCheaperThanSpatial(int, int, Mask, boolean)})
+ * opiera się na szacowanej liczbie operacji na piksel.
+ * <p>
+ * Widmo maski zależy tylko od maski i rozmiaru DFT, więc jest przechowywane
+ * w pamięci podręcznej ({@value #DEFAULT_CACHE_MB} MB, parametr JVM
+ * <tt>-Dpikasso.spectrum.cache.mb</tt>) - przy kolejnych odświeżeniach podglądu
+ * liczone są tylko widma obrazu. Po przekroczeniu limitu usuwane są widma używane
+ * najdawniej.
+ * <p>
+ * Metody mogą być wywoływane z dowolnego wątku.
+ */
+public class FrequencyFilteringUtils {
+
+    private static final long DEFAULT_CACHE_MB = 64;
+
+    private static final long BYTES_IN_MB = 1024 * 1024;
+
+    /**
+     * Maksymalny łączny rozmiar widm w pamięci podręcznej (w bajtach).
+     */
+    private static final long MAX_CACHE_BYTES = Long.getLong("pikasso.spectrum.cache.mb", DEFAULT_CACHE_MB) * BYTES_IN_MB;
+
+    /**
+     * Szacowana liczba operacji na element DFT przypadająca na jeden poziom
+     * (<tt>log2</tt> rozmiaru) - dla przekształcenia obrazu, mnożenia widm
+     * i przekształcenia odwrotnego razem.
+     */
+    private static final double DFT_COST = 6;
+
+    /**
+     * Maska i rozmiar DFT, dla których policzono widmo.
+     */
+    @EqualsAndHashCode
+    private static class Key {
+        private final double[] values;
+        private final int kernelSize;
+        private final int size;
+        private final int rows;
+        private final int cols;
+
+        Key(Mask mask, int rows, int cols) {
+            this.values = mask.getValues().clone();
+            this.kernelSize = mask.getKernelSize();
+            this.size = mask.getSize();
+            this.rows = rows;
+            this.cols = cols;
+        }
+    }
+
+    /**
+     * Widma masek (od używanego najdawniej).
+     */
+    private static final Map<Key, Mat> SPECTRA = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Łączny rozmiar widm w pamięci podręcznej (w bajtach).
+     */
+    private static long cachedBytes;
+
+    /**
+     * Sprawdza, czy filtracja przez DFT będzie szybsza od filtracji przestrzennej.
+     * Filtracja przestrzenna wymaga na piksel tylu mnożeń, ile wartości ma maska
+     * (lub dwa razy tyle, ile wynosi jej wielkość, dla maski rozdzielnej), a filtracja
+     * przez DFT - liczby operacji proporcjonalnej do logarytmu rozmiaru DFT.
+     *
+     * @param rows      liczba wierszy obrazu
+     * @param cols      liczba kolumn obrazu
+     * @param mask      maska filtrowania
+     * @param separable czy filtracja przestrzenna zostanie wykonana dwiema maskami jednowymiarowymi
+     * @return czy filtracja przez DFT jest szybsza
+     */
+    public static boolean isCheaperThanSpatial(int rows, int cols, Mask mask, boolean separable) {
+        int size = mask.getSize();
+        double spatialCost = (double) rows * cols * (separable ? 2 * size : size * size);
+
+        double dftRows = Core.getOptimalDFTSize(rows + size - 1);
+        double dftCols = Core.getOptimalDFTSize(cols + size - 1);
+        double dftCost = DFT_COST * dftRows * dftCols * (Math.log(dftRows * dftCols) / Math.log(2));
+
+        return dftCost < spatialCost;
+    }
+
+    /**
+     * Przeprowadza filtrację (korelację) podaną maską przez DFT. Wynik jest taki sam
+     * jak wynik <tt>Imgproc.filter2D</tt> (z dokładnością do błędów zaokrągleń) - także
+     * dla obrazu będącego widokiem <tt>submat</tt>, którego otoczenie jest odczytywane
+     * z obrazu nadrzędnego.
+     *
+     * @param source      obraz wejściowy
+     * @param destination obraz docelowy (CV_32F, o liczbie kanałów obrazu wejściowego)
+     * @param mask        maska filtrowania
+     * @param borderType  metoda operacji na pikselach brzegowych
+     */
+    public static void filter(Mat source, Mat destination, Mask mask, int borderType) {
+        int rows = source.rows();
+        int cols = source.cols();
+        int radius = mask.getSize() / 2;
+        int paddedRows = rows + 2 * radius;
+        int paddedCols = cols + 2 * radius;
+        int dftRows = Core.getOptimalDFTSize(paddedRows);
+        int dftCols = Core.getOptimalDFTSize(paddedCols);
+
+        try (MatScope scope = new MatScope()) {
+            Mat spectrum = scope.track(getSpectrum(mask, dftRows, dftCols));
+
+            Mat bordered = scope.newMat(paddedRows, paddedCols, source.type());
+            Core.copyMakeBorder(source, bordered, radius, radius, radius, radius, borderType);
+
+            Mat padded = scope.newMat(dftRows, dftCols, CvType.makeType(CV_32F, source.channels()));
+            padded.setTo(Scalar.all(0));
+            bordered.convertTo(scope.track(padded.submat(0, paddedRows, 0, paddedCols)), CV_32F);
+
+            List<Mat> channels = new ArrayList<>();
+            Core.split(padded, channels);
+            List<Mat> filtered = new ArrayList<>();
+            for (Mat channel : channels) {
+                scope.track(channel);
+                Mat channelSpectrum = scope.newMat(dftRows, dftCols, CV_32F);
+                Core.dft(channel, channelSpectrum, 0, paddedRows);
+                Core.mulSpectrums(channelSpectrum, spectrum, channelSpectrum, 0, true);
+
+                Mat result = scope.newMat(dftRows, dftCols, CV_32F);
+                Core.idft(channelSpectrum, result, Core.DFT_SCALE | Core.DFT_REAL_OUTPUT, rows);
+                filtered.add(scope.track(result.submat(0, rows, 0, cols)));
+            }
+
+            Core.merge(filtered, destination);
+        }
+    }
+
+    /**
+     * Zwraca widmo maski (umieszczonej w lewym górnym rogu obrazu o rozmiarze DFT)
+     * z pamięci podręcznej lub liczy je i zapisuje w pamięci podręcznej.
+     *
+     * @param mask    maska filtrowania
+     * @param dftRows liczba wierszy DFT
+     * @param dftCols liczba kolumn DFT
+     * @return nowy nagłówek widma - wspólne dane pozostają ważne do zwolnienia
+     * nagłówka, nawet jeśli widmo zostanie w tym czasie usunięte z pamięci podręcznej
+     */
+    private static Mat getSpectrum(Mask mask, int dftRows, int dftCols) {
+        Key key = new Key(mask, dftRows, dftCols);
+        synchronized (SPECTRA) {
+            Mat spectrum = SPECTRA.get(key);
+            if (spectrum != null) {
+                return new Mat(spectrum, Range.all());
+            }
+        }
+
+        Mat spectrum = new Mat(dftRows, dftCols, CV_32F, Scalar.all(0));
+        Mat kernel = spectrum.submat(0, mask.getSize(), 0, mask.getSize());
+        mask.getMat().copyTo(kernel);
+        kernel.release();
+        Core.dft(spectrum, spectrum, 0, mask.getSize());
+
+        synchronized (SPECTRA) {
+            long bytes = spectrum.total() * spectrum.elemSize();
+            if (bytes <= MAX_CACHE_BYTES && !SPECTRA.containsKey(key)) {
+                evict(MAX_CACHE_BYTES - bytes);
+                SPECTRA.put(key, spectrum);
+                cachedBytes += bytes;
+                return new Mat(spectrum, Range.all());
+            }
+        }
+
+        return spectrum;
+    }
+
+    /**
+     * Usuwa widma używane najdawniej, aż ich łączny rozmiar nie przekroczy podanej wartości.
+     *
+     * @param maxBytes dopuszczalny łączny rozmiar widm (w bajtach)
+     */
+    private static void evict(long maxBytes) {
+        Iterator<Mat> iterator = SPECTRA.values().iterator();
+        while (cachedBytes > maxBytes && iterator.hasNext()) {
+            Mat spectrum = iterator.next();
+            cachedBytes -= spectrum.total() * spectrum.elemSize();
+            spectrum.release();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Usuwa wszystkie widma z pamięci podręcznej.
+     */
+    public static void clearCache() {
+        synchronized (SPECTRA) {
+            evict(0);
+        }
+    }
+
+    /**
+     * @return liczba widm w pamięci podręcznej
+     */
+    public static int getCachedSpectra() {
+        synchronized (SPECTRA) {
+            return SPECTRA.size();
+        }
+    }
+}
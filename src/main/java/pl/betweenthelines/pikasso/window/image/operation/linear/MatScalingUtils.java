@@ -1,9 +1,14 @@
 package pl.betweenthelines.pikasso.window.image.operation.linear;
 
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * Klasa służąca do skalowania obrazu wyjściowego po operacji.
@@ -38,6 +43,11 @@ public class MatScalingUtils {
      */
     private static final List<Byte> availableMethods = Arrays.asList(DO_NOTHING, METHOD_1, METHOD_2, METHOD_3);
 
+    /**
+     * Minimalna liczba wierszy obrazu przetwarzana przez jeden wątek.
+     */
+    private static final int MIN_ROWS_PER_STRIPE = 64;
+
     /**
      * Skaluje podany obraz na jeden ze sposobów:
      * <ul>
@@ -46,11 +56,30 @@ public class MatScalingUtils {
      *     <li>METHOD_2 - metoda trójwartościowa</li>
      *     <li>METHOD_3 - metoda obcinająca</li>
      * </ul>
+     * <p>
+     * Piksele obrazu są pobierane jednorazowo do tablicy (<tt>float[]</tt> dla obrazów
+     * CV_32F, <tt>byte[]</tt> dla obrazów 8-bitowych, <tt>double[]</tt> z kopii CV_64F
+     * dla obrazów o pozostałych głębiach), a obliczenia są dzielone na pasy wierszy
+     * wykonywane równolegle.
      *
      * @param mat    obraz wejściowy
      * @param method metoda skalowania
      */
     public static void scale(Mat mat, byte method) {
+        scale(mat, method, null);
+    }
+
+    /**
+     * Skaluje podany obraz, korzystając z wyznaczonych wcześniej wartości maksymalnych
+     * i minimalnych kanałów (metoda równomierna). Pozwala przeskalować fragment obrazu
+     * (np. kafelek) tak samo jak cały obraz.
+     *
+     * @param mat      obraz wejściowy
+     * @param method   metoda skalowania
+     * @param extremes wartości maksymalne i minimalne kanałów ({@link #findMaxAndMin(Mat)})
+     *                 lub <tt>null</tt>, jeśli mają zostać wyznaczone z podanego obrazu
+     */
+    public static void scale(Mat mat, byte method, double[][] extremes) {
         if (method == DO_NOTHING) {
             return;
         }
@@ -58,15 +87,205 @@ public class MatScalingUtils {
             throw new IllegalArgumentException();
         }
 
+        int channels = mat.channels();
+        boolean findExtremes = method == METHOD_1 && extremes == null;
+        double[] max = extremes != null ? extremes[0].clone() : createAndFillArray(channels, MIN_LEVEL);
+        double[] min = extremes != null ? extremes[1].clone() : createAndFillArray(channels, MAX_LEVEL);
+
+        Mat continuous = mat.isContinuous() ? mat : mat.clone();
+        switch (continuous.depth()) {
+            case CvType.CV_32F:
+                scaleFloatImage(continuous, method, max, min, findExtremes);
+                break;
+            case CvType.CV_8U:
+                scaleByteImage(continuous, method, max, min, findExtremes);
+                break;
+            default:
+                scaleOtherImage(continuous, method, max, min, findExtremes);
+        }
+
+        if (continuous != mat) {
+            continuous.copyTo(mat);
+            continuous.release();
+        }
+    }
+
+    /**
+     * Wyznacza wartości maksymalne i minimalne każdego kanału obrazu, wykorzystywane
+     * przez metodę równomierną. Wartości wyznaczone dla fragmentów obrazu można połączyć
+     * metodą {@link #mergeMaxAndMin(double[][], double[][])}.
+     *
+     * @param mat obraz wejściowy
+     * @return tablica wartości maksymalnych i tablica wartości minimalnych
+     */
+    public static double[][] findMaxAndMin(Mat mat) {
         int channels = mat.channels();
         double[] max = createAndFillArray(channels, MIN_LEVEL);
         double[] min = createAndFillArray(channels, MAX_LEVEL);
 
-        if (method == METHOD_1) {
-            findMaxAndMinForEveryChannel(mat, max, min);
+        Mat continuous = mat.isContinuous() ? mat : mat.clone();
+        int rowLength = continuous.cols() * channels;
+        switch (continuous.depth()) {
+            case CvType.CV_32F:
+                float[] floatLevels = new float[continuous.rows() * rowLength];
+                continuous.get(0, 0, floatLevels);
+                findMaxAndMinForEveryChannel(continuous, max, min, (from, to, stripeMax, stripeMin) ->
+                        findMaxAndMin(floatLevels, from * rowLength, to * rowLength, stripeMax, stripeMin));
+                break;
+            case CvType.CV_8U:
+                byte[] byteLevels = new byte[continuous.rows() * rowLength];
+                continuous.get(0, 0, byteLevels);
+                findMaxAndMinForEveryChannel(continuous, max, min, (from, to, stripeMax, stripeMin) ->
+                        findMaxAndMin(byteLevels, from * rowLength, to * rowLength, stripeMax, stripeMin));
+                break;
+            default:
+                double[] doubleLevels = getDoubleLevels(continuous);
+                findMaxAndMinForEveryChannel(continuous, max, min, (from, to, stripeMax, stripeMin) ->
+                        findMaxAndMin(doubleLevels, from * rowLength, to * rowLength, stripeMax, stripeMin));
+        }
+
+        if (continuous != mat) {
+            continuous.release();
+        }
+
+        return new double[][]{max, min};
+    }
+
+    /**
+     * Skaluje obraz metodą trójwartościową, zapisując wynik do obrazu 8-bitowego.
+     * Zamiast przeliczać piksele w Javie korzysta z porównań OpenCV - obraz wejściowy
+     * nie jest kopiowany do tablicy.
+     *
+     * @param mat         obraz wejściowy (CV_32F lub 8-bitowy)
+     * @param destination obraz docelowy (8-bitowy, o rozmiarze i liczbie kanałów obrazu wejściowego)
+     */
+    public static void scaleThreeValued(Mat mat, Mat destination) {
+        Mat levels = mat.reshape(1);
+        Mat result = destination.reshape(1);
+        Mat zero = new Mat();
+        try {
+            Core.compare(levels, new Scalar(MIN_LEVEL), result, Core.CMP_GT);
+            Core.compare(levels, new Scalar(MIN_LEVEL), zero, Core.CMP_EQ);
+            Core.bitwise_and(zero, new Scalar(HALF_LEVEL), zero);
+            Core.bitwise_or(result, zero, result);
+        } finally {
+            zero.release();
+            result.release();
+            levels.release();
+        }
+    }
+
+    /**
+     * Łączy wartości maksymalne i minimalne kanałów wyznaczone dla fragmentu obrazu
+     * z wartościami wyznaczonymi dla pozostałych fragmentów.
+     *
+     * @param extremes wartości dla pozostałych fragmentów (uzupełniane)
+     * @param part     wartości dla fragmentu
+     */
+    public static void mergeMaxAndMin(double[][] extremes, double[][] part) {
+        for (int ch = 0; ch < extremes[0].length; ch++) {
+            extremes[0][ch] = Math.max(extremes[0][ch], part[0][ch]);
+            extremes[1][ch] = Math.min(extremes[1][ch], part[1][ch]);
+        }
+    }
+
+    /**
+     * Skaluje obraz zmiennoprzecinkowy (CV_32F).
+     *
+     * @param mat          obraz wejściowy (ciągły w pamięci)
+     * @param method       metoda skalowania
+     * @param max          tablica elementów maksymalnych dla każdego kanału
+     * @param min          tablica elementów minimalnych dla każdego kanału
+     * @param findExtremes czy wyznaczyć elementy maksymalne i minimalne z obrazu
+     */
+    private static void scaleFloatImage(Mat mat, byte method, double[] max, double[] min, boolean findExtremes) {
+        int channels = mat.channels();
+        int rowLength = mat.cols() * channels;
+        float[] levels = new float[mat.rows() * rowLength];
+        mat.get(0, 0, levels);
+
+        if (findExtremes) {
+            findMaxAndMinForEveryChannel(mat, max, min, (from, to, stripeMax, stripeMin) ->
+                    findMaxAndMin(levels, from * rowLength, to * rowLength, stripeMax, stripeMin));
         }
 
-        calculateNewLevelsForImage(mat, method, max, min);
+        forEachStripe(mat.rows(), (from, to) ->
+                calculateNewLevels(levels, from * rowLength, to * rowLength, channels, method, max, min));
+
+        mat.put(0, 0, levels);
+    }
+
+    /**
+     * Skaluje obraz 8-bitowy. Nowe poziomy są zaokrąglane i obcinane do zakresu
+     * 0-255 (tak jak przy zapisie wartości do obiektu Mat).
+     *
+     * @param mat          obraz wejściowy (ciągły w pamięci)
+     * @param method       metoda skalowania
+     * @param max          tablica elementów maksymalnych dla każdego kanału
+     * @param min          tablica elementów minimalnych dla każdego kanału
+     * @param findExtremes czy wyznaczyć elementy maksymalne i minimalne z obrazu
+     */
+    private static void scaleByteImage(Mat mat, byte method, double[] max, double[] min, boolean findExtremes) {
+        int channels = mat.channels();
+        int rowLength = mat.cols() * channels;
+        byte[] levels = new byte[mat.rows() * rowLength];
+        mat.get(0, 0, levels);
+
+        if (findExtremes) {
+            findMaxAndMinForEveryChannel(mat, max, min, (from, to, stripeMax, stripeMin) ->
+                    findMaxAndMin(levels, from * rowLength, to * rowLength, stripeMax, stripeMin));
+        }
+
+        forEachStripe(mat.rows(), (from, to) ->
+                calculateNewLevels(levels, from * rowLength, to * rowLength, channels, method, max, min));
+
+        mat.put(0, 0, levels);
+    }
+
+    /**
+     * Skaluje obraz o głębi innej niż CV_32F i 8 bitów. Poziomy są przeliczane na kopii
+     * CV_64F, a wynik jest zapisywany z powrotem z zaokrągleniem i obcięciem do zakresu
+     * głębi obrazu (tak jak przy zapisie wartości do obiektu Mat).
+     *
+     * @param mat          obraz wejściowy (ciągły w pamięci)
+     * @param method       metoda skalowania
+     * @param max          tablica elementów maksymalnych dla każdego kanału
+     * @param min          tablica elementów minimalnych dla każdego kanału
+     * @param findExtremes czy wyznaczyć elementy maksymalne i minimalne z obrazu
+     */
+    private static void scaleOtherImage(Mat mat, byte method, double[] max, double[] min, boolean findExtremes) {
+        int channels = mat.channels();
+        int rowLength = mat.cols() * channels;
+        double[] levels = getDoubleLevels(mat);
+
+        if (findExtremes) {
+            findMaxAndMinForEveryChannel(mat, max, min, (from, to, stripeMax, stripeMin) ->
+                    findMaxAndMin(levels, from * rowLength, to * rowLength, stripeMax, stripeMin));
+        }
+
+        forEachStripe(mat.rows(), (from, to) ->
+                calculateNewLevels(levels, from * rowLength, to * rowLength, channels, method, max, min));
+
+        Mat result = new Mat(mat.rows(), mat.cols(), CvType.makeType(CvType.CV_64F, channels));
+        result.put(0, 0, levels);
+        result.convertTo(mat, mat.type());
+        result.release();
+    }
+
+    /**
+     * Pobiera poziomy jasności obrazu o dowolnej głębi jako tablicę <tt>double[]</tt>.
+     *
+     * @param mat obraz wejściowy
+     * @return tablica poziomów jasności (kanały kolejnych pikseli)
+     */
+    private static double[] getDoubleLevels(Mat mat) {
+        Mat converted = new Mat();
+        mat.convertTo(converted, CvType.makeType(CvType.CV_64F, mat.channels()));
+        double[] levels = new double[(int) converted.total() * converted.channels()];
+        converted.get(0, 0, levels);
+        converted.release();
+
+        return levels;
     }
 
     /**
@@ -85,36 +304,89 @@ public class MatScalingUtils {
 
     /**
      * Znajduje wartości minimalne i maksymalne dla każdego kanału i zapisuje
-     * w podanych tablicach.
+     * w podanych tablicach. Każdy pas wierszy szuka wartości we własnych tablicach,
+     * które są na koniec łączone w kolejności pasów.
      *
-     * @param mat obraz wejściowy
-     * @param max tablica wartości maksymalnych
-     * @param min tablica wartości minimalnych
+     * @param mat    obraz wejściowy
+     * @param max    tablica wartości maksymalnych
+     * @param min    tablica wartości minimalnych
+     * @param search przeszukanie jednego pasa wierszy
      */
-    private static void findMaxAndMinForEveryChannel(Mat mat, double[] max, double[] min) {
-        for (int y = 0; y < mat.height(); y++) {
-            for (int x = 0; x < mat.width(); x++) {
-                checkAndSaveIfMaxOrMinForEveryChannel(mat, max, min, y, x);
+    private static void findMaxAndMinForEveryChannel(Mat mat, double[] max, double[] min, StripeSearch search) {
+        int rows = mat.rows();
+        int stripes = stripeCount(rows);
+        double[][] stripeMax = new double[stripes][];
+        double[][] stripeMin = new double[stripes][];
+
+        IntStream.range(0, stripes).parallel().forEach(stripe -> {
+            stripeMax[stripe] = max.clone();
+            stripeMin[stripe] = min.clone();
+            search.search(stripeStart(rows, stripes, stripe), stripeStart(rows, stripes, stripe + 1),
+                    stripeMax[stripe], stripeMin[stripe]);
+        });
+
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            for (int ch = 0; ch < max.length; ch++) {
+                if (stripeMax[stripe][ch] > max[ch]) max[ch] = stripeMax[stripe][ch];
+                if (stripeMin[stripe][ch] < min[ch]) min[ch] = stripeMin[stripe][ch];
             }
         }
     }
 
     /**
-     * Sprawdza wartości poziomów jasności piksela o podanych współrzędnych i zapisuje
-     * jako element maksymalny, jeśli jest większy od obecnego maksimum lub element
-     * minimalny, jeśli mniejszy od obecnego minimum.
+     * Znajduje wartości minimalne i maksymalne dla każdego kanału w podanym
+     * fragmencie tablicy pikseli.
      *
-     * @param mat obraz wejściowy
-     * @param max tablica elementów maksymalnych dla każdego kanału
-     * @param min tablica elementów minimalnych dla każdego kanału
-     * @param y   współrzędna y
-     * @param x   współrzędna x
+     * @param levels tablica poziomów jasności (kanały kolejnych pikseli)
+     * @param from   indeks początkowy (włącznie)
+     * @param to     indeks końcowy (wyłącznie)
+     * @param max    tablica elementów maksymalnych dla każdego kanału
+     * @param min    tablica elementów minimalnych dla każdego kanału
      */
-    private static void checkAndSaveIfMaxOrMinForEveryChannel(Mat mat, double[] max, double[] min, int y, int x) {
-        double[] levels = mat.get(y, x);
+    private static void findMaxAndMin(float[] levels, int from, int to, double[] max, double[] min) {
+        int channels = max.length;
+        for (int i = from; i < to; i += channels) {
+            for (int ch = 0; ch < channels; ch++) {
+                checkAndSaveForOneChannel(max, min, levels[i + ch], ch);
+            }
+        }
+    }
 
-        for (int ch = 0; ch < mat.channels(); ch++) {
-            checkAndSaveForOneChannel(max, min, levels[ch], ch);
+    /**
+     * Znajduje wartości minimalne i maksymalne dla każdego kanału w podanym
+     * fragmencie tablicy pikseli (<tt>double[]</tt>).
+     *
+     * @param levels tablica poziomów jasności (kanały kolejnych pikseli)
+     * @param from   indeks początkowy (włącznie)
+     * @param to     indeks końcowy (wyłącznie)
+     * @param max    tablica elementów maksymalnych dla każdego kanału
+     * @param min    tablica elementów minimalnych dla każdego kanału
+     */
+    private static void findMaxAndMin(double[] levels, int from, int to, double[] max, double[] min) {
+        int channels = max.length;
+        for (int i = from; i < to; i += channels) {
+            for (int ch = 0; ch < channels; ch++) {
+                checkAndSaveForOneChannel(max, min, levels[i + ch], ch);
+            }
+        }
+    }
+
+    /**
+     * Znajduje wartości minimalne i maksymalne dla każdego kanału w podanym
+     * fragmencie tablicy pikseli 8-bitowych.
+     *
+     * @param levels tablica poziomów jasności (kanały kolejnych pikseli)
+     * @param from   indeks początkowy (włącznie)
+     * @param to     indeks końcowy (wyłącznie)
+     * @param max    tablica elementów maksymalnych dla każdego kanału
+     * @param min    tablica elementów minimalnych dla każdego kanału
+     */
+    private static void findMaxAndMin(byte[] levels, int from, int to, double[] max, double[] min) {
+        int channels = max.length;
+        for (int i = from; i < to; i += channels) {
+            for (int ch = 0; ch < channels; ch++) {
+                checkAndSaveForOneChannel(max, min, levels[i + ch] & 0xff, ch);
+            }
         }
     }
 
@@ -134,42 +406,124 @@ public class MatScalingUtils {
     }
 
     /**
-     * Oblicza nowy poziom dla każdego piksela obrazu.
+     * Oblicza nowe poziomy dla podanego fragmentu tablicy pikseli.
      *
-     * @param mat    obraz wejściowy
-     * @param method metoda skalowania
-     * @param max    tablica elementów maksymalnych dla każdego kanału
-     * @param min    tablica elementów minimalnych dla każdego kanału
+     * @param levels   tablica poziomów jasności (kanały kolejnych pikseli)
+     * @param from     indeks początkowy (włącznie)
+     * @param to       indeks końcowy (wyłącznie)
+     * @param channels liczba kanałów
+     * @param method   metoda skalowania
+     * @param max      tablica elementów maksymalnych dla każdego kanału
+     * @param min      tablica elementów minimalnych dla każdego kanału
      */
-    private static void calculateNewLevelsForImage(Mat mat, byte method, double[] max, double[] min) {
-        for (int y = 0; y < mat.height(); y++) {
-            for (int x = 0; x < mat.width(); x++) {
-                calculateNewLevelForEveryChannel(mat, method, max, min, y, x);
+    private static void calculateNewLevels(float[] levels, int from, int to, int channels, byte method, double[] max, double[] min) {
+        for (int i = from; i < to; i += channels) {
+            for (int ch = 0; ch < channels; ch++) {
+                levels[i + ch] = (float) calculateLevel(levels[i + ch], min[ch], max[ch], method);
             }
         }
     }
 
     /**
-     * Oblicza nowy poziom dla piksela o podanych współrzędnych (każdego kanału).
+     * Oblicza nowe poziomy dla podanego fragmentu tablicy pikseli (<tt>double[]</tt>).
      *
-     * @param mat    obraz wejściowy
-     * @param method metoda skalowania
-     * @param max    tablica elementów maksymalnych dla każdego kanału
-     * @param min    tablica elementów minimalnych dla każdego kanału
-     * @param y      współrzędna y
-     * @param x      współrzędna x
+     * @param levels   tablica poziomów jasności (kanały kolejnych pikseli)
+     * @param from     indeks początkowy (włącznie)
+     * @param to       indeks końcowy (wyłącznie)
+     * @param channels liczba kanałów
+     * @param method   metoda skalowania
+     * @param max      tablica elementów maksymalnych dla każdego kanału
+     * @param min      tablica elementów minimalnych dla każdego kanału
      */
-    private static void calculateNewLevelForEveryChannel(Mat mat, byte method, double[] max, double[] min, int y, int x) {
-        double[] levels = mat.get(y, x);
-
-        for (int ch = 0; ch < mat.channels(); ch++) {
-            double level = levels[ch];
+    private static void calculateNewLevels(double[] levels, int from, int to, int channels, byte method, double[] max, double[] min) {
+        for (int i = from; i < to; i += channels) {
+            for (int ch = 0; ch < channels; ch++) {
+                levels[i + ch] = calculateLevel(levels[i + ch], min[ch], max[ch], method);
+            }
+        }
+    }
 
-            double newLevel = calculateLevel(level, min[ch], max[ch], method);
-            levels[ch] = newLevel;
+    /**
+     * Oblicza nowe poziomy dla podanego fragmentu tablicy pikseli 8-bitowych.
+     *
+     * @param levels   tablica poziomów jasności (kanały kolejnych pikseli)
+     * @param from     indeks początkowy (włącznie)
+     * @param to       indeks końcowy (wyłącznie)
+     * @param channels liczba kanałów
+     * @param method   metoda skalowania
+     * @param max      tablica elementów maksymalnych dla każdego kanału
+     * @param min      tablica elementów minimalnych dla każdego kanału
+     */
+    private static void calculateNewLevels(byte[] levels, int from, int to, int channels, byte method, double[] max, double[] min) {
+        for (int i = from; i < to; i += channels) {
+            for (int ch = 0; ch < channels; ch++) {
+                double newLevel = calculateLevel(levels[i + ch] & 0xff, min[ch], max[ch], method);
+                levels[i + ch] = (byte) saturate(newLevel);
+            }
         }
+    }
 
-        mat.put(y, x, levels);
+    /**
+     * Zaokrągla wartość do najbliższej liczby całkowitej i obcina do zakresu 0-255
+     * (zgodnie z konwersją wartości przy zapisie do 8-bitowego obiektu Mat).
+     *
+     * @param level poziom jasności
+     * @return poziom jasności w zakresie 0-255
+     */
+    private static int saturate(double level) {
+        int rounded = (int) Math.rint(level);
+        return Math.max((int) MIN_LEVEL, Math.min((int) MAX_LEVEL, rounded));
+    }
+
+    /**
+     * Wykonuje podaną operację równolegle dla kolejnych pasów wierszy obrazu.
+     *
+     * @param rows      liczba wierszy obrazu
+     * @param operation operacja na pasie wierszy
+     */
+    private static void forEachStripe(int rows, StripeOperation operation) {
+        int stripes = stripeCount(rows);
+        IntStream.range(0, stripes).parallel().forEach(stripe ->
+                operation.apply(stripeStart(rows, stripes, stripe), stripeStart(rows, stripes, stripe + 1)));
+    }
+
+    /**
+     * Oblicza liczbę pasów wierszy, na które dzielony jest obraz.
+     *
+     * @param rows liczba wierszy obrazu
+     * @return liczba pasów
+     */
+    private static int stripeCount(int rows) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        return Math.max(1, Math.min(parallelism * 4, rows / MIN_ROWS_PER_STRIPE));
+    }
+
+    /**
+     * Oblicza pierwszy wiersz podanego pasa.
+     *
+     * @param rows    liczba wierszy obrazu
+     * @param stripes liczba pasów
+     * @param stripe  indeks pasa
+     * @return indeks pierwszego wiersza pasa
+     */
+    private static int stripeStart(int rows, int stripes, int stripe) {
+        return (int) ((long) rows * stripe / stripes);
+    }
+
+    /**
+     * Operacja wykonywana na pasie wierszy obrazu.
+     */
+    @FunctionalInterface
+    private interface StripeOperation {
+        void apply(int fromRow, int toRow);
+    }
+
+    /**
+     * Wyszukanie wartości minimalnych i maksymalnych w pasie wierszy obrazu.
+     */
+    @FunctionalInterface
+    private interface StripeSearch {
+        void search(int fromRow, int toRow, double[] max, double[] min);
     }
 
     /**
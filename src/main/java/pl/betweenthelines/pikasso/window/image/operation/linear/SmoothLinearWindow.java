@@ -12,18 +12,20 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
+import pl.betweenthelines.pikasso.engine.LinearFilterOperation;
+import pl.betweenthelines.pikasso.engine.Operation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask3x3;
 
 import java.util.Arrays;
 import java.util.List;
 
 import static javafx.geometry.Orientation.VERTICAL;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.DO_NOTHING;
 import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.SMOOTH_1;
 import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.SMOOTH_2;
 
@@ -64,6 +66,11 @@ public class SmoothLinearWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -73,16 +80,20 @@ public class SmoothLinearWindow {
     private Slider slider;
 
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     private Image before;
-    private Image after;
 
     /**
      * Wartość zwielokrotnienia operacji.
      */
     private double times;
 
+    /**
+     * Czy powtórzenia operacji mają zostać zastąpione jedną filtracją maską złożoną.
+     */
+    private boolean composed;
+
     /**
      * Maski parametryzowane.
      */
@@ -134,11 +145,11 @@ public class SmoothLinearWindow {
 
         HBox kSliderHbox = createSliderHBox();
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -148,10 +159,11 @@ public class SmoothLinearWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(currentMask), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         VBox parametrizedSlider = new VBox(kSliderHbox);
         parametrizedSlider.setSpacing(5);
@@ -171,7 +183,7 @@ public class SmoothLinearWindow {
         radioAndKSliderVBox.setAlignment(Pos.CENTER);
         HBox buttonsHbox = new HBox(cancel, save);
         HBox timesSliderHBox = new HBox(timesSlider, timesValue);
-        VBox buttonsTimesVbox = new VBox(timesSliderHBox, buttonsHbox);
+        VBox buttonsTimesVbox = new VBox(timesSliderHBox, createComposedCheckBox(), buttonsHbox);
 
         VBox borderVBox = createBorderOptions();
 
@@ -188,11 +200,13 @@ public class SmoothLinearWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Wygładzanie");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -256,14 +270,16 @@ public class SmoothLinearWindow {
 
     /**
      * Tworzy podgląd obrazu po operacji.
+     *
+     * @param openedFileData dane o otwartym pliku
      */
-    private void createAfterImageView() {
-        after = applyMask(SMOOTH_1);
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> handleOpenHistogram(afterImageView));
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation(currentMask)));
     }
 
     /**
@@ -429,33 +445,35 @@ public class SmoothLinearWindow {
      * Stosuje wybraną maskę i odświeża podgląd.
      */
     private void reloadPreview() {
-        after = applyMask(currentMask);
-        afterImageView.setImage(after);
+        preview.render(createOperation(currentMask));
     }
 
     /**
-     * Przeprowadza operację filtrowania wybraną maską.
+     * Tworzy CheckBox do zastąpienia powtórzeń operacji jedną filtracją maską złożoną.
      *
-     * @param mask maska do operacji
-     * @return obraz wynikowy.
+     * @return <tt>CheckBox</tt> włączający filtrację jedną maską złożoną
      */
-    private Image applyMask(Mask3x3 mask) {
-        Mat image = ImageUtils.imageToMat(before);
-        applyMask(mask, image);
-
-        return ImageUtils.mat2Image(image);
+    private CheckBox createComposedCheckBox() {
+        CheckBox composedCheckBox = new CheckBox("Jedna maska złożona");
+        composedCheckBox.selectedProperty().addListener((observable, oldValue, newValue) -> {
+            composed = newValue;
+            reloadPreview();
+        });
+        return composedCheckBox;
     }
 
     /**
-     * Przeprowadza operację filtrowania wybraną maską na podanym obiekcie Mat.
+     * Przeprowadza operację filtrowania wybraną maską. Maska parametryzowana jest
+     * kopiowana, bo suwak zmienia jej wartość środkową, a operacja jest wykonywana
+     * w tle (podgląd lub zachowanie wyniku).
      *
-     * @param mask  maska do operacji
-     * @param image obiekt Mat z obrazem
+     * @param mask maska do operacji
+     * @return operacja
      */
-    private void applyMask(Mask3x3 mask, Mat image) {
-        for (int i = 0; i < times; i++) {
-            FilteringUtils.applyMask(image, mask, currentBorderType, border);
-        }
+    private Operation createOperation(Mask3x3 mask) {
+        Mask3x3 snapshot = mask.isParametrized() ? mask.copy() : mask;
+        return new LinearFilterOperation(new LinearFilterOperation.Parameters(
+                snapshot, null, false, false, currentBorderType, border, (int) times, DO_NOTHING, false, composed), true);
     }
 
 }
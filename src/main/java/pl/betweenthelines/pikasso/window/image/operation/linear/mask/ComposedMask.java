@@ -0,0 +1,57 @@
+package pl.betweenthelines.pikasso.window.image.operation.linear.mask;
+
+import lombok.Getter;
+import org.opencv.core.Mat;
+
+import static org.opencv.core.CvType.CV_32F;
+
+/**
+ * Maska dowolnej (nieparzystej) wielkości powstała ze złożenia masek stosowanych
+ * kolejno ({@link MaskUtils#compose(java.util.List, int)}). Wartości maski są już
+ * podzielone przez dzielniki masek składowych, więc nie są dzielone ponownie.
+ */
+@Getter
+public class ComposedMask implements Mask {
+
+    /**
+     * Tablica wartości w masce (wierszami).
+     */
+    private final double[] values;
+
+    /**
+     * Wielkość maski.
+     */
+    private final int size;
+
+    /**
+     * Dzielnik wartości maski - zawsze 0, bo wartości są już podzielone.
+     */
+    private final int kernelSize = 0;
+
+    /**
+     * Obiekt Mat z wartościami z maski.
+     */
+    private final Mat mat;
+
+    /**
+     * Rozkład maski na maski jednowymiarowe (lub <tt>null</tt>, jeśli maska nie jest rozdzielna).
+     */
+    private final SeparableKernel separableKernel;
+
+    /**
+     * @param values          wartości maski (wierszami, <tt>size * size</tt>)
+     * @param size            wielkość maski
+     * @param separableKernel rozkład maski na maski jednowymiarowe (lub <tt>null</tt>)
+     */
+    public ComposedMask(double[] values, int size, SeparableKernel separableKernel) {
+        if (values.length != size * size) {
+            throw new IllegalArgumentException("Incorrect values number!");
+        }
+
+        this.values = values;
+        this.size = size;
+        this.separableKernel = separableKernel;
+        this.mat = new Mat(size, size, CV_32F);
+        mat.put(0, 0, values);
+    }
+}
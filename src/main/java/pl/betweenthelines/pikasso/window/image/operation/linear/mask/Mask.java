@@ -7,4 +7,13 @@ public interface Mask {
     int getKernelSize();
     Mat getMat();
 
+    int getSize();
+    double[] getValues();
+
+    /**
+     * @return rozkład maski na maski jednowymiarowe lub <tt>null</tt>, jeśli maska
+     * nie jest rozdzielna (zob. {@link MaskUtils#separate(double[], int, int)})
+     */
+    SeparableKernel getSeparableKernel();
+
 }
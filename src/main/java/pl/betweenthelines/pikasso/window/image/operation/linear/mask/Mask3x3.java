@@ -43,6 +43,11 @@ public class Mask3x3 implements Mask {
      */
     private Mat mat;
 
+    /**
+     * Rozkład maski na maski jednowymiarowe (lub <tt>null</tt>, jeśli maska nie jest rozdzielna).
+     */
+    private SeparableKernel separableKernel;
+
     /**
      * Konstruktor tworzący maskę.
      *
@@ -64,9 +69,11 @@ public class Mask3x3 implements Mask {
     }
 
     /**
-     * Tworzy obiekt Mat z wartości maski.
+     * Tworzy obiekt Mat z wartości maski i sprawdza, czy maska jest rozdzielna.
      */
     private void createMat() {
+        separableKernel = MaskUtils.separate(values, size, kernelSize);
+
         mat = new Mat(size, size, CV_32F) {
             {
                 int divider = kernelSize != 0 ? kernelSize : 1;
@@ -100,16 +107,29 @@ public class Mask3x3 implements Mask {
     }
 
     /**
-     * Zmienia wartość środkową maski parametryzowanej i przelicza maskę.
+     * Zmienia wartość środkową maski parametryzowanej i przelicza maskę. Poprzedni
+     * obiekt Mat jest zwalniany, więc maska nie może być w tym czasie używana przez
+     * operację wykonywaną w tle - operacja powinna otrzymać kopię ({@link #copy()}).
      *
      * @param newValue nowa wartość środkowa
      */
     public void updateMiddleElement(double newValue) {
         values[4] = newValue;
         this.kernelSize = calculateKernelSize();
+        mat.release();
         createMat();
     }
 
+    /**
+     * Tworzy niezależną kopię maski (z kopią tablicy wartości), na którą nie wpływają
+     * późniejsze zmiany wartości środkowej.
+     *
+     * @return kopia maski
+     */
+    public Mask3x3 copy() {
+        return new Mask3x3(name, isParametrized, values.clone());
+    }
+
     /**
      * Zamienia maskę na tabelkę z jej wartościami.
      *
@@ -38,6 +38,11 @@ public class Mask5x5 implements Mask {
      */
     private Mat mat;
 
+    /**
+     * Rozkład maski na maski jednowymiarowe (lub <tt>null</tt>, jeśli maska nie jest rozdzielna).
+     */
+    private SeparableKernel separableKernel;
+
     /**
      * Konstruktor tworzący maskę.
      *
@@ -57,9 +62,11 @@ public class Mask5x5 implements Mask {
     }
 
     /**
-     * Tworzy obiekt Mat z wartości maski.
+     * Tworzy obiekt Mat z wartości maski i sprawdza, czy maska jest rozdzielna.
      */
     private void createMat() {
+        separableKernel = MaskUtils.separate(values, size, kernelSize);
+
         mat = new Mat(size, size, CV_32F) {
             {
                 int divider = kernelSize != 0 ? kernelSize : 1;
@@ -0,0 +1,118 @@
+package pl.betweenthelines.pikasso.window.image.operation.linear.mask;
+
+import lombok.Getter;
+import org.opencv.core.Mat;
+
+import static org.opencv.core.CvType.CV_32F;
+
+/**
+ * Klasa reprezentuje maskę kwadratową dowolnej nieparzystej wielkości (np. maskę
+ * własną 31x31 wczytaną z pliku - {@link MaskUtils#readMask(java.nio.file.Path)}).
+ * Wartości maski są dzielone przez ich sumę tak jak w {@link Mask3x3}.
+ */
+@Getter
+public class MaskNxN implements Mask {
+
+    /**
+     * Nazwa maski.
+     */
+    private String name;
+
+    /**
+     * Tablica wartości w masce (wierszami).
+     */
+    private double[] values;
+
+    /**
+     * Wielkość maski.
+     */
+    private int size;
+
+    /**
+     * Dzielnik wartości maski potrzebny przy tworzeniu obiektu Mat. Jest to
+     * suma wszystkich wartości w masce (lub dzielnik podany przy tworzeniu maski,
+     * np. maski połączonej). Jeśli wynosi zero, wartości w masce nie są dzielone.
+     */
+    private int kernelSize;
+
+    /**
+     * Obiekt Mat z wartościami z maski.
+     */
+    private Mat mat;
+
+    /**
+     * Rozkład maski na maski jednowymiarowe (lub <tt>null</tt>, jeśli maska nie jest rozdzielna).
+     */
+    private SeparableKernel separableKernel;
+
+    /**
+     * Konstruktor tworzący maskę.
+     *
+     * @param name   nazwa maski
+     * @param size   wielkość maski (nieparzysta)
+     * @param values tablica wartości w masce, wierszami (musi być ich <tt>size * size</tt>)
+     */
+    public MaskNxN(String name, int size, double... values) {
+        this(name, size, values, calculateKernelSize(values));
+    }
+
+    /**
+     * Konstruktor tworzący maskę o podanym dzielniku (np. maskę połączoną
+     * - {@link MaskUtils#combine(java.util.List)}).
+     *
+     * @param name       nazwa maski
+     * @param size       wielkość maski (nieparzysta)
+     * @param values     tablica wartości w masce, wierszami (musi być ich <tt>size * size</tt>)
+     * @param kernelSize dzielnik wartości maski (0, jeśli wartości nie mają być dzielone)
+     */
+    public MaskNxN(String name, int size, double[] values, int kernelSize) {
+        if (size < 1 || size % 2 == 0) {
+            throw new IllegalArgumentException("Incorrect mask size!");
+        }
+        if (values.length != size * size) {
+            throw new IllegalArgumentException("Incorrect values number!");
+        }
+
+        this.name = name;
+        this.values = values;
+        this.size = size;
+        this.kernelSize = kernelSize;
+        createMat();
+    }
+
+    /**
+     * Tworzy obiekt Mat z wartości maski i sprawdza, czy maska jest rozdzielna.
+     */
+    private void createMat() {
+        separableKernel = MaskUtils.separate(values, size, kernelSize);
+
+        int divider = kernelSize != 0 ? kernelSize : 1;
+        float[] divided = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            divided[i] = (float) (values[i] / divider);
+        }
+
+        mat = new Mat(size, size, CV_32F);
+        mat.put(0, 0, divided);
+    }
+
+    /**
+     * Sumuje wartości w masce (domyślny dzielnik maski).
+     *
+     * @param values tablica wartości w masce
+     * @return sumę wartości w masce
+     */
+    private static int calculateKernelSize(double[] values) {
+        double sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+        }
+
+        return (int) sum;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%dx%d)", name, size, size);
+    }
+}
@@ -1,100 +1,393 @@
 package pl.betweenthelines.pikasso.window.image.operation.linear.mask;
 
+import lombok.Value;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.opencv.core.CvType.CV_32F;
+
 /**
  * Klasa do operacji na maskach.
  */
 public class MaskUtils {
 
     /**
-     * Wielkość maski pomocniczej, na ktorej przeprowadzana jest
-     * operacja łączenia dwóch masek 3x3.
+     * Maksymalna liczba zapamiętanych masek połączonych.
+     */
+    private static final int MAX_COMBINED_MASKS = 64;
+
+    /**
+     * Wartości, wielkość i dzielnik maski - klucz zapamiętanych masek połączonych.
      */
-    private static final int HELPER_MASK_SIZE = 7;
+    @Value
+    private static class MaskKey {
+        private double[] values;
+        private int size;
+        private int kernelSize;
+
+        private static MaskKey of(Mask mask) {
+            return new MaskKey(mask.getValues().clone(), mask.getSize(), mask.getKernelSize());
+        }
+    }
 
     /**
-     * Srodek maski pomocniczej.
+     * Zapamiętane maski połączone (od używanej najdawniej).
      */
-    private static final int CENTER = (HELPER_MASK_SIZE - 1) / 2;
+    private static final Map<List<MaskKey>, MaskNxN> COMBINED_MASKS =
+            new LinkedHashMap<List<MaskKey>, MaskNxN>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<List<MaskKey>, MaskNxN> eldest) {
+                    return size() > MAX_COMBINED_MASKS;
+                }
+            };
 
     /**
-     * Łączy dwie maski 3x3 w jedną maskę 5x5.
+     * Łączy dwie maski 3x3 w jedną maskę 5x5 (zob. {@link #combine(List)}).
      *
      * @param mask1 maska 1.
      * @param mask2 maska 2.
      * @return maska wynikowa
      */
     public static Mask5x5 combineMasks(Mask3x3 mask1, Mask3x3 mask2) {
-        double[] values1 = mask1.getValues();
-        double[] values2 = mask2.getValues();
-        double[] result5x5 = convertTo7x7AndCombineValues(values1, values2);
+        return new Mask5x5("COMBINED_MASK", combine(Arrays.asList(mask1, mask2)).getValues().clone());
+    }
+
+    /**
+     * Łączy maski dowolnych nieparzystych wielkości stosowane kolejno w jedną maskę.
+     * Filtracja maską wynikową daje taki sam wynik jak kolejne filtracje maskami
+     * (z dokładnością do pikseli brzegowych) - wartości maski wynikowej są pełnym
+     * splotem wartości masek (dokładnym dla wartości całkowitych), a jej dzielnik
+     * iloczynem dzielników masek (dzielnik maski o sumie wartości 0 wynosi 1). Jeśli
+     * iloczyn dzielników nie mieści się w zakresie <tt>int</tt>, wartości maski wynikowej
+     * są już (częściowo) podzielone.
+     * <p>
+     * Maski wynikowe są zapamiętywane według wartości masek łączonych, więc ponowne
+     * połączenie tych samych masek (np. przy odświeżaniu podglądu) zwraca ten sam obiekt.
+     *
+     * @param masks maski w kolejności stosowania
+     * @return maska wynikowa o wielkości równej sumie wielkości masek pomniejszonych o 1, plus 1
+     */
+    public static MaskNxN combine(List<? extends Mask> masks) {
+        if (masks.isEmpty()) {
+            throw new IllegalArgumentException("No masks to combine!");
+        }
+
+        List<MaskKey> key = masks.stream().map(MaskKey::of).collect(Collectors.toList());
+        synchronized (COMBINED_MASKS) {
+            MaskNxN combined = COMBINED_MASKS.get(key);
+            if (combined != null) {
+                return combined;
+            }
+        }
+
+        double[] values = {1};
+        int size = 1;
+        long divider = 1;
+        for (MaskKey mask : key) {
+            values = convolve(values, size, mask.getValues(), mask.getSize());
+            size += mask.getSize() - 1;
+            divider *= mask.getKernelSize() != 0 ? mask.getKernelSize() : 1;
+            if (Math.abs(divider) > Integer.MAX_VALUE) {
+                for (int i = 0; i < values.length; i++) {
+                    values[i] /= divider;
+                }
+                divider = 1;
+            }
+        }
+
+        MaskNxN combined = new MaskNxN("COMBINED_MASK", size, values, (int) divider);
+        synchronized (COMBINED_MASKS) {
+            COMBINED_MASKS.put(key, combined);
+        }
 
-        return new Mask5x5("COMBINED_MASK", result5x5);
+        return combined;
     }
 
     /**
-     * Konwertuje drugą maskę 3x3 na maskę 7x7 (maska zer z wartościami
-     * maski 3x3 na środkowych elementach) i łączy maski.
+     * Wczytuje maskę dowolnej nieparzystej wielkości z pliku tekstowego. Każdy wiersz
+     * pliku zawiera wiersz maski - wartości oddzielone spacjami, tabulatorami,
+     * przecinkami lub średnikami. Puste wiersze i wiersze zaczynające się od <tt>#</tt>
+     * są pomijane.
      *
-     * @param values1 wartości maski 1.
-     * @param values2 wartości maski 2.
-     * @return wartości wynikowej maski 5x5
+     * @param file plik z maską
+     * @return maska (o nazwie takiej jak plik)
+     * @throws IOException              jeśli nie udało się odczytać pliku
+     * @throws IllegalArgumentException jeśli maska nie jest kwadratowa, ma parzystą
+     *                                  wielkość lub zawiera niepoprawne wartości
      */
-    private static double[] convertTo7x7AndCombineValues(double[] values1, double[] values2) {
-        double[] values7x7 = fill7x7ArrayWithValues2(values2);
+    public static MaskNxN readMask(Path file) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                rows.add(trimmed.split("[\\s,;]+"));
+            }
+        }
+
+        int size = rows.size();
+        double[] values = new double[size * size];
+        for (int row = 0; row < size; row++) {
+            if (rows.get(row).length != size) {
+                throw new IllegalArgumentException("Maska musi być kwadratowa (wiersz " + (row + 1) + ")");
+            }
+            for (int col = 0; col < size; col++) {
+                try {
+                    values[row * size + col] = Double.parseDouble(rows.get(row)[col]);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Niepoprawna wartość maski: " + rows.get(row)[col], e);
+                }
+            }
+        }
+        if (size % 2 == 0) {
+            throw new IllegalArgumentException("Wielkość maski musi być nieparzysta: " + size);
+        }
+
+        return new MaskNxN(file.getFileName().toString(), size, values);
+    }
+
+    /**
+     * Składa maski stosowane kolejno w każdym powtórzeniu filtracji, powtarzanej podaną
+     * liczbę razy, w jedną maskę.
+     * <p>
+     * Filtracja (korelacja) maską A, a następnie maską B jest równoważna filtracji jedną
+     * maską będącą splotem A i B, więc <tt>times</tt>-krotne powtórzenie filtracji maskami
+     * A, B, ... można zastąpić jedną filtracją maską (A * B * ...)<sup>times</sup>. Wynik
+     * różni się przy brzegu obrazu (w odległości mniejszej niż promień maski złożonej),
+     * bo przy powtarzaniu piksele brzegowe są uzupełniane w każdym powtórzeniu od nowa.
+     * Jeśli składane jest rozmycie gaussowskie obrazu 8-bitowego, wynik może różnić się
+     * o jeden poziom także wewnątrz obrazu - rozmycie zaokrągla obraz do 8 bitów przed
+     * filtracją maską, a maska złożona tego nie robi.
+     * <p>
+     * Jeśli wszystkie maski są rozdzielne, maska złożona też jest rozdzielna - jej maski
+     * jednowymiarowe są złożeniem masek jednowymiarowych masek składowych.
+     *
+     * @param masks maski stosowane kolejno w jednym powtórzeniu
+     * @param times liczba powtórzeń
+     * @return maska złożona o wielkości <tt>times * (n - 1) + 1</tt>, gdzie <tt>n</tt>
+     * to wielkość złożenia masek jednego powtórzenia
+     */
+    public static ComposedMask compose(List<Mask> masks, int times) {
+        double[] iteration = {1};
+        int iterationSize = 1;
+        for (Mask mask : masks) {
+            iteration = convolve(iteration, iterationSize, normalizedValues(mask), mask.getSize());
+            iterationSize += mask.getSize() - 1;
+        }
 
-        return combineValues(values1, values7x7);
+        double[] values = {1};
+        int size = 1;
+        for (int i = 0; i < times; i++) {
+            values = convolve(values, size, iteration, iterationSize);
+            size += iterationSize - 1;
+        }
+
+        return new ComposedMask(values, size, composeSeparableKernels(masks, times));
     }
 
     /**
-     * Konwertuje wartości z maski 3x3 na wartości maski 7x7.
+     * Składa maski jednowymiarowe masek rozdzielnych (tak jak {@link #compose(List, int)}).
+     * Maski wiersza i kolumny są skalowane tak, aby miały równe wartości największe
+     * - wartości pojedynczej maski mogłyby przekroczyć zakres typu <tt>float</tt>.
      *
-     * @param values2 wartości maski 3x3
-     * @return wartości maski 7x7
+     * @param masks maski stosowane kolejno w jednym powtórzeniu
+     * @param times liczba powtórzeń
+     * @return rozkład maski złożonej lub <tt>null</tt>, jeśli któraś z masek nie jest rozdzielna
      */
-    private static double[] fill7x7ArrayWithValues2(double[] values2) {
-        double[] values7x7 = new double[HELPER_MASK_SIZE * HELPER_MASK_SIZE];
-        int offset = CENTER - 1;
-        for (int row = 0; row < 3; row++) {
-            for (int col = 0; col < 3; col++) {
-                int posIn7x7 = (row + offset) * HELPER_MASK_SIZE + col + offset;
-                int posIn3x3 = row * 3 + col;
-                values7x7[posIn7x7] = values2[posIn3x3];
+    private static SeparableKernel composeSeparableKernels(List<Mask> masks, int times) {
+        double[] iterationRow = {1};
+        double[] iterationColumn = {1};
+        for (Mask mask : masks) {
+            SeparableKernel separableKernel = mask.getSeparableKernel();
+            if (separableKernel == null) {
+                return null;
             }
+            iterationRow = convolve(iterationRow, toArray(separableKernel.getRowKernel()));
+            iterationColumn = convolve(iterationColumn, toArray(separableKernel.getColumnKernel()));
         }
-        return values7x7;
+
+        double[] row = {1};
+        double[] column = {1};
+        for (int i = 0; i < times; i++) {
+            row = convolve(row, iterationRow);
+            column = convolve(column, iterationColumn);
+        }
+
+        double scale = Math.sqrt(maxAbs(column) / maxAbs(row));
+        Mat rowKernel = new Mat(1, row.length, CV_32F);
+        Mat columnKernel = new Mat(column.length, 1, CV_32F);
+        for (int i = 0; i < row.length; i++) {
+            rowKernel.put(0, i, row[i] * scale);
+            columnKernel.put(i, 0, column[i] / scale);
+        }
+
+        return new SeparableKernel(rowKernel, columnKernel);
     }
 
     /**
-     * Lączy wartości maski 3x3 z wartościami maski 7x7 i oblicza wartości maski 5x5
+     * Oblicza pełny splot dwóch masek kwadratowych.
      *
-     * @param values1   wartości maski 3x3
-     * @param values7x7 wartości maski 7x7
-     * @return wartości wynikowej maski 5x5
+     * @param values1 wartości maski 1 (wierszami)
+     * @param size1   wielkość maski 1
+     * @param values2 wartości maski 2 (wierszami)
+     * @param size2   wielkość maski 2
+     * @return wartości splotu (wierszami) - maski o wielkości <tt>size1 + size2 - 1</tt>
      */
-    private static double[] combineValues(double[] values1, double[] values7x7) {
-        double[] result5x5 = new double[25];
-        int posIn5x5 = 0;
-        for (int row = 1; row < HELPER_MASK_SIZE - 1; row++) {
-            for (int col = 1; col < HELPER_MASK_SIZE - 1; col++, posIn5x5++) {
-                int pos0 = (row - 1) * HELPER_MASK_SIZE + col - 1;
-                int pos1 = (row - 1) * HELPER_MASK_SIZE + col;
-                int pos2 = (row - 1) * HELPER_MASK_SIZE + col + 1;
-                int pos3 = row * HELPER_MASK_SIZE + col - 1;
-                int pos4 = row * HELPER_MASK_SIZE + col;
-                int pos5 = row * HELPER_MASK_SIZE + col + 1;
-                int pos6 = (row + 1) * HELPER_MASK_SIZE + col - 1;
-                int pos7 = (row + 1) * HELPER_MASK_SIZE + col;
-                int pos8 = (row + 1) * HELPER_MASK_SIZE + col + 1;
-
-                double newValue =
-                        values1[0] * values7x7[pos0] + values1[1] * values7x7[pos1] + values1[2] * values7x7[pos2] +
-                                values1[3] * values7x7[pos3] + values1[4] * values7x7[pos4] + values1[5] * values7x7[pos5] +
-                                values1[6] * values7x7[pos6] + values1[7] * values7x7[pos7] + values1[8] * values7x7[pos8];
-
-                result5x5[posIn5x5] = newValue;
+    private static double[] convolve(double[] values1, int size1, double[] values2, int size2) {
+        int size = size1 + size2 - 1;
+        double[] result = new double[size * size];
+        for (int row1 = 0; row1 < size1; row1++) {
+            for (int col1 = 0; col1 < size1; col1++) {
+                double value1 = values1[row1 * size1 + col1];
+                if (value1 == 0) {
+                    continue;
+                }
+                for (int row2 = 0; row2 < size2; row2++) {
+                    for (int col2 = 0; col2 < size2; col2++) {
+                        result[(row1 + row2) * size + col1 + col2] += value1 * values2[row2 * size2 + col2];
+                    }
+                }
             }
         }
 
-        return result5x5;
+        return result;
+    }
+
+    /**
+     * Oblicza pełny splot dwóch masek jednowymiarowych.
+     *
+     * @param values1 wartości maski 1
+     * @param values2 wartości maski 2
+     * @return wartości splotu o długości <tt>values1.length + values2.length - 1</tt>
+     */
+    private static double[] convolve(double[] values1, double[] values2) {
+        double[] result = new double[values1.length + values2.length - 1];
+        for (int i = 0; i < values1.length; i++) {
+            for (int j = 0; j < values2.length; j++) {
+                result[i + j] += values1[i] * values2[j];
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * @param mask maska
+     * @return wartości maski podzielone przez jej dzielnik (tak jak w obiekcie Mat maski)
+     */
+    private static double[] normalizedValues(Mask mask) {
+        int divider = mask.getKernelSize() != 0 ? mask.getKernelSize() : 1;
+        double[] values = mask.getValues().clone();
+        for (int i = 0; i < values.length; i++) {
+            values[i] /= divider;
+        }
+
+        return values;
+    }
+
+    private static double[] toArray(Mat kernel) {
+        float[] values = new float[(int) kernel.total()];
+        kernel.get(0, 0, values);
+
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+
+        return result;
+    }
+
+    private static double maxAbs(double[] values) {
+        double max = 0;
+        for (double value : values) {
+            max = Math.max(max, Math.abs(value));
+        }
+
+        return max;
+    }
+
+    /**
+     * Sprawdza, czy maska jest rozdzielna, i jeśli tak - rozkłada ją na maskę wiersza
+     * i maskę kolumny.
+     * <p>
+     * Maska jest rozdzielna, jeśli ma rząd 1 (wszystkie jej wiersze są wielokrotnościami
+     * jednego wiersza). Rząd jest sprawdzany dokładnie, na liczbach całkowitych (wszystkie
+     * minory 2x2 są zerowe) - zamiast rozkładu SVD, którego wynik jest przybliżony.
+     * Rozkład jest zwracany tylko wtedy, gdy filtracja rozdzielna daje dokładnie ten sam
+     * wynik co filtracja maską dwuwymiarową: wartości maski są całkowite, a dzielnik jest
+     * potęgą dwójki. Wtedy oba czynniki mają wartości całkowite (dzielnik trafia do maski
+     * kolumny), więc dla obrazów 8-bitowych wszystkie sumy częściowe są w typie
+     * <tt>float</tt> dokładne.
+     *
+     * @param values     wartości maski (wierszami)
+     * @param size       wielkość maski
+     * @param kernelSize suma wartości maski (dzielnik; 0 oznacza brak dzielenia)
+     * @return rozkład maski lub <tt>null</tt>, jeśli maska nie jest rozdzielna
+     */
+    public static SeparableKernel separate(double[] values, int size, int kernelSize) {
+        int divider = kernelSize != 0 ? kernelSize : 1;
+        if (Integer.bitCount(Math.abs(divider)) != 1) {
+            return null;
+        }
+
+        long[] integers = new long[values.length];
+        int pivot = -1;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != Math.rint(values[i])) {
+                return null;
+            }
+            integers[i] = (long) values[i];
+            if (pivot < 0 && integers[i] != 0) {
+                pivot = i;
+            }
+        }
+        if (pivot < 0) {
+            return null;
+        }
+
+        int pivotRow = pivot / size;
+        int pivotCol = pivot % size;
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                long minor = integers[row * size + col] * integers[pivot]
+                        - integers[row * size + pivotCol] * integers[pivotRow * size + col];
+                if (minor != 0) {
+                    return null;
+                }
+            }
+        }
+
+        long gcd = 0;
+        for (int col = 0; col < size; col++) {
+            gcd = gcd(gcd, Math.abs(integers[pivotRow * size + col]));
+        }
+
+        double[] rowFactor = new double[size];
+        double[] columnFactor = new double[size];
+        for (int col = 0; col < size; col++) {
+            rowFactor[col] = integers[pivotRow * size + col] / gcd;
+        }
+        for (int row = 0; row < size; row++) {
+            columnFactor[row] = (double) integers[row * size + pivotCol] / rowFactor[pivotCol] / divider;
+        }
+
+        Mat rowKernel = new Mat(1, size, CV_32F);
+        Mat columnKernel = new Mat(size, 1, CV_32F);
+        rowKernel.put(0, 0, rowFactor);
+        columnKernel.put(0, 0, columnFactor);
+        return new SeparableKernel(rowKernel, columnKernel);
+    }
+
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
     }
 }
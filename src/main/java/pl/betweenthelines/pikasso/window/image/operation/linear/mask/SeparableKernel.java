@@ -0,0 +1,29 @@
+package pl.betweenthelines.pikasso.window.image.operation.linear.mask;
+
+import lombok.Getter;
+import org.opencv.core.Mat;
+
+/**
+ * Rozkład maski rozdzielnej na dwie maski jednowymiarowe: maskę wiersza
+ * (stosowaną wzdłuż osi X) i maskę kolumny (wzdłuż osi Y, razem z dzielnikiem maski).
+ * Filtracja obiema maskami kolejno daje ten sam wynik co filtracja maską dwuwymiarową,
+ * a wymaga <tt>2n</tt> zamiast <tt>n*n</tt> mnożeń na piksel.
+ */
+@Getter
+public class SeparableKernel {
+
+    /**
+     * Maska wiersza (1 x n) i maska kolumny (n x 1).
+     */
+    private final Mat rowKernel;
+    private final Mat columnKernel;
+
+    /**
+     * @param rowKernel    maska wiersza
+     * @param columnKernel maska kolumny
+     */
+    public SeparableKernel(Mat rowKernel, Mat columnKernel) {
+        this.rowKernel = rowKernel;
+        this.columnKernel = columnKernel;
+    }
+}
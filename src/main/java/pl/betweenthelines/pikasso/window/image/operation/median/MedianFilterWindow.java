@@ -12,12 +12,12 @@ import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.Core;
-import org.opencv.core.Mat;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.MedianOperation;
+import pl.betweenthelines.pikasso.engine.Operation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 
 import static javafx.geometry.Orientation.VERTICAL;
 import static org.opencv.core.Core.BORDER_CONSTANT;
@@ -52,6 +52,11 @@ public class MedianFilterWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -60,10 +65,9 @@ public class MedianFilterWindow {
     private HBox hBox;
 
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     private Image before;
-    private Image after;
 
     /**
      * Wartość zwielokrotnienia operacji.
@@ -95,11 +99,11 @@ public class MedianFilterWindow {
         times = 1;
 
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -109,10 +113,11 @@ public class MedianFilterWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         Slider timesSlider = new Slider(1, 32, 1);
         timesSlider.setPrefWidth(100);
@@ -143,11 +148,13 @@ public class MedianFilterWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Filtracja medianowa");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -235,20 +242,16 @@ public class MedianFilterWindow {
 
     /**
      * Tworzy podgląd obrazu po operacji.
+     *
+     * @param openedFileData dane o otwartym pliku
      */
-    private void createAfterImageView() {
-        after = applyMask();
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> {
-            try {
-                new HistogramWindow(afterImageView);
-            } catch (Exception e) {
-                ErrorHandler.handleError(e);
-            }
-        });
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation()));
     }
 
     /**
@@ -298,67 +301,18 @@ public class MedianFilterWindow {
      * Przeprowadza operację i odświeża podgląd
      */
     private void reloadPreview() {
-        after = applyMask();
-        afterImageView.setImage(after);
-    }
-
-    /**
-     * Przeprowadza operację medianową utworzoną maską.
-     *
-     * @return obraz wynikowy.
-     */
-    private Image applyMask() {
-        Mat image = ImageUtils.imageToMat(before);
-        Mat destination = new Mat(image.rows(), image.cols(), image.type());
-        image.copyTo(destination);
-
-        if (currentBorderType == BORDER_CONSTANT) {
-            applyMaskWithConstantBorder(image, destination);
-        } else {
-            applyMask(image, destination);
-        }
-
-        return ImageUtils.mat2Image(image);
-    }
-
-    /**
-     * Przeprowadza operację medianową utworzoną maską.
-     *
-     * @param image       obraz wejściowy
-     * @param destination obraz wyjściowy
-     */
-    private void applyMask(Mat image, Mat destination) {
-        for (int i = 0; i < times; i++) {
-            Imgproc.medianBlur(destination, destination, currentKernelSize);
-        }
-        destination.copyTo(image);
-    }
-
-    /**
-     * Przeprowadza operację medianową utworzoną maską (ze stałą wartością
-     * pikseli brzegowych).
-     *
-     * @param image       obraz wejściowy
-     * @param destination obraz wyjściowy
-     */
-    private void applyMaskWithConstantBorder(Mat image, Mat destination) {
-        for (int i = 0; i < times; i++) {
-            Imgproc.medianBlur(destination, destination, currentKernelSize);
-        }
-
-        restoreBorder(image, destination);
+        preview.render(createOperation());
     }
 
     /**
-     * Ustawia wartość pikseli brzegowych z oryginalnego obrazu.
+     * Przeprowadza operację medianową utworzoną maską. Przy stałej wartości
+     * pikseli brzegowych zachowywane są piksele brzegowe oryginalnego obrazu.
      *
-     * @param image       obraz wejściowy
-     * @param destination obraz wyjściowy
+     * @return operacja
      */
-    private void restoreBorder(Mat image, Mat destination) {
-        Mat cropped = destination.submat(1, destination.height() - 1, 1, destination.width() - 1);
-        cropped.convertTo(cropped, image.type());
-        cropped.copyTo(image.submat(1, image.height() - 1, 1, image.width() - 1));
+    private Operation createOperation() {
+        return new MedianOperation(new MedianOperation.Parameters(
+                currentKernelSize, (int) times, currentBorderType == BORDER_CONSTANT));
     }
 
 }
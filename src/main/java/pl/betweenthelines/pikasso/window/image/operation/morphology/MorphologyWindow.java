@@ -13,11 +13,12 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.*;
 import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.MorphologyOperation;
+import pl.betweenthelines.pikasso.engine.Operation;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
-import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
-import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 
 import static javafx.geometry.Orientation.VERTICAL;
 
@@ -58,6 +59,11 @@ public class MorphologyWindow {
     private ImageView beforeImageView;
     private ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    private PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -67,10 +73,9 @@ public class MorphologyWindow {
     private Slider slider;
 
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     private Image before;
-    private Image after;
 
     /**
      * Wartość zwielokrotnienia operacji.
@@ -122,11 +127,11 @@ public class MorphologyWindow {
 
         HBox kSliderHbox = createSliderHBox();
         createBeforeImageView();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -136,10 +141,11 @@ public class MorphologyWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
 
         Slider timesSlider = new Slider(1, 32, 1);
         timesSlider.setPrefWidth(100);
@@ -183,11 +189,13 @@ public class MorphologyWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Wygładzanie");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -291,20 +299,16 @@ public class MorphologyWindow {
 
     /**
      * Tworzy podgląd obrazu po operacji.
+     *
+     * @param openedFileData dane o otwartym pliku
      */
-    private void createAfterImageView() {
-        after = applyOperation();
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
-        afterImageView.setOnMousePressed(event -> {
-            try {
-                new HistogramWindow(afterImageView);
-            } catch (Exception e) {
-                ErrorHandler.handleError(e);
-            }
-        });
+        afterImageView.setOnMousePressed(event -> preview.showHistogram(createOperation()));
     }
 
     /**
@@ -425,36 +429,17 @@ public class MorphologyWindow {
      * Przeprowadza wybraną operację morfologiczną i odświeża podgląd
      */
     private void reloadPreview() {
-        after = applyOperation();
-        afterImageView.setImage(after);
+        preview.render(createOperation());
     }
 
     /**
      * Przeprowadza wybraną przez użytkownika operację.
      *
-     * @return obraz po operacji
-     */
-    private Image applyOperation() {
-        Mat image = ImageUtils.imageToMat(before);
-
-        Mat shape = Imgproc.getStructuringElement(currentShape, new Size(currentSize, currentSize));
-        switch (currentOperation) {
-            case Imgproc.MORPH_ERODE:
-                Imgproc.erode(image, image, shape, new Point(-1, -1), times, currentBorderType, border);
-                break;
-            case Imgproc.MORPH_DILATE:
-                Imgproc.dilate(image, image, shape, new Point(-1, -1), times, currentBorderType, border);
-                break;
-            case Imgproc.MORPH_OPEN:
-            case Imgproc.MORPH_CLOSE:
-                Imgproc.morphologyEx(image, image, currentOperation, shape, new Point(-1, -1), times, currentBorderType, border);
-        }
-
-        if (currentBorderType == Core.BORDER_CONSTANT) {
-            FilteringUtils.handleBorder(image, border);
-        }
-
-        return ImageUtils.mat2Image(image);
+     * @return operacja
+     */
+    private Operation createOperation() {
+        return new MorphologyOperation(new MorphologyOperation.Parameters(
+                currentOperation, currentShape, currentSize, times, currentBorderType, border));
     }
 
 }
@@ -15,18 +15,16 @@ import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.core.Scalar;
 import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.ThinningOperation;
+import pl.betweenthelines.pikasso.engine.ThinningSteps;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
 import pl.betweenthelines.pikasso.exception.ImageIsNotBinaryException;
 import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
-import pl.betweenthelines.pikasso.window.image.operation.linear.FilteringUtils;
-
-import java.util.ArrayList;
-import java.util.List;
+import pl.betweenthelines.pikasso.window.image.SourceMatCache;
 
 import static javafx.geometry.Orientation.VERTICAL;
-import static org.opencv.imgproc.Imgproc.THRESH_BINARY;
 
 /**
  * Klasa reprezentująca okno wykrywania krawędzi w obrazie.
@@ -35,7 +33,6 @@ public class ThinningWindow {
 
     private static final double WHITE = 255;
     private static final double BLACK = 0;
-    private static final double ANY = 150;
 
     /**
      * Wartości wskazujące rodzaj opracji na pikselach brzegowych.
@@ -74,6 +71,11 @@ public class ThinningWindow {
     private Image before;
     private Image after;
 
+    /**
+     * Obraz przed operacją w postaci obiektów Mat.
+     */
+    private SourceMatCache sources;
+
     /**
      * Wskazuje wybrany przez użytkownika krok ścieniania.
      */
@@ -96,14 +98,9 @@ public class ThinningWindow {
     private double background = WHITE;
 
     /**
-     * Lista wzorców do porównania.
+     * Historia kroków skieletyzacji (obrazy kroków są odtwarzane na żądanie).
      */
-    private List<double[]> patterns;
-
-    /**
-     * Lista obrazów w kolejnych krokach skieletyzacji.
-     */
-    List<Image> stepImages;
+    ThinningSteps steps;
 
     /**
      * Konstruktor tworzący układ okna.
@@ -112,8 +109,8 @@ public class ThinningWindow {
      */
     public ThinningWindow(FileData openedFileData) throws ImageIsNotBinaryException {
         before = ImageUtils.binarize(openedFileData.getImageView().getImage());
+        sources = openedFileData.getSources();
         border = new Scalar(255, 255, 255, 255);
-        patterns = BlackObjectPatterns.getPATTERNS();
 
         currentBorderType = Core.BORDER_CONSTANT;
 
@@ -185,8 +182,8 @@ public class ThinningWindow {
      * @param openedFileData dane o otwartym pliku.
      */
     private void saveAndClose(FileData openedFileData) {
-        if (stepImages != null && stepImages.size() > step) {
-            openedFileData.setImage(stepImages.get(step));
+        if (steps != null && steps.size() > step) {
+            openedFileData.setImage(getStepImage(step));
         } else {
             openedFileData.setImage(after);
         }
@@ -207,8 +204,8 @@ public class ThinningWindow {
             stepValue.setText(String.valueOf(newValue.intValue()));
             step = newValue.intValue() - 1;
 
-            if (afterImageView != null && stepImages.size() > step) {
-                afterImageView.setImage(stepImages.get(step));
+            if (afterImageView != null && steps != null && steps.size() > step) {
+                afterImageView.setImage(getStepImage(step));
             }
         });
     }
@@ -307,11 +304,9 @@ public class ThinningWindow {
         if (selected == BLACK) {
             object = BLACK;
             background = WHITE;
-            patterns = BlackObjectPatterns.getPATTERNS();
         } else {
             object = WHITE;
             background = BLACK;
-            patterns = WhiteObjectPatterns.getPATTERNS();
         }
     }
 
@@ -359,144 +354,44 @@ public class ThinningWindow {
     }
 
     /**
-     * Czyści istniejącą listę obrazów w kolejnych krokach, binaryzuje obraz,
-     * przeprowadza operację ścieniania i odświeża podgląd.
+     * Binaryzuje obraz, przeprowadza operację ścieniania (zastępując poprzednią
+     * historię kroków) i odświeża podgląd.
      *
      * @return ścieniony obraz
      * @throws ImageIsNotBinaryException jeśli obrazu nie udało się zbinaryzować
      */
     private Image applyThinning() throws ImageIsNotBinaryException {
-        stepImages = new ArrayList<>();
-        Mat image = ImageUtils.imageToMat(before);
-        ImageUtils.binarize(image);
+        Mat image = sources.getGray();
+        Imgproc.threshold(image, image, 0, 255, Imgproc.THRESH_BINARY);
 
-        applyThinning(image);
+        ThinningOperation thinning = new ThinningOperation(new ThinningOperation.Parameters(object == BLACK, border));
+        steps = thinning.thinSteps(image);
+        image.release();
         refreshSlider();
 
-        return ImageUtils.mat2Image(image);
+        return getStepImage(steps.size() - 1);
     }
 
     /**
-     * Przeprowadza operację ścieniania klasycznym algorytmem szkieletyzacji.
+     * Odtwarza obraz wybranego kroku ścieniania.
      *
-     * @param image obraz do ścieniania
-     * @throws ImageIsNotBinaryException jeśli obrazu nie udało się zbinaryzować
+     * @param index indeks kroku (od 0)
+     * @return obraz kroku
      */
-    private void applyThinning(Mat image) throws ImageIsNotBinaryException {
-        Mat copy = new Mat();
-        image.copyTo(copy);
-
-        boolean remain = true;
-        while (remain) {
-            remain = false;
-            for (int j = 1; j < 8; j += 2) {
-                for (int col = 1; col < image.cols() - 1; col++) {
-                    for (int row = 1; row < image.rows() - 1; row++) {
-                        double p = image.get(row, col)[0];
-                        if (p != BLACK && p != WHITE) {
-                            throw new ImageIsNotBinaryException();
-                        }
-
-                        double jNeighbour = getNeighbour(image, j, col, row);
-                        if (p == object && jNeighbour == background) {
-                            if (!anyPatternMatches(image, col, row)) {
-                                copy.put(row, col, object);
-                            } else {
-                                copy.put(row, col, background);
-                                remain = true;
-                            }
-                        }
-                    }
-                }
-            }
+    private Image getStepImage(int index) {
+        Mat step = steps.getStep(index);
+        Image image = ImageUtils.mat2Image(step);
+        step.release();
 
-            FilteringUtils.handleBorder(copy, border);
-            copy.copyTo(image);
-            stepImages.add(ImageUtils.mat2Image(image));
-        }
+        return image;
     }
 
     /**
      * Odświeża slider do przesuwania kroków szkieletyzacji.
      */
     private void refreshSlider() {
-        stepSlider.setMax(stepImages.size());
-        stepSlider.setValue(stepImages.size());
+        stepSlider.setMax(steps.size());
+        stepSlider.setValue(steps.size());
         stepSlider.setDisable(false);
     }
-
-    /**
-     * Sprawdza, czy któryś z wzorców pasuje do sąsiedztwa obecnego piksela.
-     *
-     * @param image obraz
-     * @param col   kolumna piksela
-     * @param row   wiersz piksela
-     * @return <tt>true</tt> jeśli co najmniej jeden wzorzec pasuje.
-     */
-    private boolean anyPatternMatches(Mat image, int col, int row) {
-        for (double[] pattern : patterns) {
-            if (patternMatches(pattern, image, col, row)) {
-                return true;
-            }
-        }
-
-        return false;
-    }
-
-    /**
-     * Sprawdza, czy wzorzec pasuje do sąsiedztwa piksela
-     *
-     * @param pattern wzorzec do sprawdzenia
-     * @param image   obraz
-     * @param col     kolumna piksela
-     * @param row     wiersz piksela
-     * @return <tt>true</tt> jeśli wzorzec pasuje.
-     */
-    private boolean patternMatches(double[] pattern, Mat image, int col, int row) {
-        for (int i = 0; i < 9; i++) {
-            if (pattern[i] == ANY) continue;
-            double value = getNeighbour(image, i, col, row);
-
-            if (pattern[i] != value) {
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    /**
-     * Pobiera wartość sąsiedniego piksela o podanym indeksie.
-     *
-     * @param image          obraz
-     * @param neighbourIndex indeks sąsiada
-     * @param col            kolumna piksela
-     * @param row            wiersz piksela
-     * @return wartość sąsiedniego piksela
-     */
-    private double getNeighbour(Mat image, int neighbourIndex, int col, int row) {
-        switch (neighbourIndex) {
-            case 0:
-                return image.get(row - 1, col - 1)[0];
-            case 1:
-                return image.get(row - 1, col)[0];
-            case 2:
-                return image.get(row - 1, col + 1)[0];
-            case 3:
-                return image.get(row, col - 1)[0];
-            case 4:
-                return image.get(row, col)[0];
-            case 5:
-                return image.get(row, col + 1)[0];
-            case 6:
-                return image.get(row + 1, col - 1)[0];
-            case 7:
-                return image.get(row + 1, col)[0];
-            case 8:
-                return image.get(row + 1, col + 1)[0];
-        }
-
-        throw new IllegalArgumentException();
-    }
-
 }
@@ -12,9 +12,7 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
-import org.opencv.core.Core;
-import org.opencv.core.Mat;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.NegationOperation;
 import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.image.FileData;
 
@@ -170,12 +168,7 @@ public class NegationWindow {
      * @return zanegowany obraz
      */
     private Image negation(Image before) {
-        Mat inImage = ImageUtils.imageToMat(before);
-        Mat outImage = new Mat();
-        Imgproc.cvtColor(inImage, outImage, Imgproc.COLOR_BGR2GRAY);
-        Core.bitwise_not(outImage, outImage);
-
-        return ImageUtils.mat2Image(outImage);
+        return ImageUtils.apply(before, new NegationOperation());
     }
 
 }
@@ -1,6 +1,5 @@
 package pl.betweenthelines.pikasso.window.image.operation.onearg;
 
-import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -9,15 +8,15 @@ import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import pl.betweenthelines.pikasso.engine.Operation;
+import pl.betweenthelines.pikasso.engine.PosterizeOperation;
 import pl.betweenthelines.pikasso.window.image.FileData;
-
-import java.awt.image.BufferedImage;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 
 /**
  * Klasa reprezentująca okno posteryzacji.
@@ -50,6 +49,11 @@ public class PosterizeWindow {
     ImageView beforeImageView;
     ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -58,10 +62,9 @@ public class PosterizeWindow {
     HBox hBox;
 
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     Image before;
-    Image after;
 
     /**
      * Obecnie wybrana przez użytkownika liczba poziomów jasności.
@@ -78,12 +81,11 @@ public class PosterizeWindow {
         createBeforeImageView();
 
         currentLevel = DEFAULT;
-        after = posterize();
-        createAfterImageView();
+        createAfterImageView(openedFileData);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -97,6 +99,7 @@ public class PosterizeWindow {
             closeWindow();
         });
         Button save = new Button("Zachowaj");
+        save.disableProperty().bind(preview.pendingProperty());
         save.setOnAction(event -> saveAndClose(openedFileData));
         createButtonsArea(value, slider, cancel, save);
 
@@ -104,11 +107,13 @@ public class PosterizeWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Posteryzacja");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -154,8 +159,10 @@ public class PosterizeWindow {
      * @param openedFileData informacje o otwartym obrazie
      */
     private void saveAndClose(FileData openedFileData) {
-        openedFileData.setImage(after);
-        closeWindow();
+        preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
+            closeWindow();
+        });
     }
 
     /**
@@ -205,9 +212,12 @@ public class PosterizeWindow {
 
     /**
      * Tworzy podgląd obrazu po operacji.
+     *
+     * @param openedFileData dane o otwartym pliku
      */
-    private void createAfterImageView() {
-        afterImageView = new ImageView(after);
+    private void createAfterImageView(FileData openedFileData) {
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
@@ -227,13 +237,11 @@ public class PosterizeWindow {
      * Dokonuje posteryzacji i odświeża podgląd.
      */
     private void reloadPreview() {
-        after = posterize();
-        afterImageView.setImage(after);
+        preview.render(createOperation());
     }
 
     /**
-     * Dokonuje posteryzacji.
-     * Obraz jest zamieniany na obiekt <tt>BufferedImage</tt>, po czym obliczane są:
+     * Dokonuje posteryzacji. Obliczane są:
      * <ul>
      *     <li>multiplier - wartość pierwszego wyjściowego poziomu mniejszego od zera</li>
      *     <li>divider - wartość dzieląca piksele (mniejsza od niego wartość zostanie zmieniona na poziom mniejszy, większa - na większy</li>
@@ -245,71 +253,12 @@ public class PosterizeWindow {
      *      <li>wartość większa/równa niż 170 zostanie zamieniona na 255</li>
      * </ul>
      * <p>
-     * Zamiana jest przeprowadzana dla każdego piksela.
-     *
-     * @return obraz o zadanej liczbie poziomów szarości.
-     */
-    private Image posterize() {
-        BufferedImage resultImage = new BufferedImage((int) before.getWidth(), (int) before.getHeight(), BufferedImage.TYPE_INT_RGB);
-        PixelReader pixelReader = before.getPixelReader();
-
-        int multiplier = 255 / (int) (currentLevel - 1);
-        int divider = 255 / (int) currentLevel;
-
-        for (int y = 0; y < before.getHeight(); y++) {
-            for (int x = 0; x < before.getWidth(); x++) {
-                processPixel(resultImage, pixelReader, multiplier, divider, y, x);
-            }
-        }
-
-        return SwingFXUtils.toFXImage(resultImage, null);
-    }
-
-    /**
-     * Przeprowadza obliczenia na jednym pikselu. Pobiera wartość piksela, odczytuje
-     * z niej poziomy jasności poszczególnych kanałów, dokonuje obliczeń dla każdego
-     * kanału osobno, po czym zapisuje wartość piksela w obrazie wynikowym.
+     * Zamiana jest przeprowadzana dla każdego kanału każdego piksela.
      *
-     * @param resultImage obraz wynikowy
-     * @param pixelReader do odczytu piksela
-     * @param multiplier  mnożnik
-     * @param divider     dzielnik
-     * @param y           współrzędna y
-     * @param x           współrzędna x
+     * @return operacja
      */
-    private void processPixel(BufferedImage resultImage, PixelReader pixelReader, int multiplier, int divider, int y, int x) {
-        int argb = pixelReader.getArgb(x, y);
-        int a = (0xff & (argb >> 24));
-        int r = (0xff & (argb >> 16));
-        int g = (0xff & (argb >> 8));
-        int b = (0xff & argb);
-
-        int newR = calculateLevel(r, multiplier, divider);
-        int newG = calculateLevel(g, multiplier, divider);
-        int newB = calculateLevel(b, multiplier, divider);
-
-        int newArgb = (a << 24) | (newR << 16) | (newG << 8) | newB;
-
-        resultImage.setRGB(x, y, newArgb);
-    }
-
-    /**
-     * Przeprowadza obliczenia dla podanego poziomu jasności.
-     *
-     * @param oldLevel   wejściowy poziom jasności
-     * @param multiplier mnożnik
-     * @param divider    dzielnik
-     * @return wyjściowy poziom szarości
-     */
-    private int calculateLevel(int oldLevel, int multiplier, int divider) {
-        int newLevel = 0;
-
-        while (oldLevel > divider) {
-            oldLevel -= multiplier;
-            newLevel += multiplier;
-        }
-
-        return Math.min(newLevel, 255);
+    private Operation createOperation() {
+        return new PosterizeOperation(new PosterizeOperation.Parameters((int) currentLevel));
     }
 
 }
@@ -1,6 +1,5 @@
 package pl.betweenthelines.pikasso.window.image.operation.onearg;
 
-import javafx.embed.swing.SwingFXUtils;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Scene;
@@ -9,17 +8,17 @@ import javafx.scene.control.Label;
 import javafx.scene.control.Slider;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.image.PixelReader;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.controlsfx.control.RangeSlider;
+import pl.betweenthelines.pikasso.engine.Operation;
+import pl.betweenthelines.pikasso.engine.StretchToRangeOperation;
 import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.image.FileData;
-
-import java.awt.image.BufferedImage;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 
 /**
  * Klasa reprezentująca okno rozciągania poziomów jasności
@@ -48,6 +47,11 @@ public class StretchToRangeWindow {
     ImageView beforeImageView;
     ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -56,10 +60,9 @@ public class StretchToRangeWindow {
     HBox hBox;
 
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     Image before;
-    Image after;
 
     /**
      * Slidery do wyboru wartości poziomów jasności.
@@ -92,15 +95,15 @@ public class StretchToRangeWindow {
         });
         HBox backgroundHBox = new HBox(backgroundLabel, backgroundSlider, backgroundValue);
 
-        after = stretch();
-        afterImageView = new ImageView(after);
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -110,10 +113,11 @@ public class StretchToRangeWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
         HBox buttons = new HBox(cancel, save);
         buttons.setPadding(new Insets(13, 10, 10, 0));
         buttons.setAlignment(Pos.BOTTOM_RIGHT);
@@ -129,11 +133,13 @@ public class StretchToRangeWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Rozciąganie do zadanych poziomów");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -235,75 +241,20 @@ public class StretchToRangeWindow {
      * Wykonuje operację i odświeża podgląd
      */
     private void reloadPreview() {
-        after = stretch();
-        afterImageView.setImage(after);
+        preview.render(createOperation());
     }
 
     /**
      * Dokonuje rozciągnięcia poziomów szarości do zadanych przez użytkownika.
-     * Obraz jest zamieniany na obiekt <tt>BufferedImage</tt>, po czym  dla każdego
-     * piksela obliczany jest nowy poziom szarości.
-     *
-     * @return obraz o zadanych poziomach szarości
-     */
-    private Image stretch() {
-        BufferedImage resultImage = new BufferedImage((int) before.getWidth(), (int) before.getHeight(), BufferedImage.TYPE_INT_RGB);
-        PixelReader pixelReader = before.getPixelReader();
-
-        for (int y = 0; y < before.getHeight(); y++) {
-            for (int x = 0; x < before.getWidth(); x++) {
-                processOnePixel(resultImage, pixelReader, y, x);
-            }
-        }
-
-        return SwingFXUtils.toFXImage(resultImage, null);
-    }
-
-    /**
-     * Przeprowadza obliczenia na jednym pikselu. Pobiera wartość piksela, odczytuje
-     * z niej poziomy jasności poszczególnych kanałów, dokonuje obliczeń dla każdego
-     * kanału osobno, po czym zapisuje wartość piksela w obrazie wynikowym.
+     * Dla każdego poziomu obliczany jest nowy poziom szarości.
      *
-     * @param resultImage obraz wynikowy
-     * @param pixelReader do odczytu piksela
-     * @param y           współrzędna y
-     * @param x           współrzędna x
+     * @return operacja
      */
-    private void processOnePixel(BufferedImage resultImage, PixelReader pixelReader, int y, int x) {
-        int argb = pixelReader.getArgb(x, y);
-        int a = (0xff & (argb >> 24));
-        int r = (0xff & (argb >> 16));
-        int g = (0xff & (argb >> 8));
-        int b = (0xff & argb);
-
-        int newR = calculateLevel(r);
-        int newG = calculateLevel(g);
-        int newB = calculateLevel(b);
-
-        int newArgb = (a << 24) | (newR << 16) | (newG << 8) | newB;
-
-        resultImage.setRGB(x, y, newArgb);
-    }
-
-    /**
-     * Pobiera wybrane przez użytkownika wartości i oblicza nowy poziom
-     * szarości dla piksela o podenym poziomie p.
-     *
-     * @param p wejściowy poziom szarości
-     * @return wyjściowy poziom szarości
-     */
-    private int calculateLevel(int p) {
-        double p1 = rangeP.getLowValue();
-        double p2 = rangeP.getHighValue();
-        double q3 = rangeQ.getLowValue();
-        double q4 = rangeQ.getHighValue();
-        double q5 = backgroundSlider.getValue();
-
-        if (p < p1 || p > p2) {
-            return (int) q5;
-        }
-
-        return (int) ((p - p1) * ((q4 - q3) / (p2 - p1)) + q3);
+    private Operation createOperation() {
+        return new StretchToRangeOperation(new StretchToRangeOperation.Parameters(
+                rangeP.getLowValue(), rangeP.getHighValue(),
+                rangeQ.getLowValue(), rangeQ.getHighValue(),
+                backgroundSlider.getValue()));
     }
 
 }
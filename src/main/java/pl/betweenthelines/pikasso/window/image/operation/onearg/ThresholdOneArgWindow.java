@@ -14,10 +14,11 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
-import org.opencv.core.Mat;
-import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.engine.Operation;
+import pl.betweenthelines.pikasso.engine.ThresholdOperation;
 import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.image.FileData;
+import pl.betweenthelines.pikasso.window.image.operation.PreviewRenderer;
 
 /**
  * Reprezentuje okno progowania.
@@ -45,6 +46,11 @@ public class ThresholdOneArgWindow {
     ImageView beforeImageView;
     ImageView afterImageView;
 
+    /**
+     * Obliczanie podglądu obrazu po operacji w tle.
+     */
+    PreviewRenderer preview;
+
     /**
      * Elementy okna.
      */
@@ -53,10 +59,9 @@ public class ThresholdOneArgWindow {
     HBox hBox;
 
     /**
-     * Obrazy przed i po operacji.
+     * Obraz przed operacją.
      */
     Image before;
-    Image after;
 
     /**
      * Wybrany przez użytkownika poziom progowania.
@@ -86,15 +91,15 @@ public class ThresholdOneArgWindow {
         beforeImageView.setFitHeight(400);
 
         currentLevel = 0;
-        after = threshold();
-        afterImageView = new ImageView(after);
+        afterImageView = new ImageView(before);
+        preview = new PreviewRenderer(openedFileData.getSources(), afterImageView);
         afterImageView.setPreserveRatio(true);
         afterImageView.setFitWidth(400);
         afterImageView.setFitHeight(400);
 
         HBox beforeImageViewHbox = new HBox(beforeImageView);
         beforeImageViewHbox.setAlignment(Pos.CENTER);
-        HBox afterImageViewHbox = new HBox(afterImageView);
+        HBox afterImageViewHbox = new HBox(preview.getPane());
         afterImageViewHbox.setAlignment(Pos.CENTER);
         hBox = new HBox(beforeImageViewHbox, afterImageViewHbox);
         hBox.setAlignment(Pos.CENTER);
@@ -110,10 +115,11 @@ public class ThresholdOneArgWindow {
             stage.close();
         });
         Button save = new Button("Zachowaj");
-        save.setOnAction(event -> {
-            openedFileData.setImage(after);
+        save.disableProperty().bind(preview.pendingProperty());
+        save.setOnAction(event -> preview.apply(createOperation(), result -> {
+            openedFileData.setImage(result);
             stage.close();
-        });
+        }));
         HBox buttons = new HBox(preserveGray, invert, slider, value, cancel, save);
         buttons.setPadding(new Insets(13, 10, 10, 0));
         buttons.setSpacing(15);
@@ -125,11 +131,13 @@ public class ThresholdOneArgWindow {
 
         stage = new Stage();
         stage.initModality(Modality.APPLICATION_MODAL);
+        stage.setOnHidden(event -> preview.cancel());
 
         stage.setScene(scene);
         stage.getIcons().add(new Image("PIKAsso-icon.jpg"));
         stage.setTitle("Progowanie");
         save.requestFocus();
+        reloadPreview();
         stage.showAndWait();
     }
 
@@ -205,29 +213,19 @@ public class ThresholdOneArgWindow {
      * Dokonuje posteryzacji i odświeża podgląd.
      */
     private void reloadPreview() {
-        after = threshold();
-        afterImageView.setImage(after);
+        preview.render(createOperation());
     }
 
     /**
      * Dokonuje progowania.
-     * Obraz jest zamieniany na obiekt Mat, sprowadzany do poziomów szarości
-     * i wykonywana jest operacja threshold z biblioteki openCV z parametrami
-     * zadanymi przez użytkownika.
+     * Obraz jest sprowadzany do poziomów szarości i wykonywana jest operacja
+     * threshold z biblioteki openCV z parametrami zadanymi przez użytkownika.
      *
-     * @return obraz po operacji
-     */
-    private Image threshold() {
-        Mat inImage = ImageUtils.imageToMat(before);
-        Mat outImage = new Mat();
-        Imgproc.cvtColor(inImage, outImage, Imgproc.COLOR_BGR2GRAY);
-        if (preserveGrayscale) {
-            Imgproc.threshold(outImage, outImage, currentLevel, MAX_LEVEL, inverted ? Imgproc.THRESH_TOZERO_INV : Imgproc.THRESH_TOZERO);
-        } else {
-            Imgproc.threshold(outImage, outImage, currentLevel, MAX_LEVEL, inverted ? Imgproc.THRESH_BINARY_INV : Imgproc.THRESH_BINARY);
-        }
-
-        return ImageUtils.mat2Image(outImage);
+     * @return operacja
+     */
+    private Operation createOperation() {
+        return new ThresholdOperation(new ThresholdOperation.Parameters(
+                currentLevel, inverted, preserveGrayscale));
     }
 
 }
@@ -15,23 +15,14 @@ import javafx.scene.web.WebView;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfPoint;
-import org.opencv.core.MatOfPoint2f;
-import org.opencv.core.Point;
-import org.opencv.imgproc.Imgproc;
 import org.opencv.imgproc.Moments;
+import pl.betweenthelines.pikasso.engine.ShapeDescriptors;
 import pl.betweenthelines.pikasso.error.ErrorHandler;
 import pl.betweenthelines.pikasso.exception.ImageIsNotBinaryException;
 import pl.betweenthelines.pikasso.utils.ImageUtils;
 import pl.betweenthelines.pikasso.window.HistogramWindow;
 import pl.betweenthelines.pikasso.window.image.FileData;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import static java.lang.Math.PI;
-import static java.lang.Math.sqrt;
-
 public class ShapeDescriptorsWindow {
 
     /**
@@ -44,11 +35,6 @@ public class ShapeDescriptorsWindow {
      */
     private static final int MINIMAL_HEIGHT = 550;
 
-    /**
-     * Indeks obiektu na liście konturów.
-     */
-    public static final int OBJECT_INDEX = 1;
-
     /**
      * Podgląd obrazu.
      */
@@ -70,88 +56,6 @@ public class ShapeDescriptorsWindow {
     private VBox normalizedMomentDescriptorsVBox;
     private VBox momentInvariantsDescriptorsVBox;
 
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Punkt środka ciężkości obiektu.
-     */
-    private Point center;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Pole powierzchni obiektu.
-     */
-    private double s;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Obwód obiektu.
-     */
-    private double l;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Minimalna odległość pomiędzy konturem a punktem środka ciężkości.
-     */
-    private double contourToCenterDistanceMin;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Maksymalna odległość pomiędzy konturem a punktem środka ciężkości.
-     */
-    private double contourToCenterDistanceMax;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Suma odległości pomiędzy wszystkimi punktami konturu obiektu
-     * a punktem środka ciężkości.
-     */
-    private double sumOfContourToCenterDistances;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Suma kwadratów odległości pomiędzy wszystkimi punktami konturu
-     * obiektu a punktem środka ciężkości.
-     */
-    private double sumOfContourToCenterDistancePowers;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Suma kwadratów odległości pomiędzy wszystkimi punktami konturu
-     * obiektu a punktem środka ciężkości.
-     */
-    private double sumOfPointToCenterDistances;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Suma minimalnych odległości pomiędzy każdym punktem obiektu
-     * a jego konturem.
-     */
-    private double minimumPointToContourDistancesSum;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Maksymalny gabaryt obiektu.
-     */
-    private double maxDimension;
-
-    /**
-     * Wartość pomocnicza przy wyliczaniu współczynników kształtu:
-     * <p>
-     * Liczba punktów konturu obiektu.
-     */
-    private double contourPointCount;
-
     /**
      * Konstruktor tworzący układ okna.
      *
@@ -251,14 +155,15 @@ public class ShapeDescriptorsWindow {
         image = ImageUtils.mat2Image(mat);
         imageView.setImage(image);
 
-        Moments moments = Imgproc.moments(mat, true);
+        ShapeDescriptors descriptors = new ShapeDescriptors(mat);
+        mat.release();
+
+        Moments moments = descriptors.getMoments();
         fillMoments(moments);
         fillCentralMoments(moments);
         fillNormalizedMoments(moments);
-        fillHuMoments(moments);
-
-        calculateContoursAndHelperValues(mat, moments);
-        fillShapeFeatures();
+        fillHuMoments(descriptors.getHuMoments());
+        fillShapeFeatures(descriptors.getShapeFeatures());
     }
 
     /**
@@ -321,169 +226,38 @@ public class ShapeDescriptorsWindow {
     /**
      * Wyświetla na ekranie wartości niezmienników momentowych
      *
-     * @param moments wartości momentów
+     * @param hu wartości niezmienników momentowych
      */
-    private void fillHuMoments(Moments moments) {
-        Mat hu = new Mat();
-        Imgproc.HuMoments(moments, hu);
-
+    private void fillHuMoments(double[] hu) {
         WebView m = new WebView();
-        m.getEngine().loadContent("M1 = " + hu.get(0, 0)[0] + "<br/>" +
-                "M2 = " + hu.get(1, 0)[0] + "<br/>" +
-                "M3 = " + hu.get(2, 0)[0] + "<br/>" +
-                "M4 = " + hu.get(3, 0)[0] + "<br/>" +
-                "M5 = " + hu.get(4, 0)[0] + "<br/>" +
-                "M6 = " + hu.get(5, 0)[0] + "<br/>" +
-                "M7 = " + hu.get(6, 0)[0]);
+        m.getEngine().loadContent("M1 = " + hu[0] + "<br/>" +
+                "M2 = " + hu[1] + "<br/>" +
+                "M3 = " + hu[2] + "<br/>" +
+                "M4 = " + hu[3] + "<br/>" +
+                "M5 = " + hu[4] + "<br/>" +
+                "M6 = " + hu[5] + "<br/>" +
+                "M7 = " + hu[6]);
 
         momentInvariantsDescriptorsVBox.getChildren().add(m);
     }
 
-    /**
-     * Znajduje punkt środka ciężkości obiektu, wyznacza linię konturu,
-     * na jej podstawie oblicza obwód i pole obiektu.
-     * Inicjalizuje i oblicza wartości zmiennych pomocniczych potrzebnych
-     * do obliczeń współczynników kształtu.
-     *
-     * @param mat     obraz
-     * @param moments wartości momentów
-     */
-    private void calculateContoursAndHelperValues(Mat mat, Moments moments) throws ImageIsNotBinaryException {
-        double cx = moments.m10 / moments.m00;
-        double cy = moments.m01 / moments.m00;
-        center = new Point(cx, cy);
-
-        List<MatOfPoint> contours = new ArrayList<>();
-        Mat hierarchy = new Mat();
-        Imgproc.findContours(mat, contours, hierarchy, Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
-        if (contours.size() < 2) {
-            throw new ImageIsNotBinaryException();
-        }
-
-        MatOfPoint objectContour = contours.get(OBJECT_INDEX);
-        MatOfPoint2f objectContour2f = new MatOfPoint2f(objectContour.toArray());
-        s = Imgproc.contourArea(objectContour);
-        l = Imgproc.arcLength(objectContour2f, true);
-
-        initializeHelperValues(objectContour);
-        calculateHelperValues(mat, objectContour, objectContour2f);
-    }
-
-    /**
-     * Inicjalizuje wartości zmiennych pomocniczych potrzebnych
-     * do obliczeń współczynników kształtu.
-     *
-     * @param objectContour kontur obiektu
-     */
-    private void initializeHelperValues(MatOfPoint objectContour) {
-        contourToCenterDistanceMin = l;
-        contourToCenterDistanceMax = 0;
-        sumOfContourToCenterDistances = 0;
-        sumOfContourToCenterDistancePowers = 0;
-        sumOfPointToCenterDistances = 0;
-        minimumPointToContourDistancesSum = 0;
-        maxDimension = 0;
-        contourPointCount = objectContour.toList().size();
-    }
-
-    /**
-     * Oblicza wartości zmiennych pomocniczych potrzebnych do obliczeń współczynników
-     * kształtu.
-     * <p>
-     * Przechodzi przez wszystkie punkty obrazu i jeśli znajduje się w obiekcie, oblicza
-     * jego odległość od środka ciężkości obiektu oraz najmniejszą odległość od konturu.
-     * <p>
-     * Następnie wylicza odległości od punktu środka ciężkości obiektu dla każdego punktu
-     * konturu. Wyliczone w ten sposób wartości wykorzystuje do uzupełnienia wartości
-     * pomocniczych.
-     *
-     * @param mat             obraz
-     * @param objectContour   kontur
-     * @param objectContour2f kontur w formacie 2f
-     */
-    private void calculateHelperValues(Mat mat, MatOfPoint objectContour, MatOfPoint2f objectContour2f) {
-        for (int col = 0; col < mat.cols(); col++) {
-            for (int row = 0; row < mat.rows(); row++) {
-                Point point = new Point(row, col);
-                double result = Imgproc.pointPolygonTest(objectContour2f, point, false);
-                if (result >= 0) {
-                    double distance = getDistance(center, point);
-                    sumOfPointToCenterDistances += distance;
-
-                    double minimumDistanceToContour = l;
-                    for (Point countourPoint : objectContour.toList()) {
-                        double contourDistance = getDistance(point, countourPoint);
-                        if (contourDistance < minimumDistanceToContour) {
-                            minimumDistanceToContour = contourDistance;
-                        }
-                    }
-                    minimumPointToContourDistancesSum += minimumDistanceToContour;
-                }
-            }
-        }
-
-        for (Point point : objectContour.toList()) {
-            double distance = getDistance(center, point);
-
-            if (distance > contourToCenterDistanceMax) {
-                contourToCenterDistanceMax = distance;
-            }
-            if (distance < contourToCenterDistanceMin) {
-                contourToCenterDistanceMax = distance;
-            }
-
-            sumOfContourToCenterDistances += distance;
-            sumOfContourToCenterDistancePowers += distance * distance;
-
-            for (Point point2 : objectContour.toList()) {
-                double distanceFromPoint2 = getDistance(point, point2);
-
-                if (distanceFromPoint2 > maxDimension) {
-                    maxDimension = distanceFromPoint2;
-                }
-            }
-        }
-    }
-
-    /**
-     * Oblicza odległość między podanymi punktami.
-     *
-     * @param pointA punkt A
-     * @param pointB punkt B
-     * @return odległość między podanymi punktami
-     */
-    private double getDistance(Point pointA, Point pointB) {
-        double xDifference = pointA.x - pointB.x;
-        double yDifference = pointA.y - pointB.y;
-        return sqrt(xDifference * xDifference + yDifference * yDifference);
-    }
-
     /**
      * Wyświetla wartości współczynników kształtu na ekranie.
+     *
+     * @param w wartości współczynników kształtu W1 - W9
      */
-    private void fillShapeFeatures() {
-        double w1 = 2 * sqrt(s / PI);
-        double w2 = l / PI;
-        double w3 = (l / (2 * sqrt(PI * s))) - 1;
-        double w4 = s / (sqrt(2 * PI * sumOfPointToCenterDistances));
-        double w5 = (s * s * s) / (minimumPointToContourDistancesSum * minimumPointToContourDistancesSum);
-        double w6 = sqrt((sumOfContourToCenterDistances * sumOfContourToCenterDistances)
-                / (contourPointCount * sumOfContourToCenterDistancePowers - 1));
-        double w7 = contourToCenterDistanceMin / contourToCenterDistanceMax;
-        double w8 = maxDimension / l;
-        double w9 = (2 * sqrt(PI * s)) / l;
-
-        WebView w = new WebView();
-        w.getEngine().loadContent("W1 = " + w1 + "<br/>" +
-                "W2 = " + w2 + "<br/>" +
-                "W3 = " + w3 + "<br/>" +
-                "W4 = " + w4 + "<br/>" +
-                "W5 = " + w5 + "<br/>" +
-                "W6 = " + w6 + "<br/>" +
-                "W7 = " + w7 + "<br/>" +
-                "W8 = " + w8 + "<br/>" +
-                "W9 = " + w9
+    private void fillShapeFeatures(double[] w) {
+        WebView webView = new WebView();
+        webView.getEngine().loadContent("W1 = " + w[0] + "<br/>" +
+                "W2 = " + w[1] + "<br/>" +
+                "W3 = " + w[2] + "<br/>" +
+                "W4 = " + w[3] + "<br/>" +
+                "W5 = " + w[4] + "<br/>" +
+                "W6 = " + w[5] + "<br/>" +
+                "W7 = " + w[6] + "<br/>" +
+                "W8 = " + w[7] + "<br/>" +
+                "W9 = " + w[8]
         );
-        shapeFeaturesVBox.getChildren().add(w);
+        shapeFeaturesVBox.getChildren().add(webView);
     }
 }
@@ -0,0 +1,62 @@
+package pl.betweenthelines.pikasso.batch;
+
+import nu.pattern.OpenCV;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class PipelineTest {
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void shouldParseStepsWithArgumentsAndRepetitions() {
+        Pipeline pipeline = Pipeline.parse("median 5x5 ×2 → sobel XY -> scale METHOD_3 | threshold 128");
+
+        List<PipelineStep> steps = pipeline.getSteps();
+        Assert.assertEquals(4, steps.size());
+        Assert.assertEquals("median 5x5", steps.get(0).getDescription());
+        Assert.assertEquals(2, steps.get(0).getTimes());
+        Assert.assertEquals("sobel XY", steps.get(1).getDescription());
+        Assert.assertEquals(1, steps.get(1).getTimes());
+        Assert.assertEquals("median 5x5 x2 -> sobel XY -> scale METHOD_3 -> threshold 128", pipeline.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownOperation() {
+        Pipeline.parse("median 3 -> blur 3");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectIncorrectArguments() {
+        Pipeline.parse("median 4x4");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyPipeline() {
+        Pipeline.parse(" -> ");
+    }
+
+    @Test
+    public void shouldApplyStepsInOrder() {
+        Mat image = new Mat(8, 8, CvType.CV_8UC4, new Scalar(100, 100, 100, 255));
+
+        Mat result = Pipeline.parse("threshold 50 -> negate").apply(image);
+
+        Assert.assertEquals(1, result.channels());
+        Assert.assertEquals(0, result.get(4, 4)[0], 0);
+        Assert.assertEquals(4, image.channels());
+        Assert.assertEquals(100, image.get(4, 4)[0], 0);
+    }
+}
@@ -0,0 +1,76 @@
+package pl.betweenthelines.pikasso.engine;
+
+import nu.pattern.OpenCV;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+@RunWith(JUnit4.class)
+public class MatScopeTest {
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void shouldReleaseTrackedMatsAndKeepResult() {
+        Mat source = new Mat(4, 4, CvType.CV_8UC1);
+        Mat temporary;
+        Mat result;
+        try (MatScope scope = new MatScope()) {
+            temporary = scope.track(new Mat(4, 4, CvType.CV_8UC1));
+            result = scope.keep(scope.copy(source));
+        }
+
+        Assert.assertTrue(temporary.empty());
+        Assert.assertFalse(result.empty());
+        Assert.assertFalse(source.empty());
+    }
+
+    @Test
+    public void shouldReleaseTrackedMatsOnException() {
+        Mat temporary = null;
+        try (MatScope scope = new MatScope()) {
+            temporary = scope.track(new Mat(4, 4, CvType.CV_8UC1));
+            throw new IllegalStateException();
+        } catch (IllegalStateException e) {
+            Assert.assertNotNull(temporary);
+            Assert.assertTrue(temporary.empty());
+        }
+    }
+
+    @Test
+    public void shouldReuseMatsReturnedToPool() {
+        Mat first;
+        try (MatScope scope = new MatScope()) {
+            first = scope.newMat(3, 5, CvType.CV_32FC3);
+        }
+
+        long hits = MatPool.getHits();
+        try (MatScope scope = new MatScope()) {
+            Mat second = scope.newMat(3, 5, CvType.CV_32FC3);
+            Assert.assertSame(first, second);
+            Assert.assertFalse(second.empty());
+        }
+        Assert.assertEquals(hits + 1, MatPool.getHits());
+    }
+
+    @Test
+    public void shouldNotPoolViews() {
+        Mat image = new Mat(4, 4, CvType.CV_8UC1);
+        try (MatScope scope = new MatScope()) {
+            scope.recycle(image.submat(1, 3, 1, 3));
+        }
+
+        long misses = MatPool.getMisses();
+        try (MatScope scope = new MatScope()) {
+            scope.newMat(2, 2, CvType.CV_8UC1);
+        }
+        Assert.assertEquals(misses + 1, MatPool.getMisses());
+    }
+}
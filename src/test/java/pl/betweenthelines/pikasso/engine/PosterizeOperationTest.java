@@ -0,0 +1,66 @@
+package pl.betweenthelines.pikasso.engine;
+
+import nu.pattern.OpenCV;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+@RunWith(JUnit4.class)
+public class PosterizeOperationTest {
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void shouldPosterizeLikePerPixelAlgorithm() {
+        Mat image = new Mat(1, 256, CvType.CV_8UC4);
+        byte[] pixels = new byte[256 * 4];
+        for (int level = 0; level < 256; level++) {
+            pixels[level * 4] = (byte) level;
+            pixels[level * 4 + 1] = (byte) (255 - level);
+            pixels[level * 4 + 2] = (byte) level;
+            pixels[level * 4 + 3] = (byte) 100;
+        }
+        image.put(0, 0, pixels);
+
+        for (int levels = 2; levels <= 16; levels++) {
+            Mat result = new PosterizeOperation(new PosterizeOperation.Parameters(levels)).apply(image);
+
+            byte[] resultPixels = new byte[256 * 4];
+            result.get(0, 0, resultPixels);
+            for (int level = 0; level < 256; level++) {
+                int expected = expectedLevel(level, levels);
+                Assert.assertEquals(expected, resultPixels[level * 4] & 0xff);
+                Assert.assertEquals(expectedLevel(255 - level, levels), resultPixels[level * 4 + 1] & 0xff);
+                Assert.assertEquals(expected, resultPixels[level * 4 + 2] & 0xff);
+                Assert.assertEquals(255, resultPixels[level * 4 + 3] & 0xff);
+            }
+        }
+
+        byte[] sourcePixels = new byte[256 * 4];
+        image.get(0, 0, sourcePixels);
+        Assert.assertArrayEquals(pixels, sourcePixels);
+    }
+
+    /**
+     * Poziom jasności obliczany tak jak w poprzedniej implementacji okna posteryzacji.
+     */
+    private int expectedLevel(int oldLevel, int levels) {
+        int multiplier = 255 / (levels - 1);
+        int divider = 255 / levels;
+        int newLevel = 0;
+
+        while (oldLevel > divider) {
+            oldLevel -= multiplier;
+            newLevel += multiplier;
+        }
+
+        return Math.min(newLevel, 255);
+    }
+}
@@ -0,0 +1,154 @@
+package pl.betweenthelines.pikasso.engine;
+
+import nu.pattern.OpenCV;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.MatOfPoint2f;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+import pl.betweenthelines.pikasso.exception.ImageIsNotBinaryException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.sqrt;
+
+@RunWith(JUnit4.class)
+public class ShapeDescriptorsTest {
+
+    private static final int W4 = 3;
+    private static final int W5 = 4;
+    private static final int W7 = 6;
+    private static final int W8 = 7;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void shouldCalculateDistancesLikePerPixelAlgorithm() throws ImageIsNotBinaryException {
+        for (Mat image : createShapes()) {
+            double[] features = new ShapeDescriptors(image).getShapeFeatures();
+            double[] expected = calculateDistanceFeatures(image);
+
+            Assert.assertEquals(expected[0], features[W4], expected[0] * 1e-9);
+            Assert.assertEquals(expected[1], features[W5], expected[1] * 2 * ShapeDescriptors.DISTANCE_TOLERANCE);
+        }
+    }
+
+    @Test
+    public void shouldCalculateContourFeaturesLikeAllPairs() throws ImageIsNotBinaryException {
+        List<Mat> shapes = createShapes();
+        Mat line = new Mat(60, 60, CvType.CV_8UC1, new Scalar(255));
+        Imgproc.line(line, new Point(5, 50), new Point(52, 9), new Scalar(0));
+        shapes.add(line);
+
+        for (Mat image : shapes) {
+            double[] features = new ShapeDescriptors(image).getShapeFeatures();
+            double[] expected = calculateContourFeatures(image);
+
+            Assert.assertEquals(expected[0], features[W7], 1e-12);
+            Assert.assertEquals(expected[1], features[W8], 1e-12);
+        }
+    }
+
+    private List<Mat> createShapes() {
+        List<Mat> shapes = new ArrayList<>();
+
+        Mat ellipse = new Mat(90, 120, CvType.CV_8UC1, new Scalar(255));
+        Imgproc.ellipse(ellipse, new Point(60, 45), new Size(40, 22), 30, 0, 360, new Scalar(0), -1);
+        shapes.add(ellipse);
+
+        Mat triangle = new Mat(70, 110, CvType.CV_8UC1, new Scalar(255));
+        MatOfPoint points = new MatOfPoint(new Point(10, 60), new Point(95, 50), new Point(30, 8));
+        Imgproc.fillPoly(triangle, Collections.singletonList(points), new Scalar(0));
+        shapes.add(triangle);
+
+        Mat rectangle = new Mat(50, 80, CvType.CV_8UC1, new Scalar(255));
+        Imgproc.rectangle(rectangle, new Point(12, 7), new Point(70, 30), new Scalar(0), -1);
+        shapes.add(rectangle);
+
+        return shapes;
+    }
+
+    /**
+     * Oblicza W4 i W5, sprawdzając każdy punkt obrazu testem <tt>pointPolygonTest</tt>
+     * i szukając najbliższego punktu konturu wśród wszystkich punktów konturu.
+     */
+    private double[] calculateDistanceFeatures(Mat image) {
+        Moments moments = Imgproc.moments(image, true);
+        Point center = new Point(moments.m10 / moments.m00, moments.m01 / moments.m00);
+
+        List<MatOfPoint> contours = new ArrayList<>();
+        Imgproc.findContours(image.clone(), contours, new Mat(), Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
+        MatOfPoint objectContour = contours.get(ShapeDescriptors.OBJECT_INDEX);
+        MatOfPoint2f objectContour2f = new MatOfPoint2f(objectContour.toArray());
+        double s = Imgproc.contourArea(objectContour);
+        double l = Imgproc.arcLength(objectContour2f, true);
+
+        double sumOfPointToCenterDistances = 0;
+        double minimumPointToContourDistancesSum = 0;
+        for (int row = 0; row < image.rows(); row++) {
+            for (int col = 0; col < image.cols(); col++) {
+                Point point = new Point(col, row);
+                if (Imgproc.pointPolygonTest(objectContour2f, point, false) >= 0) {
+                    sumOfPointToCenterDistances += getDistance(center, point);
+
+                    double minimumDistanceToContour = l;
+                    for (Point contourPoint : objectContour.toArray()) {
+                        minimumDistanceToContour = Math.min(minimumDistanceToContour, getDistance(point, contourPoint));
+                    }
+                    minimumPointToContourDistancesSum += minimumDistanceToContour;
+                }
+            }
+        }
+
+        double w4 = s / (sqrt(2 * PI * sumOfPointToCenterDistances));
+        double w5 = (s * s * s) / (minimumPointToContourDistancesSum * minimumPointToContourDistancesSum);
+        return new double[]{w4, w5};
+    }
+
+    /**
+     * Oblicza W7 i W8, porównując każdą parę punktów konturu.
+     */
+    private double[] calculateContourFeatures(Mat image) {
+        Moments moments = Imgproc.moments(image, true);
+        Point center = new Point(moments.m10 / moments.m00, moments.m01 / moments.m00);
+
+        List<MatOfPoint> contours = new ArrayList<>();
+        Imgproc.findContours(image.clone(), contours, new Mat(), Imgproc.RETR_TREE, Imgproc.CHAIN_APPROX_SIMPLE);
+        Point[] contour = contours.get(ShapeDescriptors.OBJECT_INDEX).toArray();
+        double l = Imgproc.arcLength(new MatOfPoint2f(contour), true);
+
+        double minimum = l;
+        double maximum = 0;
+        double maxDimension = 0;
+        for (Point point : contour) {
+            minimum = Math.min(minimum, getDistance(center, point));
+            maximum = Math.max(maximum, getDistance(center, point));
+            for (Point point2 : contour) {
+                maxDimension = Math.max(maxDimension, getDistance(point, point2));
+            }
+        }
+
+        return new double[]{minimum / maximum, maxDimension / l};
+    }
+
+    private double getDistance(Point pointA, Point pointB) {
+        double xDifference = pointA.x - pointB.x;
+        double yDifference = pointA.y - pointB.y;
+        return sqrt(xDifference * xDifference + yDifference * yDifference);
+    }
+}
@@ -0,0 +1,173 @@
+package pl.betweenthelines.pikasso.engine;
+
+import nu.pattern.OpenCV;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import pl.betweenthelines.pikasso.exception.ImageIsNotBinaryException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class ThinningOperationTest {
+
+    private static final double ANY = 150;
+
+    private static final int[] NEIGHBOUR_ROWS = {-1, -1, -1, 0, 0, 0, 1, 1, 1};
+    private static final int[] NEIGHBOUR_COLS = {-1, 0, 1, -1, 0, 1, -1, 0, 1};
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void shouldThinLikePerPixelAlgorithm() throws ImageIsNotBinaryException {
+        Random random = new Random(5);
+        for (int test = 0; test < 20; test++) {
+            int rows = 3 + random.nextInt(70);
+            int cols = 3 + random.nextInt(150);
+            double density = random.nextDouble();
+            byte[] pixels = new byte[rows * cols];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = random.nextDouble() < density ? 0 : (byte) 255;
+            }
+            Mat image = new Mat(rows, cols, CvType.CV_8UC1);
+            image.put(0, 0, pixels);
+
+            boolean blackObject = test % 2 == 0;
+            Scalar border = test % 4 < 2 ? new Scalar(255) : null;
+            ThinningOperation operation = new ThinningOperation(new ThinningOperation.Parameters(blackObject, border));
+            List<Mat> steps = operation.thin(image);
+            List<byte[]> expected = thinPerPixel(pixels, rows, cols, blackObject, border);
+
+            Assert.assertEquals(expected.size(), steps.size());
+            for (int i = 0; i < steps.size(); i++) {
+                byte[] actual = new byte[rows * cols];
+                steps.get(i).get(0, 0, actual);
+                Assert.assertArrayEquals(expected.get(i), actual);
+            }
+
+            List<Integer> changedPixels = operation.getChangedPixels();
+            Assert.assertEquals(steps.size(), changedPixels.size());
+            for (int i = 1; i < steps.size(); i++) {
+                Assert.assertEquals(countChanges(expected.get(i - 1), expected.get(i)), (int) changedPixels.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void shouldReconstructStepsInAnyOrder() throws ImageIsNotBinaryException {
+        Random random = new Random(9);
+        int rows = 80;
+        int cols = 120;
+        byte[] pixels = new byte[rows * cols];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextDouble() < 0.7 ? 0 : (byte) 255;
+        }
+        Mat image = new Mat(rows, cols, CvType.CV_8UC1);
+        image.put(0, 0, pixels);
+
+        Scalar border = new Scalar(255);
+        ThinningSteps steps = new ThinningOperation(new ThinningOperation.Parameters(true, border)).thinSteps(image);
+        List<byte[]> expected = thinPerPixel(pixels, rows, cols, true, border);
+
+        Assert.assertEquals(expected.size(), steps.size());
+        for (int test = 0; test < 50; test++) {
+            int index = random.nextInt(steps.size());
+            byte[] actual = new byte[rows * cols];
+            steps.getStep(index).get(0, 0, actual);
+            Assert.assertArrayEquals(expected.get(index), actual);
+        }
+    }
+
+    @Test(expected = ImageIsNotBinaryException.class)
+    public void shouldRejectNonBinaryImage() throws ImageIsNotBinaryException {
+        Mat image = new Mat(5, 5, CvType.CV_8UC1, new Scalar(255));
+        image.put(2, 2, 100);
+
+        new ThinningOperation(new ThinningOperation.Parameters(true, null)).thin(image);
+    }
+
+    private List<byte[]> thinPerPixel(byte[] pixels, int rows, int cols, boolean blackObject, Scalar border) {
+        int object = blackObject ? 0 : 255;
+        int background = blackObject ? 255 : 0;
+        List<double[]> patterns = blackObject ? BlackObjectPatterns.getPATTERNS() : WhiteObjectPatterns.getPATTERNS();
+
+        int[] image = new int[pixels.length];
+        for (int i = 0; i < pixels.length; i++) {
+            image[i] = pixels[i] & 0xff;
+        }
+
+        List<byte[]> steps = new ArrayList<>();
+        boolean remain = true;
+        while (remain) {
+            remain = false;
+            int[] copy = image.clone();
+            for (int j = 1; j < 8; j += 2) {
+                for (int col = 1; col < cols - 1; col++) {
+                    for (int row = 1; row < rows - 1; row++) {
+                        if (image[row * cols + col] == object
+                                && neighbour(image, cols, j, row, col) == background) {
+                            boolean matches = patterns.stream()
+                                    .anyMatch(pattern -> patternMatches(pattern, image, cols, row, col));
+                            copy[row * cols + col] = matches ? background : object;
+                            remain |= matches;
+                        }
+                    }
+                }
+            }
+
+            if (border != null) {
+                for (int row = 0; row < rows; row++) {
+                    for (int col = 0; col < cols; col++) {
+                        if (row == 0 || col == 0 || row == rows - 1 || col == cols - 1) {
+                            copy[row * cols + col] = (int) border.val[0];
+                        }
+                    }
+                }
+            }
+            System.arraycopy(copy, 0, image, 0, image.length);
+
+            byte[] step = new byte[image.length];
+            for (int i = 0; i < image.length; i++) {
+                step[i] = (byte) image[i];
+            }
+            steps.add(step);
+        }
+
+        return steps;
+    }
+
+    private int countChanges(byte[] before, byte[] after) {
+        int changes = 0;
+        for (int i = 0; i < before.length; i++) {
+            if (before[i] != after[i]) {
+                changes++;
+            }
+        }
+
+        return changes;
+    }
+
+    private boolean patternMatches(double[] pattern, int[] image, int cols, int row, int col) {
+        for (int i = 0; i < 9; i++) {
+            if (pattern[i] != ANY && pattern[i] != neighbour(image, cols, i, row, col)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private int neighbour(int[] image, int cols, int index, int row, int col) {
+        return image[(row + NEIGHBOUR_ROWS[index]) * cols + col + NEIGHBOUR_COLS[index]];
+    }
+}
@@ -0,0 +1,163 @@
+package pl.betweenthelines.pikasso.window.image.histogram;
+
+import org.apache.commons.math3.stat.descriptive.moment.Mean;
+import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Random;
+
+import static pl.betweenthelines.pikasso.window.image.histogram.ChannelProperties.Channel.GRAY;
+
+@RunWith(JUnit4.class)
+public class ChannelPropertiesTest {
+
+    private static final int LEVELS = 256;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void shouldMatchExpandedStatisticsForFullRange() {
+        long[] pixels = randomHistogram(1, 1000);
+
+        assertMatchesExpandedStatistics(pixels, 0, 255);
+    }
+
+    @Test
+    public void shouldMatchExpandedStatisticsForNarrowedRange() {
+        long[] pixels = randomHistogram(2, 1000);
+
+        assertMatchesExpandedStatistics(pixels, 17, 201);
+        assertMatchesExpandedStatistics(pixels, 128, 128);
+        assertMatchesExpandedStatistics(pixels, 0, 3);
+    }
+
+    @Test
+    public void shouldMatchExpandedStatisticsForOddAndEvenPixelCounts() {
+        long[] odd = new long[LEVELS];
+        odd[10] = 3;
+        odd[20] = 4;
+        long[] even = new long[LEVELS];
+        even[10] = 3;
+        even[20] = 3;
+        even[30] = 2;
+
+        assertMatchesExpandedStatistics(odd, 0, 255);
+        assertMatchesExpandedStatistics(even, 0, 255);
+    }
+
+    @Test
+    public void shouldReturnZerosForLessThanTwoPixels() {
+        long[] pixels = new long[LEVELS];
+        pixels[100] = 1;
+
+        ChannelProperties properties = new ChannelProperties(GRAY, pixels, 1, 0, 255);
+
+        Assert.assertEquals(1, properties.getPixelCount());
+        Assert.assertEquals(0, properties.getMedian(), DELTA);
+        Assert.assertEquals(0, properties.getMean(), DELTA);
+        Assert.assertEquals(0, properties.getStandardDeviation(), DELTA);
+    }
+
+    @Test
+    public void shouldNotOverflowPixelCount() {
+        long[] pixels = new long[LEVELS];
+        pixels[0] = Integer.MAX_VALUE;
+        pixels[255] = Integer.MAX_VALUE;
+
+        ChannelProperties properties = new ChannelProperties(GRAY, pixels, Integer.MAX_VALUE, 0, 255);
+
+        Assert.assertEquals(2L * Integer.MAX_VALUE, properties.getPixelCount());
+        Assert.assertEquals(127.5, properties.getMean(), DELTA);
+        Assert.assertEquals(127.5, properties.getMedian(), DELTA);
+    }
+
+    @Test
+    public void shouldMatchExpandedStatisticsForChangedRange() {
+        long[] pixels = randomHistogram(3, 1000);
+        ChannelProperties fullRange = new ChannelProperties(GRAY, pixels, 0, 0, 255);
+
+        for (int minLevel = 5; minLevel < 256; minLevel += 25) {
+            for (int maxLevel = minLevel; maxLevel < 256; maxLevel += 30) {
+                ChannelProperties actual = fullRange.withRange(minLevel, maxLevel);
+
+                Assert.assertEquals(minLevel, actual.getMinLevel());
+                Assert.assertEquals(maxLevel, actual.getMaxLevel());
+                assertMatchesExpandedStatistics(pixels, minLevel, maxLevel, actual);
+            }
+        }
+    }
+
+    private long[] randomHistogram(long seed, int maxCount) {
+        Random random = new Random(seed);
+        long[] pixels = new long[LEVELS];
+        for (int i = 0; i < LEVELS; i++) {
+            pixels[i] = random.nextInt(maxCount);
+        }
+
+        return pixels;
+    }
+
+    /**
+     * Tworzy właściwości kanału dla zakresu od minLevel do maxLevel i porównuje je
+     * z obliczeniami na tablicy z jednym elementem na piksel.
+     */
+    private void assertMatchesExpandedStatistics(long[] pixels, int minLevel, int maxLevel) {
+        int pixelCount = 0;
+        for (int i = minLevel; i <= maxLevel; i++) {
+            pixelCount += pixels[i];
+        }
+
+        ChannelProperties properties = new ChannelProperties(GRAY, pixels, pixelCount, minLevel, maxLevel);
+        assertMatchesExpandedStatistics(pixels, minLevel, maxLevel, properties);
+    }
+
+    /**
+     * Porównuje podane właściwości kanału z obliczeniami na tablicy z jednym elementem
+     * na piksel z zakresu od minLevel do maxLevel (poprzednia implementacja
+     * <tt>ChannelProperties.calculateParameters</tt>). Mediana parzystej liczby pikseli
+     * jest liczona z elementów o indeksach <tt>middle</tt> i <tt>middle + 1</tt>, tak jak
+     * poprzednio, o ile daje to ten sam wynik co zamierzona zmiana (elementy
+     * <tt>middle - 1</tt> i <tt>middle</tt>).
+     */
+    private void assertMatchesExpandedStatistics(long[] pixels, int minLevel, int maxLevel, ChannelProperties properties) {
+        int pixelCount = 0;
+        for (int i = minLevel; i <= maxLevel; i++) {
+            pixelCount += pixels[i];
+        }
+
+        Assert.assertEquals(pixelCount, properties.getPixelCount());
+        if (pixelCount < 2) {
+            Assert.assertEquals(0, properties.getMedian(), DELTA);
+            Assert.assertEquals(0, properties.getMean(), DELTA);
+            Assert.assertEquals(0, properties.getStandardDeviation(), DELTA);
+            return;
+        }
+
+        double[] dpixels = new double[pixelCount];
+        int count = 0;
+        for (int i = minLevel; i <= maxLevel; i++) {
+            for (int j = 0; j < pixels[i]; j++) {
+                dpixels[count] = i;
+                count++;
+            }
+        }
+
+        int middle = pixelCount / 2;
+        double median;
+        if (pixelCount % 2 != 0) {
+            median = dpixels[middle];
+        } else if (middle + 1 < pixelCount && dpixels[middle - 1] == dpixels[middle + 1]) {
+            median = (dpixels[middle] + dpixels[middle + 1]) / 2;
+        } else {
+            median = (dpixels[middle - 1] + dpixels[middle]) / 2;
+        }
+        double mean = new Mean().evaluate(dpixels);
+        double standardDeviation = new StandardDeviation().evaluate(dpixels);
+
+        Assert.assertEquals(median, properties.getMedian(), DELTA);
+        Assert.assertEquals(mean, properties.getMean(), DELTA);
+        Assert.assertEquals(standardDeviation, properties.getStandardDeviation(), DELTA);
+    }
+}
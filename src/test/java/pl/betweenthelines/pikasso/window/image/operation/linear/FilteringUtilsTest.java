@@ -0,0 +1,88 @@
+package pl.betweenthelines.pikasso.window.image.operation.linear;
+
+import nu.pattern.OpenCV;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.MaskUtils;
+
+import static pl.betweenthelines.pikasso.window.image.operation.linear.MatScalingUtils.*;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.EDGE_DETECTION_3;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.PREWITT_X;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.PREWITT_Y;
+import static pl.betweenthelines.pikasso.window.image.operation.linear.mask.LinearFilters.SMOOTH_2;
+
+@RunWith(JUnit4.class)
+public class FilteringUtilsTest {
+
+    private static final int TILE_SIZE = 7;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void shouldFilterTiledLikeWholeImage() {
+        Mat image = new Mat(23, 30, CvType.CV_8UC4);
+        Core.randu(image, 0, 256);
+
+        for (Mask mask : new Mask[]{SMOOTH_2, EDGE_DETECTION_3}) {
+            for (byte method : new byte[]{DO_NOTHING, METHOD_1, METHOD_2, METHOD_3}) {
+                for (int borderType : new int[]{Core.BORDER_CONSTANT, Core.BORDER_REPLICATE, Core.BORDER_REFLECT}) {
+                    assertTiledLikeWholeImage(image, mask, borderType, null, method, false);
+                    assertTiledLikeWholeImage(image, mask, borderType, null, method, true);
+                }
+                assertTiledLikeWholeImage(image, mask, Core.BORDER_CONSTANT, new Scalar(255, 255, 255, 255), method, false);
+            }
+        }
+    }
+
+    @Test
+    public void shouldFilterSeparableMaskLikeFilter2D() {
+        Mat image = new Mat(31, 37, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+
+        for (Mask mask : new Mask[]{SMOOTH_2, PREWITT_X, PREWITT_Y, MaskUtils.combineMasks(SMOOTH_2, PREWITT_X)}) {
+            Assert.assertNotNull(mask.getSeparableKernel());
+            for (int borderType : new int[]{Core.BORDER_CONSTANT, Core.BORDER_REPLICATE, Core.BORDER_REFLECT}) {
+                Mat expected = new Mat();
+                Imgproc.filter2D(image, expected, CvType.CV_32F, mask.getMat(), new Point(-1, -1), 0, borderType);
+
+                Mat actual = new Mat();
+                FilteringUtils.applyMask(image, actual, mask, borderType, null);
+
+                Mat difference = new Mat();
+                Core.absdiff(expected, actual, difference);
+                Assert.assertEquals(0, Core.countNonZero(difference.reshape(1)));
+            }
+        }
+    }
+
+    private void assertTiledLikeWholeImage(Mat image, Mask mask, int borderType, Scalar border, byte method,
+                                           boolean absolute) {
+        Mat expected = image.clone();
+        FilteringUtils.applyMask(expected, mask, borderType, border);
+        if (absolute) {
+            Core.convertScaleAbs(expected, expected);
+        }
+        MatScalingUtils.scale(expected, method);
+        expected.convertTo(expected, CvType.CV_8U);
+
+        Mat actual = new Mat(image.rows(), image.cols(), CvType.CV_8UC4);
+        FilteringUtils.applyMaskTiled(image, actual, mask, borderType, border, method, absolute, TILE_SIZE);
+
+        Mat difference = new Mat();
+        Core.absdiff(expected, actual, difference);
+        Assert.assertEquals(0, Core.countNonZero(difference.reshape(1)));
+    }
+}
@@ -0,0 +1,87 @@
+package pl.betweenthelines.pikasso.window.image.operation.linear;
+
+import nu.pattern.OpenCV;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.Mask;
+import pl.betweenthelines.pikasso.window.image.operation.linear.mask.MaskNxN;
+
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class FrequencyFilteringUtilsTest {
+
+    private static final int MASK_SIZE = 31;
+
+    private static final double TOLERANCE = 0.05;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        OpenCV.loadLocally();
+    }
+
+    @Test
+    public void shouldFilterLikeFilter2D() {
+        Mat image = new Mat(60, 70, CvType.CV_8UC3);
+        Core.randu(image, 0, 256);
+        Mask mask = createMask(new Random(7));
+
+        for (int borderType : new int[]{Core.BORDER_CONSTANT, Core.BORDER_REPLICATE, Core.BORDER_DEFAULT}) {
+            assertFilteredLikeFilter2D(image, mask, borderType);
+            assertFilteredLikeFilter2D(image.submat(10, 45, 20, 50), mask, borderType);
+        }
+    }
+
+    @Test
+    public void shouldCacheMaskSpectrum() {
+        Mat image = new Mat(40, 50, CvType.CV_8UC1);
+        Core.randu(image, 0, 256);
+        Mask mask = createMask(new Random(11));
+
+        FrequencyFilteringUtils.clearCache();
+        FrequencyFilteringUtils.filter(image, new Mat(), mask, Core.BORDER_CONSTANT);
+        FrequencyFilteringUtils.filter(image, new Mat(), createMask(new Random(11)), Core.BORDER_CONSTANT);
+        Assert.assertEquals(1, FrequencyFilteringUtils.getCachedSpectra());
+
+        FrequencyFilteringUtils.filter(image.submat(0, 20, 0, 20), new Mat(), mask, Core.BORDER_CONSTANT);
+        Assert.assertEquals(2, FrequencyFilteringUtils.getCachedSpectra());
+    }
+
+    @Test
+    public void shouldPreferFrequencyDomainForLargeMasks() {
+        Random random = new Random(3);
+
+        Assert.assertTrue(FrequencyFilteringUtils.isCheaperThanSpatial(1000, 1000, createMask(random), false));
+        Assert.assertFalse(FrequencyFilteringUtils.isCheaperThanSpatial(1000, 1000,
+                new MaskNxN("3x3", 3, 1, 2, 1, 2, 4, 2, 1, 2, 1), false));
+    }
+
+    private void assertFilteredLikeFilter2D(Mat image, Mask mask, int borderType) {
+        Mat expected = new Mat();
+        Imgproc.filter2D(image, expected, CvType.CV_32F, mask.getMat(), new Point(-1, -1), 0, borderType);
+
+        Mat actual = new Mat();
+        FrequencyFilteringUtils.filter(image, actual, mask, borderType);
+
+        Assert.assertEquals(expected.type(), actual.type());
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(0, Core.norm(expected, actual, Core.NORM_INF), TOLERANCE);
+    }
+
+    private Mask createMask(Random random) {
+        double[] values = new double[MASK_SIZE * MASK_SIZE];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(10);
+        }
+
+        return new MaskNxN("RANDOM", MASK_SIZE, values);
+    }
+}
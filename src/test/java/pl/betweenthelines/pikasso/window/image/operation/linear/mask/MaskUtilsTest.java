@@ -5,6 +5,14 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
 
 @RunWith(JUnit4.class)
 public class MaskUtilsTest {
@@ -29,4 +37,116 @@ public class MaskUtilsTest {
         Assert.assertEquals(81, result.getKernelSize());
         Assert.assertArrayEquals(EXPECTED_VALUES, result.getValues(), 2);
     }
+
+    @Test
+    public void shouldDetectSeparableMasks() {
+        OpenCV.loadLocally();
+
+        Assert.assertNotNull(LinearFilters.SMOOTH_2.getSeparableKernel());
+        Assert.assertNotNull(LinearFilters.PREWITT_X.getSeparableKernel());
+        Assert.assertNotNull(LinearFilters.PREWITT_Y.getSeparableKernel());
+        Assert.assertNull(LinearFilters.SMOOTH_1.getSeparableKernel());
+        Assert.assertNull(LinearFilters.EDGE_DETECTION_3.getSeparableKernel());
+        Assert.assertNull(new Mask3x3("mask", false, MASK_OF_ONES).getSeparableKernel());
+
+        SeparableKernel combined = MaskUtils.combineMasks(LinearFilters.SMOOTH_2, LinearFilters.SMOOTH_2)
+                .getSeparableKernel();
+        Assert.assertNotNull(combined);
+
+        double[] row = new double[5];
+        double[] column = new double[5];
+        for (int i = 0; i < 5; i++) {
+            row[i] = combined.getRowKernel().get(0, i)[0];
+            column[i] = combined.getColumnKernel().get(i, 0)[0];
+        }
+        Assert.assertArrayEquals(new double[]{1, 4, 6, 4, 1}, row, 0);
+        Assert.assertArrayEquals(new double[]{1 / 256.0, 4 / 256.0, 6 / 256.0, 4 / 256.0, 1 / 256.0}, column, 0);
+    }
+
+    @Test
+    public void shouldComposeRepeatedMasks() {
+        OpenCV.loadLocally();
+        Mask5x5 combined = MaskUtils.combineMasks(LinearFilters.SMOOTH_2, LinearFilters.SMOOTH_2);
+
+        ComposedMask composed = MaskUtils.compose(Collections.singletonList(LinearFilters.SMOOTH_2), 2);
+
+        Assert.assertEquals(5, composed.getSize());
+        for (int i = 0; i < 25; i++) {
+            Assert.assertEquals(combined.getValues()[i] / combined.getKernelSize(), composed.getValues()[i], 1e-12);
+        }
+
+        SeparableKernel separableKernel = composed.getSeparableKernel();
+        Assert.assertNotNull(separableKernel);
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 5; col++) {
+                double value = separableKernel.getColumnKernel().get(row, 0)[0]
+                        * separableKernel.getRowKernel().get(0, col)[0];
+                Assert.assertEquals(composed.getValues()[row * 5 + col], value, 1e-6);
+            }
+        }
+
+        ComposedMask repeated = MaskUtils.compose(Arrays.asList(LinearFilters.SMOOTH_1, LinearFilters.SMOOTH_2), 32);
+        Assert.assertEquals(129, repeated.getSize());
+        Assert.assertNull(repeated.getSeparableKernel());
+        Assert.assertEquals(1, Arrays.stream(repeated.getValues()).sum(), 1e-9);
+    }
+
+    @Test
+    public void shouldCombineChainsOfMasks() {
+        OpenCV.loadLocally();
+        MaskNxN mask5x5 = createMask(5, 1);
+        MaskNxN mask7x7 = createMask(7, 2);
+
+        MaskNxN combined = MaskUtils.combine(Arrays.asList(LinearFilters.SMOOTH_2, mask5x5, mask7x7));
+        MaskNxN stepByStep = MaskUtils.combine(Arrays.asList(
+                MaskUtils.combine(Arrays.asList(LinearFilters.SMOOTH_2, mask5x5)), mask7x7));
+
+        Assert.assertEquals(13, combined.getSize());
+        Assert.assertEquals(16 * mask5x5.getKernelSize() * mask7x7.getKernelSize(), combined.getKernelSize());
+        Assert.assertEquals(stepByStep.getKernelSize(), combined.getKernelSize());
+        Assert.assertArrayEquals(stepByStep.getValues(), combined.getValues(), 0);
+        Assert.assertEquals(combined.getKernelSize(), Arrays.stream(combined.getValues()).sum(), 0);
+    }
+
+    @Test
+    public void shouldCombineAsymmetricMasksLikeSequentialFiltering() {
+        OpenCV.loadLocally();
+        Mask3x3 asymmetric = new Mask3x3("ASYMMETRIC", false, 0, 1, 2, 0, 0, 0, -1, 0, 0);
+        Mat image = new Mat(40, 40, CvType.CV_32F);
+        Core.randu(image, 0, 256);
+
+        Mat sequential = new Mat();
+        Imgproc.filter2D(image, sequential, CvType.CV_32F, LinearFilters.PREWITT_X.getMat());
+        Imgproc.filter2D(sequential, sequential, CvType.CV_32F, asymmetric.getMat());
+
+        Mat combined = new Mat();
+        Mask mask = MaskUtils.combine(Arrays.asList(LinearFilters.PREWITT_X, asymmetric));
+        Imgproc.filter2D(image, combined, CvType.CV_32F, mask.getMat());
+
+        Assert.assertEquals(0, Core.norm(sequential.submat(2, 38, 2, 38), combined.submat(2, 38, 2, 38),
+                Core.NORM_INF), 1e-3);
+    }
+
+    @Test
+    public void shouldRememberCombinedMasks() {
+        OpenCV.loadLocally();
+
+        MaskNxN first = MaskUtils.combine(Arrays.asList(createMask(9, 3), LinearFilters.PREWITT_Y));
+        MaskNxN second = MaskUtils.combine(Arrays.asList(createMask(9, 3), LinearFilters.PREWITT_Y));
+        MaskNxN reversed = MaskUtils.combine(Arrays.asList(LinearFilters.PREWITT_Y, createMask(9, 3)));
+
+        Assert.assertSame(first, second);
+        Assert.assertNotSame(first, reversed);
+        Assert.assertArrayEquals(first.getValues(), reversed.getValues(), 0);
+    }
+
+    private MaskNxN createMask(int size, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[size * size];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(5);
+        }
+
+        return new MaskNxN("RANDOM", size, values);
+    }
 }
\ No newline at end of file